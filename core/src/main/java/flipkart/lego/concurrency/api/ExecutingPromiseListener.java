@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.concurrency.api;
+
+import flipkart.lego.concurrency.exceptions.PromiseBrokenException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+
+/**
+ * This listener hands the realization of a promise over to another listener on an executor, so that
+ * a slow listener doesn't hold up the thread that realizes the promise. If the executor rejects the
+ * listener it's run on the realizing thread instead. It backs {@link Promise#addListener(PromiseListener, Executor)}.
+ */
+final class ExecutingPromiseListener<T> implements PromiseListener<T> {
+
+    private static final Logger exceptionLogger = LoggerFactory.getLogger("ExceptionLogger");
+    private final PromiseListener<T> promiseListener;
+    private final Executor executor;
+
+    ExecutingPromiseListener(PromiseListener<T> promiseListener, Executor executor) {
+        this.promiseListener = promiseListener;
+        this.executor = executor;
+    }
+
+    @Override
+    public void whenFullfilled(final T value) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                promiseListener.whenFullfilled(value);
+            }
+        });
+    }
+
+    @Override
+    public void whenBroken(final PromiseBrokenException promiseBrokenException) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                promiseListener.whenBroken(promiseBrokenException);
+            }
+        });
+    }
+
+    private void execute(Runnable runnable) {
+        try {
+            executor.execute(runnable);
+        } catch (RejectedExecutionException exception) {
+            exceptionLogger.warn("Executor rejected a promise listener, running it inline: {}", exception.getMessage());
+            runnable.run();
+        }
+    }
+}
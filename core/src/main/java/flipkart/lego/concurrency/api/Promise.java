@@ -16,8 +16,10 @@
 
 package flipkart.lego.concurrency.api;
 
+import com.google.common.util.concurrent.MoreExecutors;
 import flipkart.lego.concurrency.exceptions.PromiseBrokenException;
 
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -132,4 +134,23 @@ public interface Promise<V> {
      * @param promiseListener
      */
     void addListener(PromiseListener promiseListener);
+
+    /**
+     * Adds a PromiseListener to the promise whose whenFullfilled or whenBroken method
+     * is run on the given executor when the promise is realized, keeping slow listeners
+     * off the thread that realizes the promise. A listener added with
+     * {@link MoreExecutors#directExecutor()} is added as is and runs on that thread.
+     * <p/>
+     * NonBlocking: it's a callback mechanism
+     *
+     * @param promiseListener
+     * @param executor
+     */
+    default void addListener(PromiseListener promiseListener, Executor executor) {
+        if (executor == MoreExecutors.directExecutor()) {
+            addListener(promiseListener);
+        } else {
+            addListener(new ExecutingPromiseListener<>(promiseListener, executor));
+        }
+    }
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.concurrency.futures;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+/**
+ * Helpers to put a time limit on a {@link ListenableFuture} without parking a thread on it.
+ * A timer is armed on a {@link ScheduledExecutorService} and the future is failed with a
+ * {@link TimeoutException} if it hasn't completed when the timer fires.
+ */
+public final class TimedFutures {
+
+    private TimedFutures() {
+    }
+
+    /**
+     * Returns a future that completes with the result of the given future, or fails with a
+     * {@link TimeoutException} if the given future is not done within the timeout. On timeout
+     * the given future is cancelled. Cancelling the returned future cancels the given future.
+     *
+     * @param future    future to be time limited
+     * @param timeout   time to wait before failing the returned future
+     * @param timeUnit  unit of timeout
+     * @param scheduler scheduler on which the timer is armed
+     * @return time limited future
+     */
+    public static <V> ListenableFuture<V> withTimeout(final ListenableFuture<V> future, final long timeout, final TimeUnit timeUnit, ScheduledExecutorService scheduler) {
+        if (future.isDone()) {
+            return future;
+        }
+
+        final SettableFuture<V> timedFuture = SettableFuture.create();
+        final ScheduledFuture<?> timer = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (timedFuture.setException(new TimeoutException("Timed out after " + timeout + " " + timeUnit))) {
+                    future.cancel(true);
+                }
+            }
+        }, Math.max(timeout, 0), timeUnit);
+
+        Futures.addCallback(future, new FutureCallback<V>() {
+            @Override
+            public void onSuccess(V result) {
+                timer.cancel(false);
+                timedFuture.set(result);
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                timer.cancel(false);
+                timedFuture.setException(throwable);
+            }
+        }, directExecutor());
+
+        timedFuture.addListener(new Runnable() {
+            @Override
+            public void run() {
+                if (timedFuture.isCancelled()) {
+                    future.cancel(true);
+                }
+            }
+        }, directExecutor());
+
+        return timedFuture;
+    }
+
+    /**
+     * A process wide scheduler used to arm timers when no scheduler is supplied. It runs on a
+     * single daemon thread and only fires timers, so it must never be handed blocking work.
+     *
+     * @return shared timer scheduler
+     */
+    public static ScheduledExecutorService sharedScheduler() {
+        return SharedSchedulerHolder.SCHEDULER;
+    }
+
+    /**
+     * Returns a view of a scheduler whose tasks run marked as timers, see {@link #isTimerThread()}. The shared
+     * scheduler and the views returned here are already marked and returned as they are.
+     *
+     * @param scheduler
+     * @return scheduler whose tasks are marked as timers
+     */
+    public static ScheduledExecutorService timerScheduler(ScheduledExecutorService scheduler) {
+        return scheduler instanceof TimerScheduler ? scheduler : new TimerScheduler(scheduler);
+    }
+
+    /**
+     * Tells whether the current thread is running a task of a timer scheduler, work that may block has to be
+     * handed to another executor rather than run there.
+     *
+     * @return true if called from a timer
+     */
+    public static boolean isTimerThread() {
+        return TimerScheduler.isTimerThread();
+    }
+
+    private static class SharedSchedulerHolder {
+        private static final ScheduledExecutorService SCHEDULER = new TimerScheduler(createScheduler());
+
+        private static ScheduledExecutorService createScheduler() {
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("lego-timer-%d").build());
+            //timers are cancelled far more often than they fire, don't let them pile up in the queue
+            scheduler.setRemoveOnCancelPolicy(true);
+            return scheduler;
+        }
+    }
+}
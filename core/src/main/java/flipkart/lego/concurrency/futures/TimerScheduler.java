@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flipkart.lego.concurrency.futures;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link ScheduledExecutorService} that marks the thread running each of its tasks as a timer thread, see
+ * {@link TimedFutures#isTimerThread()}, so that work completed by a timer can be moved off it.
+ */
+class TimerScheduler extends AbstractExecutorService implements ScheduledExecutorService {
+
+    private static final ThreadLocal<Boolean> TIMER_THREAD = new ThreadLocal<>();
+
+    private final ScheduledExecutorService scheduler;
+
+    TimerScheduler(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    static boolean isTimerThread() {
+        return TIMER_THREAD.get() != null;
+    }
+
+    private static Runnable marked(final Runnable task) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                boolean nested = isTimerThread();
+                TIMER_THREAD.set(Boolean.TRUE);
+                try {
+                    task.run();
+                } finally {
+                    if (!nested) {
+                        TIMER_THREAD.remove();
+                    }
+                }
+            }
+        };
+    }
+
+    private static <V> Callable<V> marked(final Callable<V> task) {
+        return new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+                boolean nested = isTimerThread();
+                TIMER_THREAD.set(Boolean.TRUE);
+                try {
+                    return task.call();
+                } finally {
+                    if (!nested) {
+                        TIMER_THREAD.remove();
+                    }
+                }
+            }
+        };
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return scheduler.schedule(marked(command), delay, unit);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        return scheduler.schedule(marked(callable), delay, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        return scheduler.scheduleAtFixedRate(marked(command), initialDelay, period, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        return scheduler.scheduleWithFixedDelay(marked(command), initialDelay, delay, unit);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        scheduler.execute(marked(command));
+    }
+
+    @Override
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return scheduler.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return scheduler.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return scheduler.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return scheduler.awaitTermination(timeout, unit);
+    }
+}
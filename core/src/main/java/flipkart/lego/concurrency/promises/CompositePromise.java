@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.concurrency.promises;
+
+import flipkart.lego.concurrency.api.Promise;
+import flipkart.lego.concurrency.api.PromiseListener;
+import flipkart.lego.concurrency.exceptions.PromiseBrokenException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A promise of the values of a list of promises that listens to all of them at once. Unlike a
+ * {@link LazyComposablePromise} it's realized as soon as its promises are, without anyone waiting on
+ * it: it's full-filled once all of them are full-filled and broken as soon as any of them is broken.
+ * A timeout given to {@link #get(long, TimeUnit)} bounds the wait for all of the promises together.
+ * <p/>
+ * In the partial results mode the composite waits until every promise is realized or the deadline
+ * passes, whichever is sooner, and returns what each of the promises had come to by then.
+ */
+public class CompositePromise<T> implements Promise<List<T>> {
+
+    private final List<Promise<? extends T>> promises;
+    private final Promise<List<T>> allPromise;
+    //realized once every promise is realized, whether full-filled or broken
+    private final DeliverablePromise<Void> settledPromise = new DeliverablePromise<>();
+
+    @SafeVarargs
+    public CompositePromise(Promise<? extends T>... promises) {
+        this(Arrays.asList(promises));
+    }
+
+    public CompositePromise(List<? extends Promise<? extends T>> promises) {
+        this.promises = new ArrayList<>(promises);
+        this.allPromise = Promises.allOf(this.promises);
+
+        final AtomicInteger pending = new AtomicInteger(this.promises.size());
+        if (this.promises.isEmpty()) {
+            Promises.fullFillQuietly(settledPromise, null);
+        }
+        for (Promise<? extends T> promise : this.promises) {
+            promise.addListener(new PromiseListener<T>() {
+                @Override
+                public void whenFullfilled(T value) {
+                    settled();
+                }
+
+                @Override
+                public void whenBroken(PromiseBrokenException promiseBrokenException) {
+                    settled();
+                }
+
+                private void settled() {
+                    if (pending.decrementAndGet() == 0) {
+                        Promises.fullFillQuietly(settledPromise, null);
+                    }
+                }
+            });
+        }
+    }
+
+    @Override
+    public boolean isRealized() {
+        return allPromise.isRealized();
+    }
+
+    @Override
+    public boolean isFullfilled() throws IllegalStateException {
+        return allPromise.isFullfilled();
+    }
+
+    @Override
+    public boolean isBroken() throws IllegalStateException {
+        return allPromise.isBroken();
+    }
+
+    @Override
+    public void await() throws InterruptedException {
+        allPromise.await();
+    }
+
+    @Override
+    public void await(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        allPromise.await(timeout, timeUnit);
+    }
+
+    @Override
+    public List<T> get() throws PromiseBrokenException, InterruptedException {
+        return allPromise.get();
+    }
+
+    @Override
+    public List<T> get(long timeout, TimeUnit timeUnit) throws PromiseBrokenException, TimeoutException, InterruptedException {
+        return allPromise.get(timeout, timeUnit);
+    }
+
+    @Override
+    public void addListener(PromiseListener promiseListener) {
+        allPromise.addListener(promiseListener);
+    }
+
+    /**
+     * Waits until every promise is realized or the timeout expires and returns the result of each
+     * promise, in order. Promises that weren't realized in time are pending.
+     * <p/>
+     * Blocking: puts the thread in a wait state
+     *
+     * @param timeout
+     * @param timeUnit
+     * @return result of every promise
+     * @throws InterruptedException if the calling/waiting thread is interrupted
+     */
+    public List<PartialResult<T>> getPartialResults(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        settledPromise.await(timeout, timeUnit);
+        return partialResults();
+    }
+
+    /**
+     * Returns a promise full-filled with the result of each promise, in order, once every promise is
+     * realized or the timeout expires. Nothing waits, the results are collected on the thread that
+     * realizes the last promise or on the timer.
+     * <p/>
+     * NonBlocking
+     *
+     * @param timeout
+     * @param timeUnit
+     * @param scheduler scheduler on which the timer is armed
+     * @return promise of the result of every promise
+     */
+    public Promise<List<PartialResult<T>>> partialResults(long timeout, TimeUnit timeUnit, ScheduledExecutorService scheduler) {
+        final DeliverablePromise<List<PartialResult<T>>> partialResultsPromise = new DeliverablePromise<>();
+        Promises.withTimeout(settledPromise, timeout, timeUnit, scheduler).addListener(new PromiseListener<Void>() {
+            @Override
+            public void whenFullfilled(Void value) {
+                Promises.fullFillQuietly(partialResultsPromise, partialResults());
+            }
+
+            @Override
+            public void whenBroken(PromiseBrokenException promiseBrokenException) {
+                Promises.fullFillQuietly(partialResultsPromise, partialResults());
+            }
+        });
+        return partialResultsPromise;
+    }
+
+    private List<PartialResult<T>> partialResults() {
+        List<PartialResult<T>> partialResults = new ArrayList<>(promises.size());
+        for (Promise<? extends T> promise : promises) {
+            partialResults.add(PartialResult.<T>of(promise));
+        }
+        return partialResults;
+    }
+}
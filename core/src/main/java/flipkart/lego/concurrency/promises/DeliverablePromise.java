@@ -20,12 +20,12 @@ import flipkart.lego.concurrency.api.Promise;
 import flipkart.lego.concurrency.api.PromiseListener;
 import flipkart.lego.concurrency.exceptions.PromiseBrokenException;
 import flipkart.lego.concurrency.exceptions.PromiseRealizedException;
-
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 
 
 /**
@@ -34,22 +34,29 @@ import java.util.concurrent.TimeoutException;
  * <p/>
  * one is a fullfillPromise(T value)
  * and another is breakPromise(promiseBrokenException)
+ * <p/>
+ * The promise is lock free. All of its state is a single reference that is swapped with compare and set:
+ * until the promise is realized it's the head of a stack of listeners and waiting threads, once it's
+ * realized it's the outcome of the promise. Exactly one realization wins the swap, which then triggers the
+ * listeners and wakes the threads it took off the stack. Waiting threads are only parked if the promise
+ * hasn't been realized when they get to wait, a thread that stops waiting before it is realized unlinks
+ * itself from the stack.
+ * <p/>
+ * Waiting threads are woken before any listener is triggered. An exception thrown by a listener propagates
+ * to the caller that realized the promise, or added the listener, and the listeners after it aren't triggered.
  */
 public class DeliverablePromise<T> implements Promise<T> {
 
-    // we use a CountDownLatch at the core of a deliverable promise to coordinate promise delivery
-    private final CountDownLatch countDownLatch;
-    private T value = null;
-    private final List<PromiseListener> promiseListeners = new ArrayList<>();
-    private boolean broken = false;
-    private PromiseBrokenException promiseBrokenException;
+    private static final AtomicReferenceFieldUpdater<DeliverablePromise, Object> STATE = AtomicReferenceFieldUpdater.newUpdater(DeliverablePromise.class, Object.class, "state");
+
+    // null or the head of the stack of nodes while the promise is pending, an Outcome once it's realized
+    private volatile Object state = null;
 
     /**
      * A deliverable promise can be constructed using this constructor and can later
      * be explicitly realized.
      */
     public DeliverablePromise() {
-        this.countDownLatch = new CountDownLatch(1);
     }
 
     /**
@@ -59,84 +66,76 @@ public class DeliverablePromise<T> implements Promise<T> {
      * @param promise
      */
     public DeliverablePromise(Promise<T> promise) {
-        this.countDownLatch = new CountDownLatch(1);
         PromiseListener promiseListener = new ComposingPromiseListener<>(this);
         promise.addListener(promiseListener);
     }
 
     @Override
     public boolean isRealized() {
-        return countDownLatch.getCount() == 0;
+        return state instanceof Outcome;
     }
 
 
     @Override
     public boolean isFullfilled() throws IllegalStateException {
-        if (isRealized()) {
-            return !broken;
-        } else {
-            throw new IllegalStateException("Promise hasn't been realized yet");
-        }
+        return !outcome().broken();
     }
 
 
     @Override
     public boolean isBroken() throws IllegalStateException {
-        if (isRealized()) {
-            return broken;
-        } else {
-            throw new IllegalStateException("Promise hasn't been realized yet");
-        }
+        return outcome().broken();
     }
 
 
     @Override
     public void await() throws InterruptedException {
-        countDownLatch.await();
+        if (!isRealized()) {
+            awaitNanos(false, 0);
+        }
     }
 
 
     @Override
     public void await(long timeout, TimeUnit timeUnit) throws InterruptedException {
-        countDownLatch.await(timeout, timeUnit);
+        if (!isRealized()) {
+            awaitNanos(true, timeUnit.toNanos(timeout));
+        }
     }
 
 
     @Override
     public T get() throws PromiseBrokenException, InterruptedException {
         await();
-        if (isFullfilled()) {
-            return value;
-        } else {
-            throw new PromiseBrokenException(promiseBrokenException);
-        }
+        return outcome().get();
     }
 
 
     @Override
     public T get(long timeout, TimeUnit timeUnit) throws PromiseBrokenException, TimeoutException, InterruptedException {
         await(timeout, timeUnit);
-        if (isRealized())
-
-        {
-            if (isFullfilled()) {
-                return value;
-            } else {
-                throw new PromiseBrokenException(promiseBrokenException);
-            }
+        if (isRealized()) {
+            return outcome().get();
         } else {
             throw new TimeoutException("Timed out waiting for the promise");
         }
-
     }
 
-    /*This method is synchronized to avoid the read-examine-write race conditions*/
     @Override
-    public synchronized void addListener(PromiseListener promiseListener) {
-        if (isRealized()) {
-            triggerListener(promiseListener);
-        } else {
-            promiseListeners.add(promiseListener);
+    public void addListener(PromiseListener promiseListener) {
+        Node node = null;
+        for (Object current = state; ; current = state) {
+            if (current instanceof Outcome) {
+                triggerListener(promiseListener, outcome());
+                return;
+            }
+            if (node == null) {
+                node = new Node(promiseListener, null);
+            }
+            node.next = (Node) current;
+            if (STATE.compareAndSet(this, current, node)) {
+                return;
+            }
         }
     }
 
@@ -148,13 +147,7 @@ public class DeliverablePromise<T> implements Promise<T> {
     * @throws PromiseRealizedException if the promise was already set.
     */
     public void fullFillPromise(T value) throws PromiseRealizedException {
-        if (!isRealized()) {
-            this.value = value;
-            countDownLatch.countDown();
-            triggerListeners();
-        } else {
-            throw new PromiseRealizedException("Promise already fulfilled");
-        }
+        realize(new Outcome<>(value, null));
     }
 
     /*
@@ -164,28 +157,165 @@ public class DeliverablePromise<T> implements Promise<T> {
     * @throws PromiseRealizedException if the promise was already set.
     */
     public void breakPromise(PromiseBrokenException promiseBrokenException) throws PromiseRealizedException {
-        if (!isRealized()) {
-            countDownLatch.countDown();
-            broken = true;
-            this.promiseBrokenException = new PromiseBrokenException(promiseBrokenException);
-            triggerListeners();
-        } else {
-            throw new PromiseRealizedException("Promise already fulfilled");
+        realize(new Outcome<T>(null, new PromiseBrokenException(promiseBrokenException)));
+    }
+
+    private void realize(Outcome<T> outcome) throws PromiseRealizedException {
+        for (Object current = state; ; current = state) {
+            if (current instanceof Outcome) {
+                throw new PromiseRealizedException("Promise already fulfilled");
+            }
+            if (STATE.compareAndSet(this, current, outcome)) {
+                triggerListeners((Node) current, outcome);
+                return;
+            }
         }
     }
 
-    /*This method is synchronized to avoid race conditions*/
-    private synchronized void triggerListeners() {
-        for (PromiseListener promiseListener : promiseListeners) {
-            triggerListener(promiseListener);
+    /*
+     * the stack holds the latest node first, listeners are triggered in the order they were added. The stack is
+     * only read, a waiter that is concurrently unlinking itself may still be writing to it.
+     */
+    private void triggerListeners(Node head, Outcome<T> outcome) {
+        List<PromiseListener> promiseListeners = new ArrayList<>();
+        for (Node node = head; node != null; node = node.next) {
+            Thread waiter = node.waiter;
+            if (waiter != null) {
+                LockSupport.unpark(waiter);
+            } else if (node.promiseListener != null) {
+                promiseListeners.add(node.promiseListener);
+            }
+        }
+        for (int i = promiseListeners.size() - 1; i >= 0; i--) {
+            triggerListener(promiseListeners.get(i), outcome);
         }
     }
 
-    private void triggerListener(PromiseListener promiseListener) {
-        if (isFullfilled()) {
-            promiseListener.whenFullfilled(value);
+    private void triggerListener(PromiseListener promiseListener, Outcome<T> outcome) {
+        if (outcome.broken()) {
+            promiseListener.whenBroken(outcome.promiseBrokenException);
         } else {
-            promiseListener.whenBroken(promiseBrokenException);
+            promiseListener.whenFullfilled(outcome.value);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Outcome<T> outcome() throws IllegalStateException {
+        Object current = state;
+        if (current instanceof Outcome) {
+            return (Outcome<T>) current;
+        } else {
+            throw new IllegalStateException("Promise hasn't been realized yet");
+        }
+    }
+
+    /*
+     * Pushes a waiter for the current thread and parks it until the promise is realized. A waiter that gives up,
+     * on timeout or interrupt, clears its thread and unlinks itself, so repeated timed waits don't pile up.
+     */
+    private void awaitNanos(boolean timed, long nanos) throws InterruptedException {
+        long deadline = timed ? System.nanoTime() + nanos : 0;
+        Node waiter = new Node(null, Thread.currentThread());
+        for (Object current = state; ; current = state) {
+            if (current instanceof Outcome) {
+                return;
+            }
+            waiter.next = (Node) current;
+            if (STATE.compareAndSet(this, current, waiter)) {
+                break;
+            }
+        }
+        try {
+            while (!isRealized()) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (!timed) {
+                    LockSupport.park(this);
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+            }
+        } finally {
+            waiter.waiter = null;
+            if (!isRealized()) {
+                removeAbandonedWaiters();
+            }
+        }
+    }
+
+    /*
+     * Unlinks every waiter that has given up, in the manner of Guava's AbstractFuture.removeWaiter. The head is
+     * unlinked with a compare and set, any other node by a write to its predecessor, which is retried from the
+     * head if the predecessor turns out to have been given up on as well.
+     */
+    private void removeAbandonedWaiters() {
+        restart:
+        for (; ; ) {
+            Object current = state;
+            if (!(current instanceof Node)) {
+                return;
+            }
+            Node predecessor = null;
+            Node node = (Node) current;
+            while (node != null) {
+                Node next = node.next;
+                if (!node.isAbandoned()) {
+                    predecessor = node;
+                } else if (predecessor != null) {
+                    predecessor.next = next;
+                    if (predecessor.isAbandoned()) {
+                        continue restart;
+                    }
+                } else if (!STATE.compareAndSet(this, node, next)) {
+                    continue restart;
+                }
+                node = next;
+            }
+            return;
+        }
+    }
+
+    private static final class Outcome<T> {
+        private final T value;
+        private final PromiseBrokenException promiseBrokenException;
+
+        private Outcome(T value, PromiseBrokenException promiseBrokenException) {
+            this.value = value;
+            this.promiseBrokenException = promiseBrokenException;
+        }
+
+        private boolean broken() {
+            return promiseBrokenException != null;
+        }
+
+        private T get() throws PromiseBrokenException {
+            if (broken()) {
+                throw new PromiseBrokenException(promiseBrokenException);
+            }
+            return value;
+        }
+    }
+
+    /*
+     * a node of the stack is either a listener or a waiting thread
+     */
+    private static final class Node {
+        private final PromiseListener promiseListener;
+        private volatile Thread waiter;
+        private volatile Node next;
+
+        private Node(PromiseListener promiseListener, Thread waiter) {
+            this.promiseListener = promiseListener;
+            this.waiter = waiter;
+        }
+
+        private boolean isAbandoned() {
+            return promiseListener == null && waiter == null;
         }
     }
 }
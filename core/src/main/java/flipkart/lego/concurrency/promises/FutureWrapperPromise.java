@@ -16,6 +16,7 @@
 
 package flipkart.lego.concurrency.promises;
 
+import com.google.common.util.concurrent.Uninterruptibles;
 import flipkart.lego.concurrency.api.Promise;
 import flipkart.lego.concurrency.api.PromiseListener;
 import flipkart.lego.concurrency.exceptions.PromiseBrokenException;
@@ -24,11 +25,17 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.*;
 
+/**
+ * A promise over a plain {@link Future}. A future can't notify anyone when it completes, so the listeners
+ * of this promise are only triggered when a thread waits on it. {@link Promises#fromFuture} and
+ * {@link Promises#fromCompletionStage} are realized as soon as the work completes and should be preferred.
+ */
 public class FutureWrapperPromise<T> implements Promise<T> {
 
     private final Future<T> future;
     private final List<PromiseListener<T>> promiseListeners = new ArrayList<>();
-    private PromiseBrokenException promiseBrokenException;
+    private volatile PromiseBrokenException promiseBrokenException;
+    private boolean listenersTriggered = false;
 
     public FutureWrapperPromise(Future<T> future) {
         this.future = future;
@@ -41,12 +48,31 @@ public class FutureWrapperPromise<T> implements Promise<T> {
 
     @Override
     public boolean isFullfilled() throws IllegalStateException {
-        return !future.isCancelled();
+        return brokenException() == null;
     }
 
     @Override
     public boolean isBroken() throws IllegalStateException {
-        return future.isCancelled();
+        return brokenException() != null;
+    }
+
+    /*
+     * the exception the promise is broken with, null if it's full-filled. A future that failed or was cancelled breaks it
+     */
+    private PromiseBrokenException brokenException() {
+        if (!future.isDone()) {
+            throw new IllegalStateException("Promise is not realized yet");
+        }
+        if (promiseBrokenException == null) {
+            try {
+                Uninterruptibles.getUninterruptibly(future);
+            } catch (ExecutionException exception) {
+                promiseBrokenException = new PromiseBrokenException(exception.getCause());
+            } catch (CancellationException exception) {
+                promiseBrokenException = new PromiseBrokenException(exception);
+            }
+        }
+        return promiseBrokenException;
     }
 
     @Override
@@ -55,12 +81,12 @@ public class FutureWrapperPromise<T> implements Promise<T> {
             future.get();
             triggerListeners();
         } catch (ExecutionException exception) {
-            promiseBrokenException = new PromiseBrokenException(exception);
+            triggerListeners();
             throw new InterruptedException(exception.getMessage());
         } catch (InterruptedException exception) {
             throw exception;
         } catch (CancellationException exception) {
-            promiseBrokenException = new PromiseBrokenException(exception);
+            triggerListeners();
         }
 
     }
@@ -71,12 +97,12 @@ public class FutureWrapperPromise<T> implements Promise<T> {
             future.get(timeout, timeUnit);
             triggerListeners();
         } catch (ExecutionException exception) {
-            promiseBrokenException = new PromiseBrokenException(exception);
+            triggerListeners();
             throw new InterruptedException(exception.getMessage());
         } catch (InterruptedException exception) {
             throw exception;
         } catch (CancellationException exception) {
-            promiseBrokenException = new PromiseBrokenException(exception);
+            triggerListeners();
         } catch (TimeoutException exception) {
             //do nothing
         }
@@ -89,11 +115,11 @@ public class FutureWrapperPromise<T> implements Promise<T> {
             triggerListeners();
             return value;
         } catch (ExecutionException exception) {
-            promiseBrokenException = new PromiseBrokenException(exception);
+            triggerListeners();
             throw new InterruptedException(exception.getMessage());
         } catch (CancellationException exception) {
-            promiseBrokenException = new PromiseBrokenException(exception);
-            throw new PromiseBrokenException(promiseBrokenException);
+            triggerListeners();
+            throw new PromiseBrokenException(brokenException());
         }
     }
 
@@ -104,38 +130,65 @@ public class FutureWrapperPromise<T> implements Promise<T> {
             triggerListeners();
             return value;
         } catch (ExecutionException exception) {
-            promiseBrokenException = new PromiseBrokenException(exception);
+            triggerListeners();
             throw new InterruptedException(exception.getMessage());
         } catch (CancellationException exception) {
-            promiseBrokenException = new PromiseBrokenException(exception);
-            throw new PromiseBrokenException(promiseBrokenException);
+            triggerListeners();
+            throw new PromiseBrokenException(brokenException());
         }
     }
 
+    /*
+     * listeners are only run once the lock has been released, so that a listener never holds up another thread
+     */
     @Override
-    public synchronized void addListener(PromiseListener promiseListener) {
-        if (isRealized()) {
+    public void addListener(PromiseListener promiseListener) {
+        boolean added;
+        synchronized (this) {
+            added = !listenersTriggered;
+            if (added) {
+                promiseListeners.add(promiseListener);
+            }
+        }
+        if (!added) {
             triggerListener(promiseListener);
-        } else {
-            promiseListeners.add(promiseListener);
+        } else if (future.isDone()) {
+            //the future may be done without anyone having waited on it yet
+            triggerListeners();
         }
     }
 
-    //synchronized code block to avoid race conditions when adding listener
-    private synchronized void triggerListeners() {
-        for (PromiseListener promiseListener : promiseListeners) {
+    /*
+     * Marks the listeners triggered and takes them in one step under the lock, so that a listener added
+     * meanwhile is either taken here or triggered by addListener, never both or neither. Only the first
+     * call after the future is done triggers the listeners, however many threads wait on the promise.
+     */
+    private void triggerListeners() {
+        List<PromiseListener<T>> realizedListeners;
+        synchronized (this) {
+            if (listenersTriggered) {
+                return;
+            }
+            listenersTriggered = true;
+            realizedListeners = new ArrayList<>(promiseListeners);
+            promiseListeners.clear();
+        }
+        for (PromiseListener promiseListener : realizedListeners) {
             triggerListener(promiseListener);
         }
     }
 
+    /*
+     * an exception thrown by the listener propagates to the thread that triggered it
+     */
     private void triggerListener(PromiseListener promiseListener) {
-        if (isFullfilled()) {
-            try {
-                promiseListener.whenFullfilled(future.get());
-            } catch (Exception e) {
-            }
-        } else {
-            promiseListener.whenBroken(promiseBrokenException);
+        T value;
+        try {
+            value = Uninterruptibles.getUninterruptibly(future);
+        } catch (ExecutionException | CancellationException exception) {
+            promiseListener.whenBroken(brokenException());
+            return;
         }
+        promiseListener.whenFullfilled(value);
     }
 }
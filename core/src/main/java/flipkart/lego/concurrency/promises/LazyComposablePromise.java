@@ -36,16 +36,20 @@ import java.util.concurrent.TimeoutException;
  * if any of them is broken, the get throws a promise broken exception
  * <p/>
  * the promise can only be fullfilled if we call an await/get on this promise.
- * This is what makes this promise lazy.
+ * This is what makes this promise lazy. Once it's realized every await/get returns
+ * the same unmodifiable list, or throws, without collecting the values again.
+ * <p/>
+ * the values are collected one promise at a time on the calling thread, {@link CompositePromise}
+ * is realized by its promises instead and should be preferred.
  */
 public class LazyComposablePromise<T> implements Promise<List<T>> {
 
-    private final List value = new ArrayList();
     private final List<PromiseListener> promiseListeners = new ArrayList<>();
     private final List<Promise> promises = new ArrayList<>();
-    private boolean broken = false;
-    private boolean realized = false;
-    private PromiseBrokenException promiseBrokenException;
+    private volatile boolean broken = false;
+    private volatile boolean realized = false;
+    private volatile PromiseBrokenException promiseBrokenException;
+    private volatile List<T> value;
 
     private LazyComposablePromise() {
     } //cannot be constructed like this.
@@ -85,7 +89,7 @@ public class LazyComposablePromise<T> implements Promise<List<T>> {
         try {
             getPromises();
         } catch (PromiseBrokenException exception) {
-            promiseBrokenException = new PromiseBrokenException(exception);
+            //the promise was broken, waiting is over
         }
     }
 
@@ -94,7 +98,7 @@ public class LazyComposablePromise<T> implements Promise<List<T>> {
         try {
             getPromises(timeout, timeUnit);
         } catch (PromiseBrokenException exception) {
-            promiseBrokenException = new PromiseBrokenException(exception);
+            //the promise was broken, waiting is over
         } catch (TimeoutException exception) {
 
         }
@@ -102,28 +106,47 @@ public class LazyComposablePromise<T> implements Promise<List<T>> {
 
     @Override
     public List<T> get() throws PromiseBrokenException, InterruptedException {
-        getPromises();
-        return value;
+        return getPromises();
     }
 
     @Override
     public List<T> get(long timeout, TimeUnit timeUnit) throws PromiseBrokenException, TimeoutException, InterruptedException {
-        getPromises(timeout, timeUnit);
-        return value;
+        return getPromises(timeout, timeUnit);
     }
 
+    /*
+     * listeners are only run once the lock has been released, so that a listener never holds up another thread
+     */
     @Override
-    public synchronized void addListener(PromiseListener promiseListener) {
-        if (isRealized()) {
-            triggerListener(promiseListener);
-        } else {
-            promiseListeners.add(promiseListener);
+    public void addListener(PromiseListener promiseListener) {
+        synchronized (this) {
+            if (!realized) {
+                promiseListeners.add(promiseListener);
+                return;
+            }
         }
+        triggerListener(promiseListener);
     }
 
-    //code block is synchronized to avoid concurrency issues during add listener
-    private synchronized void triggerListeners() {
-        for (PromiseListener promiseListener : promiseListeners) {
+    /*
+     * The outcome is published and the listeners to trigger are taken in one step under the lock, so that a
+     * listener added meanwhile is either taken here or sees the promise realized, never both or neither.
+     * Only the first realization triggers the listeners.
+     */
+    private void realize(boolean broken, PromiseBrokenException promiseBrokenException, List<T> value) {
+        List<PromiseListener> realizedListeners;
+        synchronized (this) {
+            if (realized) {
+                return;
+            }
+            this.broken = broken;
+            this.promiseBrokenException = promiseBrokenException;
+            this.value = value;
+            realized = true;
+            realizedListeners = new ArrayList<>(promiseListeners);
+            promiseListeners.clear();
+        }
+        for (PromiseListener promiseListener : realizedListeners) {
             triggerListener(promiseListener);
         }
     }
@@ -136,49 +159,57 @@ public class LazyComposablePromise<T> implements Promise<List<T>> {
         }
     }
 
-    private void getPromises() throws PromiseBrokenException, InterruptedException {
+    /*
+     * the value or the broken exception of the first realization, whoever realized it
+     */
+    private List<T> realizedValue() throws PromiseBrokenException {
+        if (broken) {
+            throw new PromiseBrokenException(promiseBrokenException);
+        }
+        return value;
+    }
+
+    private List<T> getPromises() throws PromiseBrokenException, InterruptedException {
+        if (realized) {
+            return realizedValue();
+        }
+        List<T> values = new ArrayList<>(promises.size());
         for (Promise promise : promises) {
             try {
-                value.add(promise.get());
+                values.add((T) promise.get());
             } catch (PromiseBrokenException exception) {
-                broken = true;
-                realized = true;
-                promiseBrokenException = new PromiseBrokenException(exception);
-                triggerListeners();
+                realize(true, new PromiseBrokenException(exception), null);
                 throw exception;
             } catch (InterruptedException exception) {
-                broken = true;
-                realized = true;
-                triggerListeners();
+                realize(true, new PromiseBrokenException(exception), null);
                 throw exception;
             }
         }
-        realized = true;
-        triggerListeners();
+        realize(false, null, Collections.unmodifiableList(values));
+        return realizedValue();
     }
 
-    private void getPromises(long timeout, TimeUnit timeUnit) throws PromiseBrokenException, InterruptedException, TimeoutException {
-
+    /*
+     * the timeout bounds the wait for all the promises together, each promise gets what's left of it
+     */
+    private List<T> getPromises(long timeout, TimeUnit timeUnit) throws PromiseBrokenException, InterruptedException, TimeoutException {
+        if (realized) {
+            return realizedValue();
+        }
+        long deadline = System.nanoTime() + timeUnit.toNanos(timeout);
+        List<T> values = new ArrayList<>(promises.size());
         for (Promise promise : promises) {
             try {
-                value.add(promise.get(timeout, timeUnit));
+                values.add((T) promise.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
             } catch (PromiseBrokenException exception) {
-                broken = true;
-                realized = true;
-                promiseBrokenException = new PromiseBrokenException(exception);
-                triggerListeners();
+                realize(true, new PromiseBrokenException(exception), null);
                 throw exception;
             } catch (InterruptedException exception) {
-                broken = true;
-                realized = true;
-                triggerListeners();
-                throw exception;
-            } catch (TimeoutException exception) {
+                realize(true, new PromiseBrokenException(exception), null);
                 throw exception;
             }
-            realized = true;
-            triggerListeners();
         }
-
+        realize(false, null, Collections.unmodifiableList(values));
+        return realizedValue();
     }
 }
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.concurrency.promises;
+
+import flipkart.lego.concurrency.api.Promise;
+import flipkart.lego.concurrency.exceptions.PromiseBrokenException;
+
+/**
+ * The result of one of the promises of a {@link CompositePromise} at the time its partial results were
+ * collected. A promise that wasn't realized in time is {@link State#PENDING}.
+ */
+public final class PartialResult<T> {
+
+    public enum State {
+        FULLFILLED, BROKEN, PENDING
+    }
+
+    private final State state;
+    private final T value;
+    private final PromiseBrokenException promiseBrokenException;
+
+    private PartialResult(State state, T value, PromiseBrokenException promiseBrokenException) {
+        this.state = state;
+        this.value = value;
+        this.promiseBrokenException = promiseBrokenException;
+    }
+
+    /*
+     * a realized promise is read without waiting
+     */
+    static <T> PartialResult<T> of(Promise<? extends T> promise) {
+        if (!promise.isRealized()) {
+            return new PartialResult<>(State.PENDING, null, null);
+        }
+        try {
+            return new PartialResult<T>(State.FULLFILLED, promise.get(), null);
+        } catch (PromiseBrokenException exception) {
+            return new PartialResult<>(State.BROKEN, null, exception);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return new PartialResult<>(State.PENDING, null, null);
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isFullfilled() {
+        return state == State.FULLFILLED;
+    }
+
+    /**
+     * @return value of the promise if it was full-filled, null otherwise
+     */
+    public T getValue() {
+        return value;
+    }
+
+    /**
+     * @return exception of the promise if it was broken, null otherwise
+     */
+    public PromiseBrokenException getPromiseBrokenException() {
+        return promiseBrokenException;
+    }
+
+    @Override
+    public String toString() {
+        return state + (state == State.FULLFILLED ? "(" + value + ")" : "");
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.concurrency.promises;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import flipkart.lego.concurrency.api.Promise;
+import flipkart.lego.concurrency.api.PromiseListener;
+import flipkart.lego.concurrency.exceptions.PromiseBrokenException;
+import flipkart.lego.concurrency.exceptions.PromiseRealizedException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+/**
+ * Combinators that compose {@link Promise}s through their listeners. None of them waits on a promise,
+ * the returned promise is realized on the thread that realizes the last promise it depends on, so a graph
+ * of promises is realized entirely on the threads that complete the work.
+ * <p/>
+ * A function that throws a {@link RuntimeException} breaks the returned promise.
+ * <p/>
+ * Promises can also be adapted from and to {@link ListenableFuture}s and {@link CompletableFuture}s.
+ * Unlike a {@link FutureWrapperPromise}, whose listeners only run when someone waits on it, an adapted
+ * promise is realized by a callback the moment the future completes.
+ */
+public final class Promises {
+
+    private Promises() {
+    }
+
+    /**
+     * Returns a promise full-filled with the value of the given promise transformed by the function.
+     *
+     * @param promise
+     * @param function
+     * @return transformed promise
+     */
+    public static <V, R> Promise<R> map(Promise<V> promise, final Function<? super V, ? extends R> function) {
+        final DeliverablePromise<R> mappedPromise = new DeliverablePromise<>();
+        promise.addListener(new PromiseListener<V>() {
+            @Override
+            public void whenFullfilled(V value) {
+                R mappedValue;
+                try {
+                    mappedValue = function.apply(value);
+                } catch (RuntimeException exception) {
+                    breakQuietly(mappedPromise, new PromiseBrokenException(exception));
+                    return;
+                }
+                fullFillQuietly(mappedPromise, mappedValue);
+            }
+
+            @Override
+            public void whenBroken(PromiseBrokenException promiseBrokenException) {
+                breakQuietly(mappedPromise, promiseBrokenException);
+            }
+        });
+        return mappedPromise;
+    }
+
+    /**
+     * Returns a promise realized like the promise the function returns for the value of the given promise.
+     *
+     * @param promise
+     * @param function
+     * @return transformed promise
+     */
+    public static <V, R> Promise<R> flatMap(Promise<V> promise, final Function<? super V, ? extends Promise<R>> function) {
+        final DeliverablePromise<R> mappedPromise = new DeliverablePromise<>();
+        promise.addListener(new PromiseListener<V>() {
+            @Override
+            public void whenFullfilled(V value) {
+                Promise<R> nextPromise;
+                try {
+                    nextPromise = function.apply(value);
+                } catch (RuntimeException exception) {
+                    breakQuietly(mappedPromise, new PromiseBrokenException(exception));
+                    return;
+                }
+                nextPromise.addListener(new ComposingPromiseListener<>(mappedPromise));
+            }
+
+            @Override
+            public void whenBroken(PromiseBrokenException promiseBrokenException) {
+                breakQuietly(mappedPromise, promiseBrokenException);
+            }
+        });
+        return mappedPromise;
+    }
+
+    @SafeVarargs
+    public static <V> Promise<List<V>> allOf(Promise<? extends V>... promises) {
+        return allOf(Arrays.asList(promises));
+    }
+
+    /**
+     * Returns a promise full-filled with the values of all the given promises, in their order, once every
+     * one of them has been full-filled. It's broken as soon as any of them is broken.
+     *
+     * @param promises
+     * @return promise of all the values
+     */
+    public static <V> Promise<List<V>> allOf(List<? extends Promise<? extends V>> promises) {
+        final DeliverablePromise<List<V>> allPromise = new DeliverablePromise<>();
+        if (promises.isEmpty()) {
+            fullFillQuietly(allPromise, Collections.<V>emptyList());
+            return allPromise;
+        }
+
+        final AtomicReferenceArray<V> values = new AtomicReferenceArray<>(promises.size());
+        final AtomicInteger pending = new AtomicInteger(promises.size());
+        for (int i = 0; i < promises.size(); i++) {
+            final int index = i;
+            promises.get(i).addListener(new PromiseListener<V>() {
+                @Override
+                public void whenFullfilled(V value) {
+                    values.set(index, value);
+                    if (pending.decrementAndGet() == 0) {
+                        List<V> allValues = new ArrayList<>(values.length());
+                        for (int j = 0; j < values.length(); j++) {
+                            allValues.add(values.get(j));
+                        }
+                        fullFillQuietly(allPromise, allValues);
+                    }
+                }
+
+                @Override
+                public void whenBroken(PromiseBrokenException promiseBrokenException) {
+                    breakQuietly(allPromise, promiseBrokenException);
+                }
+            });
+        }
+        return allPromise;
+    }
+
+    @SafeVarargs
+    public static <V> Promise<V> anyOf(Promise<? extends V>... promises) {
+        return anyOf(Arrays.asList(promises));
+    }
+
+    /**
+     * Returns a promise realized like the first of the given promises to be realized, whether it's
+     * full-filled or broken.
+     *
+     * @param promises
+     * @return promise of the first realization
+     */
+    public static <V> Promise<V> anyOf(List<? extends Promise<? extends V>> promises) {
+        if (promises.isEmpty()) {
+            throw new IllegalArgumentException("No promises to choose from");
+        }
+        final DeliverablePromise<V> anyPromise = new DeliverablePromise<>();
+        for (Promise<? extends V> promise : promises) {
+            promise.addListener(new PromiseListener<V>() {
+                @Override
+                public void whenFullfilled(V value) {
+                    fullFillQuietly(anyPromise, value);
+                }
+
+                @Override
+                public void whenBroken(PromiseBrokenException promiseBrokenException) {
+                    breakQuietly(anyPromise, promiseBrokenException);
+                }
+            });
+        }
+        return anyPromise;
+    }
+
+    @SafeVarargs
+    public static <V> Promise<V> firstSuccessful(Promise<? extends V>... promises) {
+        return firstSuccessful(Arrays.asList(promises));
+    }
+
+    /**
+     * Returns a promise full-filled with the value of the first of the given promises to be full-filled.
+     * It's only broken once all of them are broken, with the exception of the last one to be broken.
+     *
+     * @param promises
+     * @return promise of the first value
+     */
+    public static <V> Promise<V> firstSuccessful(List<? extends Promise<? extends V>> promises) {
+        if (promises.isEmpty()) {
+            throw new IllegalArgumentException("No promises to choose from");
+        }
+        final DeliverablePromise<V> firstPromise = new DeliverablePromise<>();
+        final AtomicInteger pending = new AtomicInteger(promises.size());
+        for (Promise<? extends V> promise : promises) {
+            promise.addListener(new PromiseListener<V>() {
+                @Override
+                public void whenFullfilled(V value) {
+                    fullFillQuietly(firstPromise, value);
+                }
+
+                @Override
+                public void whenBroken(PromiseBrokenException promiseBrokenException) {
+                    if (pending.decrementAndGet() == 0) {
+                        breakQuietly(firstPromise, promiseBrokenException);
+                    }
+                }
+            });
+        }
+        return firstPromise;
+    }
+
+    /**
+     * Returns a promise realized like the given promise, or broken with a {@link TimeoutException} as
+     * its cause if the given promise isn't realized within the timeout.
+     *
+     * @param promise   promise to be time limited
+     * @param timeout   time to wait before breaking the returned promise
+     * @param timeUnit  unit of timeout
+     * @param scheduler scheduler on which the timer is armed
+     * @return time limited promise
+     */
+    public static <V> Promise<V> withTimeout(Promise<V> promise, final long timeout, final TimeUnit timeUnit, ScheduledExecutorService scheduler) {
+        if (promise.isRealized()) {
+            return promise;
+        }
+
+        final DeliverablePromise<V> timedPromise = new DeliverablePromise<>();
+        final ScheduledFuture<?> timer = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                breakQuietly(timedPromise, new PromiseBrokenException(new TimeoutException("Timed out after " + timeout + " " + timeUnit)));
+            }
+        }, Math.max(timeout, 0), timeUnit);
+
+        promise.addListener(new PromiseListener<V>() {
+            @Override
+            public void whenFullfilled(V value) {
+                timer.cancel(false);
+                fullFillQuietly(timedPromise, value);
+            }
+
+            @Override
+            public void whenBroken(PromiseBrokenException promiseBrokenException) {
+                timer.cancel(false);
+                breakQuietly(timedPromise, promiseBrokenException);
+            }
+        });
+        return timedPromise;
+    }
+
+    /**
+     * Returns a promise that is realized by a callback as soon as the future completes. It's full-filled
+     * with the value of the future, or broken with the cause of the failure or the cancellation.
+     *
+     * @param future
+     * @return promise of the value of the future
+     */
+    public static <V> Promise<V> fromFuture(ListenableFuture<V> future) {
+        final DeliverablePromise<V> promise = new DeliverablePromise<>();
+        Futures.addCallback(future, new FutureCallback<V>() {
+            @Override
+            public void onSuccess(V result) {
+                fullFillQuietly(promise, result);
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                breakQuietly(promise, new PromiseBrokenException(throwable));
+            }
+        }, directExecutor());
+        return promise;
+    }
+
+    /**
+     * Returns a promise that is realized by a callback as soon as the completion stage completes.
+     *
+     * @param completionStage
+     * @return promise of the value of the completion stage
+     */
+    public static <V> Promise<V> fromCompletionStage(CompletionStage<V> completionStage) {
+        final DeliverablePromise<V> promise = new DeliverablePromise<>();
+        completionStage.whenComplete(new BiConsumer<V, Throwable>() {
+            @Override
+            public void accept(V result, Throwable throwable) {
+                if (throwable == null) {
+                    fullFillQuietly(promise, result);
+                } else if (throwable instanceof CompletionException && throwable.getCause() != null) {
+                    breakQuietly(promise, new PromiseBrokenException(throwable.getCause()));
+                } else {
+                    breakQuietly(promise, new PromiseBrokenException(throwable));
+                }
+            }
+        });
+        return promise;
+    }
+
+    /**
+     * Returns a future that completes as soon as the promise is realized, exceptionally with the
+     * {@link PromiseBrokenException} if it's broken. Completing the future has no effect on the promise.
+     *
+     * @param promise
+     * @return future of the value of the promise
+     */
+    public static <V> CompletableFuture<V> toCompletableFuture(Promise<V> promise) {
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        promise.addListener(new PromiseListener<V>() {
+            @Override
+            public void whenFullfilled(V value) {
+                future.complete(value);
+            }
+
+            @Override
+            public void whenBroken(PromiseBrokenException promiseBrokenException) {
+                future.completeExceptionally(promiseBrokenException);
+            }
+        });
+        return future;
+    }
+
+    /*
+     * combinators race to realize the promises they return, losing the race is expected
+     */
+    static <V> boolean fullFillQuietly(DeliverablePromise<V> promise, V value) {
+        try {
+            promise.fullFillPromise(value);
+            return true;
+        } catch (PromiseRealizedException exception) {
+            return false;
+        }
+    }
+
+    static <V> boolean breakQuietly(DeliverablePromise<V> promise, PromiseBrokenException promiseBrokenException) {
+        try {
+            promise.breakPromise(promiseBrokenException);
+            return true;
+        } catch (PromiseRealizedException exception) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flipkart.lego.engine;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import flipkart.lego.engine.datasources.DispatchPlan;
+
+/**
+ * The futures of the data sources dispatched for a request, laid out in the positions of their {@link DispatchPlan}.
+ */
+final class DispatchedDataSources {
+
+    private final DispatchPlan dispatchPlan;
+    private final ListenableFuture[] futures;
+
+    DispatchedDataSources(DispatchPlan dispatchPlan, ListenableFuture[] futures) {
+        this.dispatchPlan = dispatchPlan;
+        this.futures = futures;
+    }
+
+    DispatchPlan getDispatchPlan() {
+        return dispatchPlan;
+    }
+
+    int size() {
+        return futures.length;
+    }
+
+    String getKey(int position) {
+        return dispatchPlan.key(position);
+    }
+
+    boolean isRequired(int position) {
+        return dispatchPlan.isRequired(position);
+    }
+
+    ListenableFuture getFuture(int position) {
+        return futures[position];
+    }
+
+    /**
+     * @param key
+     * @return future of the data source of the key, null if no such data source was dispatched
+     */
+    ListenableFuture getFuture(String key) {
+        int position = dispatchPlan.position(key);
+        return position < 0 ? null : futures[position];
+    }
+
+    /**
+     * @param key
+     * @return future of the data source of the key, null if no such required data source was dispatched
+     */
+    ListenableFuture getRequiredFuture(String key) {
+        int position = dispatchPlan.position(key);
+        return position < 0 || !dispatchPlan.isRequired(position) ? null : futures[position];
+    }
+}
@@ -16,11 +16,23 @@
 
 package flipkart.lego.engine;
 
-import com.google.common.base.Stopwatch;
+import com.google.common.base.Function;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.*;
 import flipkart.lego.api.entities.*;
 import flipkart.lego.api.exceptions.*;
+import flipkart.lego.api.helpers.Deadline;
+import flipkart.lego.api.helpers.Section;
+import flipkart.lego.api.helpers.TypedModel;
+import flipkart.lego.concurrency.futures.TimedFutures;
+import flipkart.lego.engine.datasources.CoalescingInterceptor;
+import flipkart.lego.engine.datasources.DataSourceDispatcher;
+import flipkart.lego.engine.datasources.DataSourceInterceptor;
+import flipkart.lego.engine.datasources.DispatchPlan;
+import flipkart.lego.engine.filters.CompiledFilterChain;
 import flipkart.lego.engine.filters.FilterChain;
+import flipkart.lego.engine.filters.FilterExecutionMode;
 import flipkart.lego.engine.filters.FilterExecutionPhase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,32 +40,111 @@ import org.slf4j.LoggerFactory;
 import java.util.*;
 import java.util.concurrent.*;
 
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
 /**
  * This is main engine for building responses for requests
  */
 public class Lego {
 
     private final LegoSet legoSet;
-    private final ListeningExecutorService dataSourceTPE;
-    private final ExecutorService filterTPE;
+    private final DataSourceDispatcher dataSourceDispatcher;
+    private final ListeningExecutorService filterTPE;
+    private final ScheduledExecutorService timeoutScheduler;
+    private final OptionalWaitPolicy optionalWaitPolicy;
+    private final FilterExecutionMode filterExecutionMode;
+    //runs work on the completing thread, unless that's a timer which must never be handed blocking work
+    private final Executor offTimerExecutor;
+    //buildables are weakly held so that a legoSet creating buildables per request doesn't grow it
+    private final Cache<Buildable, CompiledFilterChain> compiledFilterChains = CacheBuilder.newBuilder().weakKeys().build();
+    private final Cache<Buildable, DispatchPlan> dispatchPlans = CacheBuilder.newBuilder().weakKeys().build();
+
+    //marks a data source that wasn't realized, null is a legitimate value of a data source
+    private static final Object NOT_REALIZED = new Object();
 
     private final Logger exceptionLogger = LoggerFactory.getLogger("ExceptionLogger");
 
     public Lego(final LegoSet legoSet, final ExecutorService dataSourceExecutorService, final ExecutorService filterExecutorService) {
+        this(legoSet, dataSourceExecutorService, filterExecutorService, TimedFutures.sharedScheduler());
+    }
+
+    public Lego(final LegoSet legoSet, final ExecutorService dataSourceExecutorService, final ExecutorService filterExecutorService, final ScheduledExecutorService timeoutScheduler) {
+        this(legoSet, dataSourceExecutorService, filterExecutorService, timeoutScheduler, Collections.<DataSourceInterceptor>singletonList(new CoalescingInterceptor()));
+    }
+
+    public Lego(final LegoSet legoSet, final ExecutorService dataSourceExecutorService, final ExecutorService filterExecutorService, final ScheduledExecutorService timeoutScheduler, final List<DataSourceInterceptor> dataSourceInterceptors) {
+        this(legoSet, dataSourceExecutorService, filterExecutorService, timeoutScheduler, dataSourceInterceptors, OptionalWaitPolicy.fixed(1, TimeUnit.MILLISECONDS));
+    }
+
+    public Lego(final LegoSet legoSet, final ExecutorService dataSourceExecutorService, final ExecutorService filterExecutorService, final ScheduledExecutorService timeoutScheduler, final List<DataSourceInterceptor> dataSourceInterceptors, final OptionalWaitPolicy optionalWaitPolicy) {
+        this(legoSet, dataSourceExecutorService, filterExecutorService, timeoutScheduler, dataSourceInterceptors, optionalWaitPolicy, FilterExecutionMode.POOLED);
+    }
+
+    /**
+     * @param legoSet
+     * @param dataSourceExecutorService executor on which {@link DataSource}s are dispatched
+     * @param filterExecutorService     executor on which {@link Filter}s and {@link Buildable#build} are run
+     * @param timeoutScheduler          scheduler used only to fire timeouts, it is never handed blocking work
+     * @param dataSourceInterceptors    interceptors every {@link DataSource} is dispatched through, in order.
+     *                                  The other constructors install a {@link CoalescingInterceptor}
+     * @param optionalWaitPolicy        how long to wait for optional data sources once required data sources are
+     *                                  realized. The other constructors wait 1 millisecond
+     * @param filterExecutionMode       whether filters and {@link Buildable#build} are run on the filter executor or
+     *                                  inline. The other constructors run them on the filter executor
+     */
+    public Lego(final LegoSet legoSet, final ExecutorService dataSourceExecutorService, final ExecutorService filterExecutorService, final ScheduledExecutorService timeoutScheduler, final List<DataSourceInterceptor> dataSourceInterceptors, final OptionalWaitPolicy optionalWaitPolicy, final FilterExecutionMode filterExecutionMode) {
         this.legoSet = legoSet;
-        this.dataSourceTPE = getListeningExecutorService(dataSourceExecutorService);
-        this.filterTPE = filterExecutorService;
+        this.optionalWaitPolicy = optionalWaitPolicy;
+        this.timeoutScheduler = TimedFutures.timerScheduler(timeoutScheduler);
+        this.dataSourceDispatcher = new DataSourceDispatcher(dataSourceExecutorService, dataSourceInterceptors, this.timeoutScheduler);
+        this.filterTPE = getListeningExecutorService(filterExecutorService);
+        this.filterExecutionMode = filterExecutionMode;
+        this.offTimerExecutor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (TimedFutures.isTimerThread()) {
+                    filterTPE.execute(command);
+                } else {
+                    command.run();
+                }
+            }
+        };
     }
 
+    /**
+     * Builds the response for a request, the calling thread is blocked until the response
+     * has been built or building it has failed.
+     */
     public void buildResponse(final Request request, Response response) throws ElementNotFoundException, BadRequestException, InternalErrorException, ProcessingException {
-        final Buildable buildable;
-        Map<String, DataSource> requiredDataSources = null;
-        Map<String, DataSource> optionalDataSources = null;
+        ListenableFuture<Response> responseFuture = buildResponseAsync(request, response);
+        try {
+            responseFuture.get();
+        } catch (InterruptedException interruptedException) {
+            exceptionLogger.error("InterruptedException: building response was interrupted {}, Exception:{}", request, interruptedException);
+            responseFuture.cancel(true);
+            throw new InternalErrorException(interruptedException);
+        } catch (CancellationException cancellationException) {
+            throw new InternalErrorException(cancellationException);
+        } catch (ExecutionException executionException) {
+            throwCause(executionException.getCause());
+        }
+    }
 
-        //this is the model that will passed on to the buildable element during build time
-        Map<String, ListenableFuture> requiredFutureHashMap = new HashMap<>();
-        Map<String, ListenableFuture> optionalFutureHashMap = new HashMap<>();
-        Map<String, Object> modelHashMap = new HashMap<>();
+    /**
+     * Builds the response for a request without parking the calling thread. Request filters,
+     * data source dispatch, {@link Buildable#build} and response filters are chained through
+     * callbacks and timeouts are enforced by timers, so no thread waits on a future.
+     * <p/>
+     * The returned future fails with one of {@link ElementNotFoundException}, {@link BadRequestException},
+     * {@link InternalErrorException} or {@link ProcessingException} in the same cases in which
+     * {@link #buildResponse(Request, Response)} throws them.
+     *
+     * @param request
+     * @param response
+     * @return future of the response once it has been built and filtered
+     */
+    public ListenableFuture<Response> buildResponseAsync(final Request request, final Response response) {
+        final Buildable buildable;
         long elementTimeout = 0;
 
 
@@ -61,76 +152,127 @@ public class Lego {
          Lego first tries to get an Buildable from legoset to build it.
          Every request that lego receives should resolve to one Buildable.
          */
-        buildable = getBuildable(request);
+        try {
+            buildable = getBuildable(request);
+        } catch (ElementNotFoundException | InternalErrorException exception) {
+            return Futures.immediateFailedFuture(exception);
+        }
 
         /*******************************************************************************
-         * Now lego will get the element specific timeout
+         * Now lego will get the element specific timeout, all the remaining stages are
+         * bound by the deadline derived from it.
          */
         try {
             elementTimeout = buildable.getTimeout();
         } catch (LegoException exception) {
             exceptionLogger.warn("LegoException: {}", exception);
         }
+        final Deadline deadline = Deadline.after(elementTimeout, TimeUnit.MILLISECONDS);
 
         /**********************************************************************************
          * Now lego will execute the request {@link FilterChain} which is a chain of
          * {@link RequestFilter}s that enhance/modify the {@link Request} or cause
-         * side effects based on it. elementTimeout is modified to remove elapsed time
-         * in request filter chain processing.
+         * side effects based on it.
          */
-        long remainingTimeBeforeTimeout = elementTimeout;
+        final FilterChain filterChain;
+        try {
+            filterChain = new FilterChain(getCompiledFilterChain(buildable, request), filterTPE, timeoutScheduler, filterExecutionMode);
+        } catch (InternalErrorException exception) {
+            return Futures.immediateFailedFuture(exception);
+        }
 
-        LinkedHashSet<Filter> filters = buildable.getFilters(request);
-        FilterChain filterChain = new FilterChain(filters, filterTPE);
-        remainingTimeBeforeTimeout = filterRequest(request, response, remainingTimeBeforeTimeout, filterChain);
+        //the sections of a streaming buildable are rendered as their data sources are realized
+        final SectionRenderer sectionRenderer = getSectionRenderer(buildable, request, response);
+        ListenableFuture<Long> requestFiltered = filterRequest(request, response, deadline, filterChain);
 
         /*******************************************************************************
-         * Once you have a buildable element get all the the required and optional data
-         * sources.
+         * Once the request has been filtered get all the the required and optional data
+         * sources, dispatch them and build the model as they are realized.
          */
+        ListenableFuture<DispatchedDataSources> dataFetched = Futures.transform(requestFiltered, new AsyncFunction<Long, DispatchedDataSources>() {
+            @Override
+            public ListenableFuture<DispatchedDataSources> apply(Long remainingTimeBeforeTimeout) throws Exception {
+                return fetchData(buildable, request, sectionRenderer, deadline);
+            }
+        }, directExecutor());
+
+        //the data is realized on a data source thread, build the model and render on the filter executor instead,
+        //or right there if filters are run inline. Data whose wait ended on a timer is never built on the timer
+        Executor renderExecutor = filterExecutionMode == FilterExecutionMode.INLINE ? offTimerExecutor : filterTPE;
+        ListenableFuture<Long> rendered = Futures.transform(dataFetched, new AsyncFunction<DispatchedDataSources, Long>() {
+            @Override
+            public ListenableFuture<Long> apply(DispatchedDataSources dispatchedDataSources) throws Exception {
+                renderElement(buildable, request, response, dispatchedDataSources, sectionRenderer);
+                return Futures.immediateFuture(deadline.timeRemaining(TimeUnit.MILLISECONDS));
+            }
+        }, renderExecutor);
 
-        try {
-            requiredDataSources = buildable.getRequiredDataSources(request);
-            optionalDataSources = buildable.getOptionalDataSources(request);
-        } catch (LegoException exception) {
-            exceptionLogger.warn("LegoException When fetching optional data sources: {}", exception);
-        } catch (Throwable t) {
-            exceptionLogger.error("Exception When fetching required data sources: {}", t);
-            throw new InternalErrorException(t);
-        }
-
-        /********************************************************************************
-         * Dispatch dataSources to threadpoolexecutor to get the relevant values from them
-         * wait on required datasources until timeout or until required data and optional
-         * data is available. We accomplish this by using futures returned by the dispatched
-         * tasks.
+        /************************************************************************************
+         * Once Lego renders the element and updates the response. Execute the {@link Response}
+         * {@link FilterChain}. This {@link FilterChain} enhances/modifies {@link Response} or
+         * causes side effects based on the {@link Response}
          */
-        if (requiredDataSources != null) {
-            dispatchDataSourceTasks(requiredDataSources, requiredFutureHashMap);
-        }
-        if (optionalDataSources != null) {
-            dispatchDataSourceTasks(optionalDataSources, optionalFutureHashMap);
-        }
+        ListenableFuture<Long> responseFiltered = Futures.transform(rendered, new AsyncFunction<Long, Long>() {
+            @Override
+            public ListenableFuture<Long> apply(Long remainingTimeBeforeTimeout) throws Exception {
+                return filterResponse(request, response, deadline, filterChain);
+            }
+        }, directExecutor());
 
-        //wait until timeout or until data is realized
-        try {
-            remainingTimeBeforeTimeout = waitUntilAvailableOrTimeout(requiredFutureHashMap, optionalFutureHashMap, request, remainingTimeBeforeTimeout);
-        } catch (TimeoutException timeOutException) {
-            throw new InternalErrorException(timeOutException);
+        ListenableFuture<Response> responseBuilt = Futures.transform(responseFiltered, new Function<Long, Response>() {
+            @Override
+            public Response apply(Long remainingTimeBeforeTimeout) {
+                return response;
+            }
+        }, directExecutor());
+
+        //sections must not be rendered into the response of a request that has failed. Abandoning waits for a
+        //section being rendered and aborts the response, neither of which may happen on a timer
+        if (sectionRenderer != null) {
+            Futures.addCallback(responseBuilt, new FutureCallback<Response>() {
+                @Override
+                public void onSuccess(Response builtResponse) {
+                }
+
+                @Override
+                public void onFailure(Throwable throwable) {
+                    sectionRenderer.abandon(throwable);
+                }
+            }, offTimerExecutor);
         }
+        return responseBuilt;
+    }
 
-        //fill model with required & optional data
-        fillModel(modelHashMap, requiredFutureHashMap);
-        fillModel(modelHashMap, optionalFutureHashMap);
+    /*
+     * The filters of a buildable are compiled once and recompiled only if the buildable returns other filters.
+     */
+    private CompiledFilterChain getCompiledFilterChain(Buildable buildable, Request request) throws InternalErrorException {
+        LinkedHashSet<Filter> filters = buildable.getFilters(request);
+        CompiledFilterChain compiledFilterChain = compiledFilterChains.getIfPresent(buildable);
+        if (compiledFilterChain == null || !compiledFilterChain.matches(filters)) {
+            compiledFilterChain = CompiledFilterChain.compile(filters);
+            compiledFilterChains.put(buildable, compiledFilterChain);
+        }
+        return compiledFilterChain;
+    }
 
-        renderElement(buildable, request, response, modelHashMap);
+    /*
+     * The data sources of a buildable are planned once and planned again only if the buildable returns data sources under other keys.
+     */
+    private DispatchPlan getDispatchPlan(Buildable buildable, Map<String, DataSource> requiredDataSources, Map<String, DataSource> optionalDataSources) throws InternalErrorException {
+        DispatchPlan dispatchPlan = dispatchPlans.getIfPresent(buildable);
+        if (dispatchPlan == null || !dispatchPlan.matches(requiredDataSources, optionalDataSources)) {
+            dispatchPlan = DispatchPlan.compile(requiredDataSources, optionalDataSources);
+            dispatchPlans.put(buildable, dispatchPlan);
+        }
+        return dispatchPlan;
+    }
 
-        /************************************************************************************
-         * Once Lego renders the element and updates the response. Execute the {@link Response}
-         * {@link FilterChain}. This {@link FilterChain} enhances/modifies {@link Response} or
-         * causes side effects based on the {@link Response}
-         */
-        filterResponse(request, response, remainingTimeBeforeTimeout, filterChain);
+    private SectionRenderer getSectionRenderer(Buildable buildable, Request request, Response response) {
+        if (buildable instanceof StreamingBuildable) {
+            return new SectionRenderer((StreamingBuildable) buildable, request, response, filterTPE);
+        }
+        return null;
     }
 
     private Buildable getBuildable(Request request) throws ElementNotFoundException, InternalErrorException {
@@ -145,115 +287,234 @@ public class Lego {
         }
     }
 
-    private long filterRequest(Request request, Response response, long remainingTimeBeforeTimeout, FilterChain filterChain) throws InternalErrorException, BadRequestException, ProcessingException {
+    private ListenableFuture<Long> filterRequest(final Request request, final Response response, final Deadline deadline, final FilterChain filterChain) {
+        ListenableFuture<Long> requestFiltered = filterChain.processAsync(request, response, FilterExecutionPhase.REQUEST, deadline.timeRemaining(TimeUnit.MILLISECONDS));
+        return Futures.withFallback(requestFiltered, new FutureFallback<Long>() {
+            @Override
+            public ListenableFuture<Long> create(final Throwable throwable) throws Exception {
+                if (throwable instanceof TimeoutException) {
+                    throw new InternalErrorException(throwable);
+                } else if (throwable instanceof ProcessingException) {
+                    //a halted request is still passed through the response filters before failing
+                    return Futures.transform(filterResponse(request, response, deadline, filterChain), new AsyncFunction<Long, Long>() {
+                        @Override
+                        public ListenableFuture<Long> apply(Long remainingTimeBeforeTimeout) throws Exception {
+                            throw new ProcessingException(throwable);
+                        }
+                    }, directExecutor());
+                }
+                return Futures.immediateFailedFuture(throwable);
+            }
+        }, directExecutor());
+    }
+
+    private ListenableFuture<Long> filterResponse(Request request, Response response, Deadline deadline, FilterChain filterChain) {
+        ListenableFuture<Long> responseFiltered = filterChain.processAsync(request, response, FilterExecutionPhase.RESPONSE, deadline.timeRemaining(TimeUnit.MILLISECONDS));
+        return Futures.withFallback(responseFiltered, new FutureFallback<Long>() {
+            @Override
+            public ListenableFuture<Long> create(Throwable throwable) throws Exception {
+                if (throwable instanceof TimeoutException) {
+                    throw new InternalErrorException(throwable);
+                }
+                return Futures.immediateFailedFuture(throwable);
+            }
+        }, directExecutor());
+    }
+
+    private ListenableFuture<DispatchedDataSources> fetchData(Buildable buildable, Request request, SectionRenderer sectionRenderer, Deadline deadline) throws InternalErrorException {
+        Map<String, DataSource> requiredDataSources = null;
+        Map<String, DataSource> optionalDataSources = null;
+
         try {
-            return filterChain.process(request, response, FilterExecutionPhase.REQUEST, remainingTimeBeforeTimeout);
-        } catch (TimeoutException timeoutException) {
-            throw new InternalErrorException(timeoutException);
-        } catch (ProcessingException processingException) {
-            filterResponse(request, response, remainingTimeBeforeTimeout, filterChain);
-            throw new ProcessingException(processingException);
+            requiredDataSources = buildable.getRequiredDataSources(request);
+            optionalDataSources = buildable.getOptionalDataSources(request);
+        } catch (LegoException exception) {
+            exceptionLogger.warn("LegoException When fetching optional data sources: {}", exception);
+        } catch (Throwable t) {
+            exceptionLogger.error("Exception When fetching required data sources: {}", t);
+            throw new InternalErrorException(t);
         }
+
+        //sections are resolved for the filtered request, like the data sources
+        List<Section> sections = null;
+        if (sectionRenderer != null) {
+            sections = ((StreamingBuildable) buildable).getSections(request);
+        }
+
+        /********************************************************************************
+         * Dispatch dataSources to threadpoolexecutor to get the relevant values from them
+         * until timeout or until required data and optional data is available. We accomplish
+         * this by using futures returned by the dispatched tasks. Dependent data sources are
+         * dispatched once their dependencies are realized, all of them within the same timeout.
+         */
+        DispatchPlan dispatchPlan = getDispatchPlan(buildable, requiredDataSources, optionalDataSources);
+        ListenableFuture[] futures = dataSourceDispatcher.dispatch(dispatchPlan, requiredDataSources, optionalDataSources, deadline);
+        DispatchedDataSources dispatchedDataSources = new DispatchedDataSources(dispatchPlan, futures);
+        if (sectionRenderer != null) {
+            sectionRenderer.start(sections, dispatchedDataSources);
+        }
+
+        return whenAvailableOrTimeout(dispatchedDataSources, optionalDataSources, request, deadline);
     }
 
-    private void filterResponse(Request request, Response response, long remainingTimeBeforeTimeout, FilterChain filterChain) throws InternalErrorException, BadRequestException, ProcessingException {
-        try {
-            filterChain.process(request, response, FilterExecutionPhase.RESPONSE, remainingTimeBeforeTimeout);
-        } catch (TimeoutException timeoutException) {
-            throw new InternalErrorException(timeoutException);
+    private void fillModel(Map<String, Object> model, DispatchedDataSources dispatchedDataSources) {
+        for (int i = 0; i < dispatchedDataSources.size(); i++) {
+            Object value = getRealizedValue(dispatchedDataSources.getKey(i), dispatchedDataSources.getFuture(i));
+            if (value != NOT_REALIZED) {
+                model.put(dispatchedDataSources.getKey(i), value);
+            }
+        }
+    }
+
+    //slots are resolved once per plan and layout, the model is filled without looking up keys
+    private void fillModel(TypedModel model, DispatchedDataSources dispatchedDataSources) {
+        int[] slots = dispatchedDataSources.getDispatchPlan().slotsIn(model.getModelLayout());
+        for (int i = 0; i < slots.length; i++) {
+            Object value = getRealizedValue(dispatchedDataSources.getKey(i), dispatchedDataSources.getFuture(i));
+            if (value == NOT_REALIZED) {
+                continue;
+            }
+            if (slots[i] < 0) {
+                exceptionLogger.warn("Data Source Not In Model Layout: {}", dispatchedDataSources.getKey(i));
+            } else {
+                model.put(slots[i], value);
+            }
         }
     }
 
-    private void fillModel(Map<String, Object> model, Map<String, ListenableFuture> futureMap) {
-        for (Map.Entry<String, ListenableFuture> listenableFutureEntry : futureMap.entrySet()) {
-            if (listenableFutureEntry.getValue().isDone() && !listenableFutureEntry.getValue().isCancelled()) {
-                try {
-                    model.put(listenableFutureEntry.getKey(), listenableFutureEntry.getValue().get());
-                } catch (Exception e) {
+    private Object getRealizedValue(String key, ListenableFuture future) {
+        if (future.isDone() && !future.isCancelled()) {
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                //a data source rejected by an open circuit, a bulkhead or a limit is routine under load
+                if (e.getCause() instanceof RejectedExecutionException) {
+                    exceptionLogger.warn("Data Source Rejected {}: {}", key, e.getCause().getMessage());
+                } else {
                     exceptionLogger.error("Exception in FillModel: {}", e);
                 }
+            } catch (Exception e) {
+                exceptionLogger.error("Exception in FillModel: {}", e);
             }
         }
+        return NOT_REALIZED;
     }
 
-    private void renderElement(Buildable buildable, Request request, Response response, Map<String, Object> modelHashMap) throws InternalErrorException {
+    /*
+     * a typed buildable is built from a model laid out in slots, other buildables from a map. The sections of a
+     * streaming buildable that are still waiting on data are rendered first
+     */
+    private void renderElement(Buildable buildable, Request request, Response response, DispatchedDataSources dispatchedDataSources,
+                               SectionRenderer sectionRenderer) throws InternalErrorException {
+        Object model = null;
         try {
-            buildable.build(request, response, modelHashMap);
+            if (sectionRenderer != null) {
+                sectionRenderer.finish();
+            }
+            if (buildable instanceof TypedBuildable) {
+                TypedModel typedModel = new TypedModel(((TypedBuildable) buildable).getModelLayout());
+                model = typedModel;
+                fillModel(typedModel, dispatchedDataSources);
+                ((TypedBuildable) buildable).build(request, response, typedModel);
+            } else {
+                Map<String, Object> modelHashMap = new HashMap<>();
+                model = modelHashMap;
+                fillModel(modelHashMap, dispatchedDataSources);
+                buildable.build(request, response, modelHashMap);
+            }
         } catch (InternalErrorException internalErrorException) {
-            exceptionLogger.error("InternalErrorException: rendering page failed request:{} \n model:{} exception:{}\n", request, modelHashMap, internalErrorException);
+            exceptionLogger.error("InternalErrorException: rendering page failed request:{} \n model:{} exception:{}\n", request, model, internalErrorException);
             throw internalErrorException;
         }
     }
 
-    private long waitUntilAvailableOrTimeout(Map<String, ListenableFuture> requiredFutureHashMap, Map<String, ListenableFuture> optionalFutureHashMap, Request request, long elementTimeout) throws TimeoutException {
-        //requiredFuture is only realized if all the futures are realized
-        List<ListenableFuture<Object>> requireFutureList = new ArrayList<>();
-        for (Map.Entry<String, ListenableFuture> listenableFutureEntry : requiredFutureHashMap.entrySet()) {
-            requireFutureList.add(listenableFutureEntry.getValue());
-        }
-        ListenableFuture<List<Object>> requiredFuture = Futures.allAsList(requireFutureList);
+    private ListenableFuture<DispatchedDataSources> whenAvailableOrTimeout(final DispatchedDataSources dispatchedDataSources, final Map<String, DataSource> optionalDataSources,
+                                                                         final Request request, final Deadline deadline) {
+        final long elementTimeout = deadline.timeRemaining(TimeUnit.MILLISECONDS);
 
         //requiredFuture is only realized if all the futures are realized
-        List<ListenableFuture<Object>> optionalFutureList = new ArrayList<>();
-        for (Map.Entry<String, ListenableFuture> listenableFutureEntry : optionalFutureHashMap.entrySet()) {
-            optionalFutureList.add(listenableFutureEntry.getValue());
-        }
-        ListenableFuture<List<Object>> optionalFuture = Futures.successfulAsList(optionalFutureList);
-
-        //used to calculate remaining time for timeout
-        Stopwatch requiredDSStopWatch = Stopwatch.createStarted();
-
-        //Wait until timeout to see if required data is realized, if it times out throw internalErrorException
-        try {
-            requiredFuture.get(elementTimeout, TimeUnit.MILLISECONDS);
-        } catch (TimeoutException timeoutException) {
-            exceptionLogger.error("TimeOutException: required data sources timed out {}, Timeout:{}, Exception:{}", request, elementTimeout, timeoutException);
-            requiredFuture.cancel(true);
-            cancelFutures((Collection) requireFutureList);
-            throw timeoutException;
-        } catch (InterruptedException interruptedException) {
-            exceptionLogger.error("InterruptedException: required data sources were interrupted{}, Message:{}, Exception:{}", request, interruptedException.getMessage(), interruptedException);
-            requiredFuture.cancel(true);
-            cancelFutures((Collection) requireFutureList);
-            throwTimeoutException(interruptedException);
-        } catch (ExecutionException executionException) {
-            exceptionLogger.error("ExcecutionException: {}", executionException);
-            requiredFuture.cancel(true);
-            cancelFutures((Collection) requireFutureList);
-            throwTimeoutException(executionException);
+        final List<ListenableFuture<Object>> requireFutureList = new ArrayList<>();
+        for (int i = 0; i < dispatchedDataSources.size(); i++) {
+            if (dispatchedDataSources.isRequired(i)) {
+                requireFutureList.add(dispatchedDataSources.getFuture(i));
+            }
         }
+        ListenableFuture<List<Object>> requiredFuture = TimedFutures.withTimeout(Futures.allAsList(requireFutureList), elementTimeout, TimeUnit.MILLISECONDS, timeoutScheduler);
+
+        //if required data isn't realized before timeout fail with internalErrorException
+        ListenableFuture<List<Object>> requiredRealized = Futures.withFallback(requiredFuture, new FutureFallback<List<Object>>() {
+            @Override
+            public ListenableFuture<List<Object>> create(Throwable throwable) throws Exception {
+                cancelFutures((Collection) requireFutureList);
+                if (throwable instanceof TimeoutException) {
+                    exceptionLogger.error("TimeOutException: required data sources timed out {}, Timeout:{}, Exception:{}", request, elementTimeout, throwable);
+                    throw new InternalErrorException(throwable);
+                }
+                if (throwable instanceof RejectedExecutionException) {
+                    exceptionLogger.warn("Required Data Source Rejected {}: {}", request, throwable.getMessage());
+                } else {
+                    exceptionLogger.error("ExcecutionException: {}", throwable);
+                }
+                throw new InternalErrorException(timeoutException(throwable));
+            }
+        }, directExecutor());
 
-        //if time is still remaining before timeout wait until timeout for optional data to realize itself
-        requiredDSStopWatch.stop();
-        long remainingTimeForTimeout = elementTimeout - requiredDSStopWatch.elapsed(TimeUnit.MILLISECONDS); //calculates milliseconds remaining before elementTimeout
-        Stopwatch optionalDsStopWatch = Stopwatch.createStarted();
-        if (remainingTimeForTimeout > 0) {
-            try {
-                optionalFuture.get(1, TimeUnit.MILLISECONDS);
-            } catch (Exception exception) {
-                optionalFuture.cancel(true);
-                cancelFutures((Collection) optionalFutureList);
-                exceptionLogger.warn("Optional Data Sources Were Not Realized {}, Exception: {}", request, exception);
+        return Futures.transform(requiredRealized, new AsyncFunction<List<Object>, DispatchedDataSources>() {
+            @Override
+            public ListenableFuture<DispatchedDataSources> apply(List<Object> requiredData) throws Exception {
+                return whenOptionalAvailableOrTimeout(dispatchedDataSources, optionalDataSources, request, deadline);
             }
-        }
+        }, directExecutor());
+    }
 
-        optionalDsStopWatch.stop();
-        remainingTimeForTimeout = remainingTimeForTimeout - optionalDsStopWatch.elapsed(TimeUnit.MILLISECONDS); //calculate time remaining for execution of response filters
-        return remainingTimeForTimeout > 0 ? remainingTimeForTimeout : 0;
+    private ListenableFuture<DispatchedDataSources> whenOptionalAvailableOrTimeout(final DispatchedDataSources dispatchedDataSources, Map<String, DataSource> optionalDataSources,
+                                                                                 final Request request, Deadline deadline) {
+        //optional data sources are collected individually as they are realized, until each one's wait is over
+        ListenableFuture<Void> optionalCollected = new OptionalDataCollector(dispatchedDataSources, optionalDataSources, optionalWaitPolicy, deadline, timeoutScheduler).collect();
+
+        return Futures.transform(optionalCollected, new Function<Void, DispatchedDataSources>() {
+            @Override
+            public DispatchedDataSources apply(Void collected) {
+                List<String> lateDataSources = null;
+                List<ListenableFuture> lateFutures = null;
+                for (int i = 0; i < dispatchedDataSources.size(); i++) {
+                    if (!dispatchedDataSources.isRequired(i) && !dispatchedDataSources.getFuture(i).isDone()) {
+                        if (lateDataSources == null) {
+                            lateDataSources = new ArrayList<>();
+                            lateFutures = new ArrayList<>();
+                        }
+                        lateDataSources.add(dispatchedDataSources.getKey(i));
+                        lateFutures.add(dispatchedDataSources.getFuture(i));
+                    }
+                }
+                if (lateDataSources != null) {
+                    exceptionLogger.warn("Optional Data Sources Were Not Realized {}, DataSources: {}", request, lateDataSources);
+                    if (optionalWaitPolicy.isCancellingLateDataSources()) {
+                        cancelFutures(lateFutures);
+                    }
+                }
+                return dispatchedDataSources;
+            }
+        }, directExecutor());
     }
 
-    private void throwTimeoutException(Exception exception) throws TimeoutException {
-        TimeoutException timeoutException = new TimeoutException(exception.getMessage());
-        timeoutException.initCause(exception);
-        throw timeoutException;
+    private TimeoutException timeoutException(Throwable throwable) {
+        TimeoutException timeoutException = new TimeoutException(throwable.getMessage());
+        timeoutException.initCause(throwable);
+        return timeoutException;
     }
 
-    private void dispatchDataSourceTasks(Map<String, DataSource> dataSources, Map<String, ListenableFuture> futureHashMap) {
-        for (Map.Entry<String, DataSource> dataSourceEntry : dataSources.entrySet()) {
-            ListenableFuture result = dataSourceTPE.submit(dataSourceEntry.getValue());
-            futureHashMap.put(dataSourceEntry.getKey(), result);
+    private void throwCause(Throwable cause) throws ElementNotFoundException, BadRequestException, InternalErrorException, ProcessingException {
+        if (cause instanceof ElementNotFoundException) {
+            throw (ElementNotFoundException) cause;
+        } else if (cause instanceof BadRequestException) {
+            throw (BadRequestException) cause;
+        } else if (cause instanceof InternalErrorException) {
+            throw (InternalErrorException) cause;
+        } else if (cause instanceof ProcessingException) {
+            throw (ProcessingException) cause;
         }
-
+        throw new InternalErrorException(cause);
     }
 
     private void cancelFutures(Collection<ListenableFuture> futures) {
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.engine;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import flipkart.lego.api.entities.DataSource;
+import flipkart.lego.api.entities.GracefulDataSource;
+import flipkart.lego.api.helpers.Deadline;
+
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+/**
+ * Waits for optional data sources without parking a thread. Every optional data source gets a cutoff
+ * from the {@link OptionalWaitPolicy} or its own grace period, and collection completes as soon as every
+ * optional data source is either realized or past its cutoff. A single timer is armed for the nearest
+ * pending cutoff.
+ */
+class OptionalDataCollector {
+
+    private final DispatchedDataSources dispatchedDataSources;
+    //cutoff of the data source at every position, required data sources have none
+    private final long[] cutoffs;
+    private final ScheduledExecutorService timeoutScheduler;
+    private final SettableFuture<Void> collected = SettableFuture.create();
+    private ScheduledFuture<?> timer;
+
+    OptionalDataCollector(DispatchedDataSources dispatchedDataSources, Map<String, DataSource> optionalDataSources,
+                          OptionalWaitPolicy optionalWaitPolicy, Deadline deadline, ScheduledExecutorService timeoutScheduler) {
+        this.dispatchedDataSources = dispatchedDataSources;
+        this.cutoffs = new long[dispatchedDataSources.size()];
+        this.timeoutScheduler = timeoutScheduler;
+
+        long now = System.nanoTime();
+        long remainingTime = deadline.timeRemaining(TimeUnit.MILLISECONDS);
+        long waitTime = optionalWaitPolicy.getWaitTime(remainingTime);
+        for (int i = 0; i < cutoffs.length; i++) {
+            if (dispatchedDataSources.isRequired(i)) {
+                continue;
+            }
+            DataSource dataSource = optionalDataSources == null ? null : optionalDataSources.get(dispatchedDataSources.getKey(i));
+            long dataSourceWaitTime = waitTime;
+            if (dataSource instanceof GracefulDataSource) {
+                dataSourceWaitTime = Math.max(Math.min(((GracefulDataSource) dataSource).getGracePeriod(), remainingTime), 0);
+            }
+            cutoffs[i] = now + TimeUnit.MILLISECONDS.toNanos(dataSourceWaitTime);
+        }
+    }
+
+    /**
+     * @return future that is realized once optional data has been collected
+     */
+    ListenableFuture<Void> collect() {
+        Runnable check = new Runnable() {
+            @Override
+            public void run() {
+                check();
+            }
+        };
+        for (int i = 0; i < cutoffs.length; i++) {
+            if (!dispatchedDataSources.isRequired(i)) {
+                dispatchedDataSources.getFuture(i).addListener(check, directExecutor());
+            }
+        }
+        check();
+        return collected;
+    }
+
+    private synchronized void onTimer() {
+        timer = null;
+        check();
+    }
+
+    private synchronized void check() {
+        if (collected.isDone()) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        long nextCutoffDelay = Long.MAX_VALUE;
+        for (int i = 0; i < cutoffs.length; i++) {
+            if (dispatchedDataSources.isRequired(i)) {
+                continue;
+            }
+            long cutoffDelay = cutoffs[i] - now;
+            if (!dispatchedDataSources.getFuture(i).isDone() && cutoffDelay > 0) {
+                nextCutoffDelay = Math.min(nextCutoffDelay, cutoffDelay);
+            }
+        }
+
+        if (nextCutoffDelay == Long.MAX_VALUE) {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            collected.set(null);
+        } else if (timer == null) {
+            //pending cutoffs only move later as data sources are realized, an armed timer is never late
+            timer = timeoutScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    onTimer();
+                }
+            }, nextCutoffDelay, TimeUnit.NANOSECONDS);
+        }
+    }
+}
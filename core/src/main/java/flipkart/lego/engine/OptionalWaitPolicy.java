@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.engine;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how long Lego waits for optional {@link flipkart.lego.api.entities.DataSource}s once the
+ * required data sources have been realized, and what happens to the optional data sources that don't
+ * make it. Each optional data source is collected individually as soon as it's realized, the wait only
+ * bounds how long the model waits for the rest. A {@link flipkart.lego.api.entities.GracefulDataSource}
+ * overrides the wait time for itself.
+ */
+public final class OptionalWaitPolicy {
+
+    private final long waitTime;
+    private final double fractionOfRemainingTime;
+    private final boolean cancellingLateDataSources;
+
+    private OptionalWaitPolicy(long waitTime, double fractionOfRemainingTime, boolean cancellingLateDataSources) {
+        this.waitTime = waitTime;
+        this.fractionOfRemainingTime = fractionOfRemainingTime;
+        this.cancellingLateDataSources = cancellingLateDataSources;
+    }
+
+    /**
+     * Waits a fixed time, bounded by the time remaining before the element timeout. Lego
+     * waits 1 millisecond by default.
+     */
+    public static OptionalWaitPolicy fixed(long waitTime, TimeUnit timeUnit) {
+        return new OptionalWaitPolicy(timeUnit.toMillis(waitTime), 0, true);
+    }
+
+    /**
+     * Waits until the element timeout.
+     */
+    public static OptionalWaitPolicy remainingTime() {
+        return fractionOfRemainingTime(1.0);
+    }
+
+    /**
+     * Waits for a fraction of the time remaining before the element timeout, leaving the rest
+     * for rendering and response filters.
+     */
+    public static OptionalWaitPolicy fractionOfRemainingTime(double fraction) {
+        if (fraction < 0 || fraction > 1) {
+            throw new IllegalArgumentException("Fraction of remaining time must be between 0 and 1");
+        }
+        return new OptionalWaitPolicy(0, fraction, true);
+    }
+
+    /**
+     * Returns a policy with the same wait time that lets optional data sources which aren't realized
+     * in time keep running instead of cancelling them, so that they can, for instance, warm a cache.
+     */
+    public OptionalWaitPolicy keepingLateDataSourcesRunning() {
+        return new OptionalWaitPolicy(waitTime, fractionOfRemainingTime, false);
+    }
+
+    /**
+     * @param remainingTime milliseconds remaining before the element timeout
+     * @return milliseconds to wait for optional data sources
+     */
+    public long getWaitTime(long remainingTime) {
+        long wait = fractionOfRemainingTime > 0 ? (long) (remainingTime * fractionOfRemainingTime) : waitTime;
+        return Math.max(Math.min(wait, remainingTime), 0);
+    }
+
+    public boolean isCancellingLateDataSources() {
+        return cancellingLateDataSources;
+    }
+}
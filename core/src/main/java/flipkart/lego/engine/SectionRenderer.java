@@ -0,0 +1,261 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.engine;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import flipkart.lego.api.entities.Request;
+import flipkart.lego.api.entities.Response;
+import flipkart.lego.api.entities.StreamingBuildable;
+import flipkart.lego.api.entities.StreamingResponse;
+import flipkart.lego.api.exceptions.InternalErrorException;
+import flipkart.lego.api.helpers.Section;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+/**
+ * Renders the sections of a {@link StreamingBuildable} in order, each as soon as its data sources are
+ * realized. Whenever a data source of a section is realized the sections that are ready are rendered on
+ * the render executor, one thread at a time, and the response is flushed after each of them. A section
+ * whose required data source failed stops the rendering, the request fails on its own.
+ * <p/>
+ * A renderer whose request has failed is abandoned: sections are no longer rendered and a
+ * {@link StreamingResponse} is aborted.
+ */
+class SectionRenderer {
+
+    private final StreamingBuildable buildable;
+    private final Request request;
+    private final Response response;
+    private volatile List<Section> sections;
+    private final Executor renderExecutor;
+    private final ReentrantLock renderLock = new ReentrantLock();
+    //set whenever a data source is realized, so that a render that is under way looks at the sections again
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final Logger exceptionLogger = LoggerFactory.getLogger("ExceptionLogger");
+
+    private volatile DispatchedDataSources dispatchedDataSources;
+    //guarded by renderLock
+    private int renderedSections = 0;
+    private boolean abandoned = false;
+    private InternalErrorException failure;
+
+    SectionRenderer(StreamingBuildable buildable, Request request, Response response, Executor renderExecutor) {
+        this.buildable = buildable;
+        this.request = request;
+        this.response = response;
+        this.renderExecutor = renderExecutor;
+    }
+
+    /**
+     * Starts rendering sections as the dispatched data sources are realized.
+     *
+     * @param sections              sections of the buildable for the filtered request
+     * @param dispatchedDataSources
+     */
+    void start(List<Section> sections, DispatchedDataSources dispatchedDataSources) {
+        this.sections = new ArrayList<>(sections);
+        this.dispatchedDataSources = dispatchedDataSources;
+
+        final Runnable renderTask = new Runnable() {
+            @Override
+            public void run() {
+                renderReadySections();
+            }
+        };
+        Runnable scheduleRender = new Runnable() {
+            @Override
+            public void run() {
+                dirty.set(true);
+                try {
+                    renderExecutor.execute(renderTask);
+                } catch (RejectedExecutionException exception) {
+                    exceptionLogger.warn("Render executor rejected a section, rendering it at the end: {}", exception.getMessage());
+                }
+            }
+        };
+
+        Set<ListenableFuture> futures = new HashSet<>();
+        for (Section section : sections) {
+            for (String dataSource : section.getDataSources()) {
+                ListenableFuture future = getFuture(dataSource);
+                if (future != null && futures.add(future)) {
+                    future.addListener(scheduleRender, directExecutor());
+                }
+            }
+        }
+        //sections that depend on no data source are ready right away
+        scheduleRender.run();
+    }
+
+    /**
+     * Renders the sections that haven't been rendered yet with the data that is available. It's called
+     * once Lego has stopped waiting for data sources, before the buildable is built.
+     *
+     * @throws InternalErrorException if rendering a section failed
+     */
+    void finish() throws InternalErrorException {
+        renderLock.lock();
+        try {
+            renderSections(true);
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            renderLock.unlock();
+        }
+    }
+
+    /**
+     * Stops rendering for good once the request has failed and aborts a {@link StreamingResponse}. It waits
+     * for a section that is being rendered, so nothing is written to the response after it returns.
+     *
+     * @param cause
+     */
+    void abandon(Throwable cause) {
+        renderLock.lock();
+        try {
+            abandoned = true;
+        } finally {
+            renderLock.unlock();
+        }
+        if (response instanceof StreamingResponse) {
+            try {
+                ((StreamingResponse) response).abort(cause);
+            } catch (RuntimeException exception) {
+                exceptionLogger.error("Exception: aborting response failed request:{} exception:{}", request, exception);
+            }
+        }
+    }
+
+    /*
+     * a thread that finds another one rendering leaves the sections to it, that thread looks again if it was told
+     * a data source was realized in the meantime
+     */
+    private void renderReadySections() {
+        while (renderLock.tryLock()) {
+            try {
+                dirty.set(false);
+                renderSections(false);
+            } finally {
+                renderLock.unlock();
+            }
+            if (!dirty.get()) {
+                return;
+            }
+        }
+    }
+
+    private void renderSections(boolean finishing) {
+        List<Section> sections = this.sections;
+        while (!abandoned && sections != null && renderedSections < sections.size()) {
+            Section section = sections.get(renderedSections);
+            if (!finishing && !isReady(section)) {
+                return;
+            }
+            if (hasFailedRequiredDataSource(section)) {
+                abandoned = true;
+                return;
+            }
+            try {
+                buildable.renderSection(request, response, section, getSectionModel(section));
+                if (response instanceof StreamingResponse) {
+                    ((StreamingResponse) response).flush();
+                }
+            } catch (InternalErrorException exception) {
+                exceptionLogger.error("InternalErrorException: rendering section {} failed request:{} exception:{}", section, request, exception);
+                failure = exception;
+                abandoned = true;
+                return;
+            } catch (RuntimeException exception) {
+                exceptionLogger.error("Exception: rendering section {} failed request:{} exception:{}", section, request, exception);
+                failure = new InternalErrorException(exception);
+                abandoned = true;
+                return;
+            }
+            renderedSections++;
+        }
+    }
+
+    private boolean isReady(Section section) {
+        for (String dataSource : section.getDataSources()) {
+            ListenableFuture future = getFuture(dataSource);
+            if (future != null && !future.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean hasFailedRequiredDataSource(Section section) {
+        for (String dataSource : section.getDataSources()) {
+            ListenableFuture future = dispatchedDataSources.getRequiredFuture(dataSource);
+            if (future != null && future.isDone() && !succeeded(future)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Map<String, Object> getSectionModel(Section section) {
+        Map<String, Object> model = new HashMap<>();
+        for (String dataSource : section.getDataSources()) {
+            ListenableFuture future = getFuture(dataSource);
+            if (future != null && succeeded(future)) {
+                model.put(dataSource, getValue(future));
+            }
+        }
+        return model;
+    }
+
+    private ListenableFuture getFuture(String dataSource) {
+        return dispatchedDataSources.getFuture(dataSource);
+    }
+
+    private static boolean succeeded(ListenableFuture future) {
+        if (!future.isDone() || future.isCancelled()) {
+            return false;
+        }
+        try {
+            future.get();
+            return true;
+        } catch (InterruptedException | ExecutionException exception) {
+            return false;
+        }
+    }
+
+    private static Object getValue(ListenableFuture future) {
+        try {
+            return future.get();
+        } catch (InterruptedException | ExecutionException exception) {
+            return null;
+        }
+    }
+}
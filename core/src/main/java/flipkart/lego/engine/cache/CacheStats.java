@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.engine.cache;
+
+/**
+ * An immutable snapshot of the statistics of a {@link DataSourceCache}.
+ */
+public final class CacheStats {
+
+    private final long hitCount;
+    private final long staleHitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long size;
+    private final long weight;
+
+    CacheStats(long hitCount, long staleHitCount, long missCount, long evictionCount, long size, long weight) {
+        this.hitCount = hitCount;
+        this.staleHitCount = staleHitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.size = size;
+        this.weight = weight;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return number of lookups that were served an expired entry within its stale period
+     */
+    public long getStaleHitCount() {
+        return staleHitCount;
+    }
+
+    /**
+     * @return number of lookups that found no entry or an expired entry
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return number of entries evicted to keep the cache within its bounds, expired entries are not counted
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return ratio of fresh hits to lookups, 1.0 if there were no lookups
+     */
+    public double getHitRate() {
+        long requestCount = hitCount + staleHitCount + missCount;
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hitCount=" + hitCount + ", staleHitCount=" + staleHitCount + ", missCount=" + missCount + ", evictionCount=" + evictionCount
+                + ", size=" + size + ", weight=" + weight + "}";
+    }
+}
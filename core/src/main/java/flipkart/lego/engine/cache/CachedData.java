@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.engine.cache;
+
+import flipkart.lego.api.entities.DataType;
+
+/**
+ * Data found in a {@link DataSourceCache}, along with whether it has outlived its time to live.
+ */
+public final class CachedData {
+
+    private final DataType value;
+    private final boolean stale;
+
+    CachedData(DataType value, boolean stale) {
+        this.value = value;
+        this.stale = stale;
+    }
+
+    public DataType getValue() {
+        return value;
+    }
+
+    /**
+     * @return true if the data has expired and is being served within its stale period
+     */
+    public boolean isStale() {
+        return stale;
+    }
+}
@@ -0,0 +1,492 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.engine.cache;
+
+import com.google.common.base.Ticker;
+import flipkart.lego.api.entities.DataType;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded cache of data fetched by {@link flipkart.lego.api.entities.CacheableDataSource}s.
+ * Every entry has its own time to live and the cache is bounded both by the number of entries
+ * and by their total weight as estimated by a {@link Weigher}.
+ * <p/>
+ * Eviction follows W-TinyLFU: new entries enter a small LRU window, and an entry leaving the window
+ * is only admitted into the main space if it has been seen more often recently than the entry it
+ * would displace. Access frequency is estimated by a count-min sketch, so a scan of one-off keys
+ * cannot flush entries that are hot. The main space is a segmented LRU, entries that are hit while
+ * on probation are promoted to a protected segment.
+ * <p/>
+ * An entry can be retained past its time to live for a stale period, during which
+ * {@link #getIfPresentOrStale(String)} still returns it marked as stale.
+ * <p/>
+ * Reads don't take a lock. They look entries up in a concurrent map and record the access in a read buffer
+ * striped by thread, and the recorded reads are replayed against the frequency sketch and the LRU queues by
+ * whichever thread next holds the lock of the eviction policy, a write or a reader that found its buffer full.
+ * A read recorded while its buffer is contended is dropped, the policy only needs a sample of the reads.
+ * Frequency is only counted on reads, a miss followed by a put counts as one access.
+ */
+public class DataSourceCache {
+
+    private enum Queue {
+        WINDOW, PROBATION, PROTECTED
+    }
+
+    private final long maximumEntries;
+    private final long maximumWeight;
+    private final Weigher weigher;
+    private final Ticker ticker;
+    private final long maximumWindow;
+    private final long maximumProtected;
+
+    //written only under the eviction lock, read without it
+    private final ConcurrentHashMap<String, Node> data = new ConcurrentHashMap<>();
+    private final ReadBuffer[] readBuffers;
+    private final int readBufferMask;
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    //the queues, the sketch and the weight are guarded by the eviction lock
+    //LinkedHashMaps are kept in insertion order, eldest first, and nodes are moved by re-inserting them
+    private final LinkedHashMap<String, Node> window = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Node> probation = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Node> protectedSegment = new LinkedHashMap<>();
+    private final FrequencySketch sketch;
+
+    private long weight = 0;
+    private long evictionCount = 0;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder staleHitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * Creates a cache bounded only by the number of entries.
+     *
+     * @param maximumEntries
+     */
+    public DataSourceCache(long maximumEntries) {
+        this(maximumEntries, maximumEntries, new Weigher() {
+            @Override
+            public int weigh(String key, DataType value) {
+                return 1;
+            }
+        });
+    }
+
+    public DataSourceCache(long maximumEntries, long maximumWeight, Weigher weigher) {
+        this(maximumEntries, maximumWeight, weigher, Ticker.systemTicker());
+    }
+
+    /**
+     * @param maximumEntries maximum number of entries
+     * @param maximumWeight  maximum total weight of entries
+     * @param weigher        weigher that estimates the weight of an entry
+     * @param ticker         time source used to expire entries
+     */
+    public DataSourceCache(long maximumEntries, long maximumWeight, Weigher weigher, Ticker ticker) {
+        if (maximumEntries <= 0 || maximumWeight <= 0) {
+            throw new IllegalArgumentException("Cache bounds must be positive");
+        }
+        this.maximumEntries = maximumEntries;
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        this.ticker = ticker;
+        //1% of the entries form the admission window and 80% of the main space is protected
+        this.maximumWindow = Math.max(1, maximumEntries / 100);
+        this.maximumProtected = (long) ((maximumEntries - maximumWindow) * 0.8);
+        this.sketch = new FrequencySketch(maximumEntries);
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() && stripes < 64) {
+            stripes <<= 1;
+        }
+        this.readBuffers = new ReadBuffer[stripes];
+        for (int i = 0; i < stripes; i++) {
+            readBuffers[i] = new ReadBuffer();
+        }
+        this.readBufferMask = stripes - 1;
+    }
+
+    /**
+     * Returns the value cached for the key if it hasn't expired, null otherwise.
+     *
+     * @param key
+     * @return cached value or null
+     */
+    public DataType getIfPresent(String key) {
+        Node node = data.get(key);
+        if (node == null) {
+            missCount.increment();
+            afterRead(key);
+            return null;
+        }
+        Entry entry = node.entry;
+        afterRead(node);
+        if (entry.expiresAt - ticker.read() <= 0) {
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        return entry.value;
+    }
+
+    /**
+     * Returns the value cached for the key if it hasn't expired or is still within its stale period,
+     * null otherwise.
+     *
+     * @param key
+     * @return cached data or null
+     */
+    public CachedData getIfPresentOrStale(String key) {
+        Node node = data.get(key);
+        if (node == null) {
+            missCount.increment();
+            afterRead(key);
+            return null;
+        }
+        Entry entry = node.entry;
+        afterRead(node);
+        long now = ticker.read();
+        if (entry.staleUntil - now <= 0) {
+            missCount.increment();
+            return null;
+        }
+        boolean stale = entry.expiresAt - now <= 0;
+        if (stale) {
+            staleHitCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return new CachedData(entry.value, stale);
+    }
+
+    /**
+     * Caches a value for the key, replacing any value cached for it. Values with a non positive time
+     * to live or that alone outweigh the cache are not cached.
+     *
+     * @param key
+     * @param value
+     * @param timeToLive
+     * @param timeUnit
+     */
+    public void put(String key, DataType value, long timeToLive, TimeUnit timeUnit) {
+        put(key, value, timeToLive, 0, timeUnit);
+    }
+
+    /**
+     * Caches a value for the key that is retained for a stale period once its time to live has passed.
+     *
+     * @param key
+     * @param value
+     * @param timeToLive
+     * @param stalePeriod
+     * @param timeUnit
+     */
+    public void put(String key, DataType value, long timeToLive, long stalePeriod, TimeUnit timeUnit) {
+        int entryWeight = weigher.weigh(key, value);
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            Node node = data.get(key);
+            if (timeToLive <= 0 || entryWeight > maximumWeight) {
+                if (node != null) {
+                    remove(node);
+                }
+                return;
+            }
+
+            long expiresAt = ticker.read() + timeUnit.toNanos(timeToLive);
+            long staleUntil = expiresAt + timeUnit.toNanos(Math.max(stalePeriod, 0));
+            Entry entry = new Entry(value, expiresAt, staleUntil);
+            if (node != null) {
+                weight += entryWeight - node.weight;
+                node.entry = entry;
+                node.weight = entryWeight;
+                onAccess(node);
+            } else {
+                node = new Node(key, entry, entryWeight);
+                data.put(key, node);
+                window.put(key, node);
+                weight += entryWeight;
+            }
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public void invalidate(String key) {
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            Node node = data.get(key);
+            if (node != null) {
+                remove(node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * @return number of entries, including expired entries that haven't been removed yet
+     */
+    public long size() {
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            return data.size();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public CacheStats getStats() {
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            return new CacheStats(hitCount.sum(), staleHitCount.sum(), missCount.sum(), evictionCount, data.size(), weight);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /*
+     * Records a read, either the node that was found or the key that was missed. A reader whose buffer is full
+     * drains the buffers if no other thread holds the lock, and otherwise drops the read.
+     */
+    private void afterRead(Object read) {
+        ReadBuffer readBuffer = readBuffers[(int) Thread.currentThread().getId() & readBufferMask];
+        if (readBuffer.offer(read)) {
+            return;
+        }
+        if (evictionLock.tryLock()) {
+            try {
+                drainReadBuffers();
+            } finally {
+                evictionLock.unlock();
+            }
+            readBuffer.offer(read);
+        }
+    }
+
+    private void drainReadBuffers() {
+        for (ReadBuffer readBuffer : readBuffers) {
+            Object read;
+            while ((read = readBuffer.poll()) != null) {
+                onRead(read);
+            }
+        }
+    }
+
+    /*
+     * Replays a read against the policy. An entry past its stale period is removed, a live one counts as accessed.
+     */
+    private void onRead(Object read) {
+        if (!(read instanceof Node)) {
+            sketch.increment(read);
+            return;
+        }
+        Node node = (Node) read;
+        sketch.increment(node.key);
+        if (data.get(node.key) != node) {
+            return;
+        }
+        if (node.entry.staleUntil - ticker.read() <= 0) {
+            remove(node);
+        } else {
+            onAccess(node);
+        }
+    }
+
+    private void onAccess(Node node) {
+        switch (node.queue) {
+            case WINDOW:
+                moveToTail(window, node);
+                break;
+            case PROBATION:
+                probation.remove(node.key);
+                node.queue = Queue.PROTECTED;
+                protectedSegment.put(node.key, node);
+                //the protected segment overflows into probation
+                if (protectedSegment.size() > maximumProtected) {
+                    Node demoted = eldest(protectedSegment, null);
+                    protectedSegment.remove(demoted.key);
+                    demoted.queue = Queue.PROBATION;
+                    probation.put(demoted.key, demoted);
+                }
+                break;
+            case PROTECTED:
+                moveToTail(protectedSegment, node);
+                break;
+        }
+    }
+
+    private void evict() {
+        //entries overflowing the window become candidates for the main space
+        List<Node> candidates = new ArrayList<>();
+        while (window.size() > maximumWindow) {
+            Node candidate = eldest(window, null);
+            window.remove(candidate.key);
+            candidate.queue = Queue.PROBATION;
+            probation.put(candidate.key, candidate);
+            candidates.add(candidate);
+        }
+
+        //a candidate is only admitted if it's more popular than the victim it would displace
+        for (Node candidate : candidates) {
+            while (isOverflowing() && data.get(candidate.key) == candidate) {
+                Node victim = eldest(probation, candidate);
+                if (victim == null) {
+                    victim = eldest(protectedSegment, null);
+                }
+                if (victim == null || sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+                    victim = candidate;
+                }
+                evict(victim);
+            }
+        }
+
+        while (isOverflowing()) {
+            Node victim = eldest(probation, null);
+            if (victim == null) {
+                victim = eldest(protectedSegment, null);
+            }
+            if (victim == null) {
+                victim = eldest(window, null);
+            }
+            evict(victim);
+        }
+    }
+
+    private boolean isOverflowing() {
+        return data.size() > maximumEntries || weight > maximumWeight;
+    }
+
+    private void evict(Node node) {
+        remove(node);
+        evictionCount++;
+    }
+
+    private void remove(Node node) {
+        data.remove(node.key);
+        queueOf(node).remove(node.key);
+        weight -= node.weight;
+    }
+
+    private LinkedHashMap<String, Node> queueOf(Node node) {
+        switch (node.queue) {
+            case WINDOW:
+                return window;
+            case PROBATION:
+                return probation;
+            default:
+                return protectedSegment;
+        }
+    }
+
+    private static void moveToTail(LinkedHashMap<String, Node> queue, Node node) {
+        queue.remove(node.key);
+        queue.put(node.key, node);
+    }
+
+    private static Node eldest(LinkedHashMap<String, Node> queue, Node excluded) {
+        Iterator<Node> iterator = queue.values().iterator();
+        while (iterator.hasNext()) {
+            Node node = iterator.next();
+            if (node != excluded) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private static class Node {
+        private final String key;
+        //replaced as a whole so that readers never see the value of one put with the expiry of another
+        private volatile Entry entry;
+        private int weight;
+        private Queue queue = Queue.WINDOW;
+
+        private Node(String key, Entry entry, int weight) {
+            this.key = key;
+            this.entry = entry;
+            this.weight = weight;
+        }
+    }
+
+    private static class Entry {
+        private final DataType value;
+        private final long expiresAt;
+        private final long staleUntil;
+
+        private Entry(DataType value, long expiresAt, long staleUntil) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.staleUntil = staleUntil;
+        }
+    }
+
+    /*
+     * A bounded ring of reads with any number of writers and a single reader, the holder of the eviction lock.
+     * A writer claims a position by advancing the write count and then publishes its read there, the reader
+     * stops at a position that has been claimed but not published yet.
+     */
+    private static class ReadBuffer {
+        private static final int SIZE = 16;
+        private static final int MASK = SIZE - 1;
+
+        private final AtomicReferenceArray<Object> reads = new AtomicReferenceArray<>(SIZE);
+        private final AtomicLong writeCount = new AtomicLong();
+        private volatile long readCount = 0;
+
+        //false if the ring is full, a read that loses the race for a position is dropped
+        private boolean offer(Object read) {
+            long head = readCount;
+            long tail = writeCount.get();
+            if (tail - head >= SIZE) {
+                return false;
+            }
+            if (writeCount.compareAndSet(tail, tail + 1)) {
+                reads.lazySet((int) (tail & MASK), read);
+            }
+            return true;
+        }
+
+        private Object poll() {
+            long head = readCount;
+            if (head == writeCount.get()) {
+                return null;
+            }
+            int index = (int) (head & MASK);
+            Object read = reads.get(index);
+            if (read == null) {
+                return null;
+            }
+            reads.lazySet(index, null);
+            readCount = head + 1;
+            return read;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.engine.cache;
+
+/**
+ * A count-min sketch of 4 bit counters that estimates how often a key has been seen recently.
+ * Sixteen counters are packed in a long. Counters are halved once the number of recorded accesses
+ * reaches the sample size, so the estimates favour recent history. Not thread safe, {@link DataSourceCache} only updates it under its eviction lock.
+ */
+class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x97cb3127, 0xb4b3d1e5, 0x7f4a7c15, 0xd6e8feb8};
+    //clears the bit every counter receives from its neighbour when a long is shifted right by one
+    private static final long HALF_MASK = 0x7777777777777777L;
+
+    private final long[][] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions = 0;
+
+    FrequencySketch(long maximumEntries) {
+        int width = 16;
+        while (width < maximumEntries && width < (1 << 24)) {
+            width <<= 1;
+        }
+        this.table = new long[DEPTH][width >>> 4];
+        this.mask = width - 1;
+        this.sampleSize = (int) Math.min(10L * width, Integer.MAX_VALUE);
+    }
+
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, count(row, index(hash, row)));
+        }
+        return frequency;
+    }
+
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean incremented = false;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = index(hash, row);
+            if (count(row, index) < MAX_COUNT) {
+                table[row][index >>> 4] += 1L << shift(index);
+                incremented = true;
+            }
+        }
+        if (incremented && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (long[] row : table) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] = (row[i] >>> 1) & HALF_MASK;
+            }
+        }
+        additions >>>= 1;
+    }
+
+    private int count(int row, int index) {
+        return (int) (table[row][index >>> 4] >>> shift(index)) & MAX_COUNT;
+    }
+
+    private static int shift(int index) {
+        return (index & 15) << 2;
+    }
+
+    private int index(int hash, int row) {
+        int h = (hash + SEEDS[row]) * SEEDS[row];
+        h ^= h >>> 16;
+        return h & mask;
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+}
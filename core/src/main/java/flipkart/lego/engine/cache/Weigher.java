@@ -0,0 +1,33 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.engine.cache;
+
+import flipkart.lego.api.entities.DataType;
+
+/**
+ * Estimates the weight of a cached {@link DataType}, usually its approximate size in memory.
+ * A {@link DataSourceCache} is bounded by the total weight of its entries.
+ */
+public interface Weigher {
+
+    /**
+     * @param key
+     * @param value
+     * @return non negative weight of the entry
+     */
+    int weigh(String key, DataType value);
+}
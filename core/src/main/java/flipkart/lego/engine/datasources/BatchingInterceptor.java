@@ -0,0 +1,234 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.engine.datasources;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import flipkart.lego.api.entities.BatchableDataSource;
+import flipkart.lego.api.entities.DataSource;
+import flipkart.lego.api.entities.DataType;
+import flipkart.lego.concurrency.futures.TimedFutures;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+/**
+ * Batches {@link BatchableDataSource} calls arriving from concurrent requests. Keys of data sources of
+ * the same class are collected until the batch is full or the batch window has passed since the first
+ * key, then they are fetched with a single {@link BatchableDataSource#callBatch} that continues down the
+ * chain in place of the individual calls. Every data source is realized with the data of its own key.
+ * <p/>
+ * Interceptors further down the chain see a batch as one of the data sources in it, so a batch counts
+ * against the circuit, bulkhead group and concurrency limit of its data sources. Cache and coalescing
+ * interceptors pass batches through and belong in front of this interceptor.
+ * <p/>
+ * The batch call is cancelled only once every data source in the batch has been cancelled. Data sources
+ * that are not batchable pass straight through.
+ */
+public class BatchingInterceptor implements DataSourceInterceptor {
+
+    private final int maxBatchSize;
+    private final long batchWindowNanos;
+    private final ScheduledExecutorService scheduler;
+    private final Map<Class, PendingBatch> pendingBatches = new HashMap<>();
+
+    public BatchingInterceptor() {
+        this(100, 2, TimeUnit.MILLISECONDS, TimedFutures.sharedScheduler());
+    }
+
+    /**
+     * @param maxBatchSize maximum number of distinct keys in a batch
+     * @param batchWindow  maximum time a key waits for the batch to fill up
+     * @param timeUnit
+     * @param scheduler    scheduler of the batch windows
+     */
+    public BatchingInterceptor(int maxBatchSize, long batchWindow, TimeUnit timeUnit, ScheduledExecutorService scheduler) {
+        if (maxBatchSize < 1 || batchWindow < 0) {
+            throw new IllegalArgumentException("Invalid batch bounds: " + maxBatchSize + ", " + batchWindow);
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.batchWindowNanos = timeUnit.toNanos(batchWindow);
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public ListenableFuture<DataType> intercept(DataSourceInvocation invocation) {
+        if (!(invocation.getDataSource() instanceof BatchableDataSource) || invocation.isReplaced()) {
+            return invocation.proceed();
+        }
+
+        final Class dataSourceClass = invocation.getDataSource().getClass();
+        SettableFuture<DataType> future = SettableFuture.create();
+        final PendingBatch newBatch;
+        PendingBatch fullBatch = null;
+        synchronized (this) {
+            PendingBatch pendingBatch = pendingBatches.get(dataSourceClass);
+            newBatch = pendingBatch == null ? new PendingBatch() : null;
+            if (newBatch != null) {
+                pendingBatch = newBatch;
+                pendingBatches.put(dataSourceClass, pendingBatch);
+            }
+            pendingBatch.add(invocation, future);
+            if (pendingBatch.size() >= maxBatchSize) {
+                pendingBatches.remove(dataSourceClass);
+                fullBatch = pendingBatch;
+            }
+        }
+
+        if (fullBatch != null) {
+            fullBatch.flush();
+        } else if (newBatch != null) {
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (BatchingInterceptor.this) {
+                        if (pendingBatches.get(dataSourceClass) == newBatch) {
+                            pendingBatches.remove(dataSourceClass);
+                        }
+                    }
+                    newBatch.flush();
+                }
+            }, batchWindowNanos, TimeUnit.NANOSECONDS);
+        }
+        return future;
+    }
+
+    /*
+     * mutated only while it is pending, under the lock of the interceptor
+     */
+    private static class PendingBatch {
+        private final Map<String, List<SettableFuture<DataType>>> futuresByKey = new LinkedHashMap<>();
+        private final AtomicBoolean flushed = new AtomicBoolean(false);
+        private DataSourceInvocation invocation;
+
+        private void add(DataSourceInvocation invocation, SettableFuture<DataType> future) {
+            //the batch is dispatched as required if any data source in it is required
+            if (this.invocation == null || (invocation.isRequired() && !this.invocation.isRequired())) {
+                this.invocation = invocation;
+            }
+            String batchKey = ((BatchableDataSource) invocation.getDataSource()).getBatchKey();
+            List<SettableFuture<DataType>> futures = futuresByKey.get(batchKey);
+            if (futures == null) {
+                futures = new ArrayList<>();
+                futuresByKey.put(batchKey, futures);
+            }
+            futures.add(future);
+        }
+
+        private int size() {
+            return futuresByKey.size();
+        }
+
+        private void flush() {
+            if (!flushed.compareAndSet(false, true)) {
+                return;
+            }
+
+            final Map<String, List<SettableFuture<DataType>>> wanted = new LinkedHashMap<>();
+            int waiting = 0;
+            for (Map.Entry<String, List<SettableFuture<DataType>>> entry : futuresByKey.entrySet()) {
+                //keys whose data sources have all been cancelled meanwhile are left out
+                for (SettableFuture<DataType> future : entry.getValue()) {
+                    if (!future.isDone()) {
+                        wanted.put(entry.getKey(), entry.getValue());
+                        waiting += entry.getValue().size();
+                        break;
+                    }
+                }
+            }
+            if (wanted.isEmpty()) {
+                return;
+            }
+
+            final BatchableDataSource<DataType> dataSource = (BatchableDataSource<DataType>) invocation.getDataSource();
+            ListenableFuture<DataType> batchFuture;
+            try {
+                batchFuture = invocation.proceedWith(new DataSource<BatchData>() {
+                    @Override
+                    public BatchData call() throws Exception {
+                        return new BatchData(dataSource.callBatch(wanted.keySet()));
+                    }
+                });
+            } catch (RuntimeException exception) {
+                batchFuture = Futures.immediateFailedFuture(exception);
+            }
+            cancelWhenAbandoned(batchFuture, wanted, waiting);
+
+            Futures.addCallback(batchFuture, new FutureCallback<DataType>() {
+                @Override
+                public void onSuccess(DataType batchData) {
+                    Map<String, ? extends DataType> results = ((BatchData) batchData).results;
+                    for (Map.Entry<String, List<SettableFuture<DataType>>> entry : wanted.entrySet()) {
+                        DataType result = results == null ? null : results.get(entry.getKey());
+                        for (SettableFuture<DataType> future : entry.getValue()) {
+                            if (result != null) {
+                                future.set(result);
+                            } else {
+                                future.setException(new NoSuchElementException("No data for batch key " + entry.getKey()));
+                            }
+                        }
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable throwable) {
+                    for (List<SettableFuture<DataType>> futures : wanted.values()) {
+                        for (SettableFuture<DataType> future : futures) {
+                            future.setException(throwable);
+                        }
+                    }
+                }
+            }, directExecutor());
+        }
+
+        private void cancelWhenAbandoned(final ListenableFuture<DataType> batchFuture, Map<String, List<SettableFuture<DataType>>> wanted, int waiting) {
+            final AtomicInteger remaining = new AtomicInteger(waiting);
+            for (List<SettableFuture<DataType>> futures : wanted.values()) {
+                for (final SettableFuture<DataType> future : futures) {
+                    future.addListener(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (future.isCancelled() && remaining.decrementAndGet() == 0) {
+                                batchFuture.cancel(true);
+                            }
+                        }
+                    }, directExecutor());
+                }
+            }
+        }
+    }
+
+    private static class BatchData implements DataType {
+        private final Map<String, ? extends DataType> results;
+
+        private BatchData(Map<String, ? extends DataType> results) {
+            this.results = results;
+        }
+    }
+}
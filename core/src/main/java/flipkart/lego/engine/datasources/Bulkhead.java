@@ -0,0 +1,179 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.engine.datasources;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import flipkart.lego.api.entities.DataType;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+/**
+ * A {@link Bulkhead} is a lane of bounded concurrency for a group of data sources. Once the lane is full
+ * optional data sources are rejected right away, required data sources are either rejected as well or
+ * queued until a call of the lane returns, if the bulkhead has a queue. A call holds its place in the lane
+ * until it returns, even if its future was cancelled before.
+ * <p/>
+ * A rejected data source fails with a {@link RejectedExecutionException}.
+ */
+public class Bulkhead {
+
+    private final String name;
+    private final int maxConcurrentCalls;
+    private final int maxQueuedCalls;
+    private final Queue<QueuedCall> queue = new ArrayDeque<>();
+    private int inFlightCount = 0;
+    private long rejectedCount = 0;
+
+    /**
+     * Creates a bulkhead that rejects both required and optional data sources once it is full.
+     *
+     * @param name
+     * @param maxConcurrentCalls
+     */
+    public Bulkhead(String name, int maxConcurrentCalls) {
+        this(name, maxConcurrentCalls, 0);
+    }
+
+    /**
+     * Creates a bulkhead that queues up to maxQueuedCalls required data sources once it is full.
+     *
+     * @param name
+     * @param maxConcurrentCalls
+     * @param maxQueuedCalls
+     */
+    public Bulkhead(String name, int maxConcurrentCalls, int maxQueuedCalls) {
+        if (maxConcurrentCalls < 1 || maxQueuedCalls < 0) {
+            throw new IllegalArgumentException("Invalid bulkhead bounds: " + maxConcurrentCalls + ", " + maxQueuedCalls);
+        }
+        this.name = name;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.maxQueuedCalls = maxQueuedCalls;
+    }
+
+    ListenableFuture<DataType> execute(DataSourceInvocation invocation) {
+        QueuedCall queuedCall = null;
+        synchronized (this) {
+            if (inFlightCount < maxConcurrentCalls) {
+                inFlightCount++;
+            } else if (invocation.isRequired() && queue.size() < maxQueuedCalls) {
+                queuedCall = new QueuedCall(invocation);
+                queue.add(queuedCall);
+            } else {
+                rejectedCount++;
+                return Futures.immediateFailedFuture(new RejectedExecutionException("Bulkhead " + name + " is full, rejected " + invocation.getKey()));
+            }
+        }
+        if (queuedCall != null) {
+            queuedCall.removeOnCancel();
+            return queuedCall.result;
+        }
+        return start(invocation);
+    }
+
+    /*
+     * the permit is held until the call returns rather than until its future completes, a call abandoned
+     * on timeout can hold its thread for a while longer
+     */
+    private ListenableFuture<DataType> start(DataSourceInvocation invocation) {
+        try {
+            return invocation.proceed(new Runnable() {
+                @Override
+                public void run() {
+                    release();
+                }
+            });
+        } catch (RuntimeException exception) {
+            return Futures.immediateFailedFuture(exception);
+        }
+    }
+
+    /*
+     * hands the permit of a returned call to the next queued call that is still wanted
+     */
+    private void release() {
+        QueuedCall next;
+        synchronized (this) {
+            do {
+                next = queue.poll();
+            } while (next != null && next.result.isDone());
+            if (next == null) {
+                inFlightCount--;
+                return;
+            }
+        }
+        DataSourceFutures.propagate(start(next.invocation), next.result);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    public synchronized int getInFlightCount() {
+        return inFlightCount;
+    }
+
+    public synchronized int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * @return number of data sources rejected since the bulkhead was created
+     */
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * @return fraction of the lane in use, 1 when the bulkhead is full
+     */
+    public synchronized double getSaturation() {
+        return (double) inFlightCount / maxConcurrentCalls;
+    }
+
+    private class QueuedCall {
+        private final DataSourceInvocation invocation;
+        private final SettableFuture<DataType> result = SettableFuture.create();
+
+        private QueuedCall(DataSourceInvocation invocation) {
+            this.invocation = invocation;
+        }
+
+        //a call cancelled while queued, for instance on timeout, gives up its place in the queue
+        private void removeOnCancel() {
+            result.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    if (result.isCancelled()) {
+                        synchronized (Bulkhead.this) {
+                            queue.remove(QueuedCall.this);
+                        }
+                    }
+                }
+            }, directExecutor());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.engine.datasources;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import flipkart.lego.api.entities.DataType;
+import flipkart.lego.api.entities.IsolatedDataSource;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Routes every {@link IsolatedDataSource} through the {@link Bulkhead} of its group, so that a slow
+ * backend can not take the threads of unrelated data sources. Data sources without a group, or with a
+ * group that has no bulkhead, pass straight through.
+ * <p/>
+ * Placed after the caching, coalescing and hedging interceptors only calls that actually reach a backend,
+ * hedges included, take a place in a bulkhead.
+ */
+public class BulkheadInterceptor implements DataSourceInterceptor {
+
+    private final Map<String, Bulkhead> bulkheads = new HashMap<>();
+
+    public BulkheadInterceptor(Collection<Bulkhead> bulkheads) {
+        for (Bulkhead bulkhead : bulkheads) {
+            this.bulkheads.put(bulkhead.getName(), bulkhead);
+        }
+    }
+
+    @Override
+    public ListenableFuture<DataType> intercept(DataSourceInvocation invocation) {
+        if (!(invocation.getDataSource() instanceof IsolatedDataSource)) {
+            return invocation.proceed();
+        }
+        Bulkhead bulkhead = bulkheads.get(((IsolatedDataSource) invocation.getDataSource()).getBulkheadGroup());
+        if (bulkhead == null) {
+            return invocation.proceed();
+        }
+        return bulkhead.execute(invocation);
+    }
+
+    /**
+     * @param name
+     * @return bulkhead of the group, null if there is none
+     */
+    public Bulkhead getBulkhead(String name) {
+        return bulkheads.get(name);
+    }
+
+    /**
+     * @return bulkheads by group name, for instance to export their saturation
+     */
+    public Collection<Bulkhead> getBulkheads() {
+        return bulkheads.values();
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.engine.datasources;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import flipkart.lego.api.entities.CacheableDataSource;
+import flipkart.lego.api.entities.DataType;
+import flipkart.lego.api.entities.TimeBoundDataSource;
+import flipkart.lego.api.helpers.Deadline;
+import flipkart.lego.engine.cache.CachedData;
+import flipkart.lego.engine.cache.DataSourceCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+/**
+ * Serves {@link CacheableDataSource}s from a {@link DataSourceCache}. On a hit the cached data is
+ * put in the model without dispatching the data source, on a miss the dispatch proceeds down the
+ * chain and the fetched data is cached for the data source's time to live. Data sources that are
+ * not cacheable pass straight through, as do replaced invocations such as batches.
+ * <p/>
+ * In stale-while-revalidate mode expired data is retained for a stale period. An optional data source
+ * whose data has expired is served the stale data immediately while a single background refresh per
+ * cache key is dispatched down the chain, its result replaces the cached data for later requests.
+ * The refresh isn't bound by the deadline of the request, it has the timeout of a
+ * {@link TimeBoundDataSource} or else the stale period to complete. Required data sources are only
+ * ever served fresh data.
+ * <p/>
+ * This interceptor should precede a {@link CoalescingInterceptor} so that only misses are coalesced.
+ */
+public class CachingInterceptor implements DataSourceInterceptor {
+
+    private final DataSourceCache cache;
+    private final long stalePeriod;
+    private final ConcurrentMap<String, Boolean> refreshing = new ConcurrentHashMap<>();
+    private final Logger exceptionLogger = LoggerFactory.getLogger("ExceptionLogger");
+
+    public CachingInterceptor(DataSourceCache cache) {
+        this(cache, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates an interceptor in stale-while-revalidate mode.
+     *
+     * @param cache
+     * @param stalePeriod time past its time to live for which data can be served to optional data sources
+     * @param timeUnit
+     */
+    public CachingInterceptor(DataSourceCache cache, long stalePeriod, TimeUnit timeUnit) {
+        this.cache = cache;
+        this.stalePeriod = timeUnit.toMillis(stalePeriod);
+    }
+
+    @Override
+    public ListenableFuture<DataType> intercept(DataSourceInvocation invocation) {
+        if (!(invocation.getDataSource() instanceof CacheableDataSource) || invocation.isReplaced()) {
+            return invocation.proceed();
+        }
+
+        CacheableDataSource dataSource = (CacheableDataSource) invocation.getDataSource();
+        String cacheKey = cacheKey(dataSource);
+        if (stalePeriod > 0 && !invocation.isRequired()) {
+            CachedData cachedData = cache.getIfPresentOrStale(cacheKey);
+            if (cachedData != null) {
+                if (cachedData.isStale()) {
+                    refresh(invocation, dataSource, cacheKey);
+                }
+                return Futures.immediateFuture(cachedData.getValue());
+            }
+        } else {
+            DataType cachedValue = cache.getIfPresent(cacheKey);
+            if (cachedValue != null) {
+                return Futures.immediateFuture(cachedValue);
+            }
+        }
+
+        ListenableFuture<DataType> future = invocation.proceed();
+        cacheOnSuccess(future, dataSource, cacheKey);
+        return future;
+    }
+
+    /*
+     * The refresh isn't tied to the request that triggered it, it is neither waited on nor cancelled and
+     * proceeds by a deadline of its own.
+     */
+    private void refresh(DataSourceInvocation invocation, CacheableDataSource dataSource, final String cacheKey) {
+        if (refreshing.putIfAbsent(cacheKey, Boolean.TRUE) != null) {
+            return;
+        }
+
+        ListenableFuture<DataType> refresh;
+        try {
+            long refreshTimeout = dataSource instanceof TimeBoundDataSource ? ((TimeBoundDataSource) dataSource).getTimeout() : stalePeriod;
+            refresh = invocation.detach(Deadline.after(refreshTimeout, TimeUnit.MILLISECONDS)).proceed();
+        } catch (RuntimeException exception) {
+            refreshing.remove(cacheKey);
+            exceptionLogger.warn("Refreshing cached data failed {}, Exception: {}", cacheKey, exception);
+            return;
+        }
+        cacheOnSuccess(refresh, dataSource, cacheKey);
+        refresh.addListener(new Runnable() {
+            @Override
+            public void run() {
+                refreshing.remove(cacheKey);
+            }
+        }, directExecutor());
+    }
+
+    private void cacheOnSuccess(ListenableFuture<DataType> future, final CacheableDataSource dataSource, final String cacheKey) {
+        Futures.addCallback(future, new FutureCallback<DataType>() {
+            @Override
+            public void onSuccess(DataType result) {
+                if (result != null) {
+                    cache.put(cacheKey, result, dataSource.getTimeToLive(), stalePeriod, TimeUnit.MILLISECONDS);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+            }
+        }, directExecutor());
+    }
+
+    public DataSourceCache getCache() {
+        return cache;
+    }
+
+    static String cacheKey(CacheableDataSource dataSource) {
+        return dataSource.getClass().getName() + "#" + dataSource.getCacheKey();
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.engine.datasources;
+
+import com.google.common.base.Ticker;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link CircuitBreaker} tracks the failure rate of the calls of a circuit over a rolling window. Once
+ * the failure rate crosses the threshold the circuit opens and calls are not made at all. After the open
+ * duration a single probe call is let through, its success closes the circuit again and its failure
+ * keeps it open for another open duration.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /*
+     * what a call has been permitted to do
+     */
+    enum Permit {
+        CALL, PROBE, REJECTED
+    }
+
+    private static final int BUCKETS = 10;
+    //marks a bucket without calls, no epoch is this low as the ticker is divided by at least one nanosecond
+    private static final long NO_EPOCH = Long.MIN_VALUE;
+
+    private final String name;
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long bucketNanos;
+    private final long openNanos;
+    private final Ticker ticker;
+    private final long[] bucketEpochs = new long[BUCKETS];
+    private final int[] bucketCalls = new int[BUCKETS];
+    private final int[] bucketFailures = new int[BUCKETS];
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean probeInFlight = false;
+
+    /**
+     * @param name
+     * @param failureRateThreshold failure rate, between 0 and 1, at which the circuit opens
+     * @param minimumCalls         calls in the window below which the circuit does not open
+     * @param window               length of the rolling window
+     * @param openDuration         time the circuit stays open before it is probed
+     * @param timeUnit
+     * @param ticker               time source
+     */
+    public CircuitBreaker(String name, double failureRateThreshold, int minimumCalls, long window, long openDuration, TimeUnit timeUnit, Ticker ticker) {
+        if (failureRateThreshold <= 0 || failureRateThreshold > 1 || minimumCalls < 1 || window <= 0 || openDuration <= 0) {
+            throw new IllegalArgumentException("Invalid circuit breaker settings for " + name);
+        }
+        this.name = name;
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = minimumCalls;
+        this.bucketNanos = Math.max(timeUnit.toNanos(window) / BUCKETS, 1);
+        this.openNanos = timeUnit.toNanos(openDuration);
+        this.ticker = ticker;
+        Arrays.fill(bucketEpochs, NO_EPOCH);
+    }
+
+    /**
+     * @return permit of the call, in the half open state only the probe call is permitted
+     */
+    synchronized Permit tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return Permit.CALL;
+            case OPEN:
+                if (ticker.read() - openedAt < openNanos) {
+                    return Permit.REJECTED;
+                }
+                state = State.HALF_OPEN;
+                probeInFlight = true;
+                return Permit.PROBE;
+            default:
+                if (probeInFlight) {
+                    return Permit.REJECTED;
+                }
+                probeInFlight = true;
+                return Permit.PROBE;
+        }
+    }
+
+    synchronized void onSuccess(Permit permit) {
+        if (permit == Permit.PROBE) {
+            close();
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    synchronized void onFailure(Permit permit) {
+        if (permit == Permit.PROBE) {
+            open();
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (getCalls() >= minimumCalls && getFailureRate() >= failureRateThreshold) {
+                open();
+            }
+        }
+    }
+
+    /*
+     * a call whose outcome says nothing about the backend, a probe like that is made again
+     */
+    synchronized void onIgnored(Permit permit) {
+        if (permit == Permit.PROBE) {
+            probeInFlight = false;
+        }
+    }
+
+    private void record(boolean failure) {
+        long epoch = currentEpoch();
+        int bucket = (int) Math.floorMod(epoch, BUCKETS);
+        if (bucketEpochs[bucket] != epoch) {
+            bucketEpochs[bucket] = epoch;
+            bucketCalls[bucket] = 0;
+            bucketFailures[bucket] = 0;
+        }
+        bucketCalls[bucket]++;
+        if (failure) {
+            bucketFailures[bucket]++;
+        }
+    }
+
+    /*
+     * the ticker may read negative, as System.nanoTime may, so epochs are rounded down rather than towards zero
+     */
+    private long currentEpoch() {
+        return Math.floorDiv(ticker.read(), bucketNanos);
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = ticker.read();
+        probeInFlight = false;
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        probeInFlight = false;
+        Arrays.fill(bucketEpochs, NO_EPOCH);
+    }
+
+    private int getCalls() {
+        long oldestEpoch = currentEpoch() - BUCKETS;
+        int calls = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (bucketEpochs[i] > oldestEpoch) {
+                calls += bucketCalls[i];
+            }
+        }
+        return calls;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return failure rate of the calls in the rolling window, 0 if there are none
+     */
+    public synchronized double getFailureRate() {
+        long oldestEpoch = currentEpoch() - BUCKETS;
+        int calls = 0;
+        int failures = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (bucketEpochs[i] > oldestEpoch) {
+                calls += bucketCalls[i];
+                failures += bucketFailures[i];
+            }
+        }
+        return calls == 0 ? 0 : (double) failures / calls;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.engine.datasources;
+
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import flipkart.lego.api.entities.CircuitBreakableDataSource;
+import flipkart.lego.api.entities.DataSource;
+import flipkart.lego.api.entities.DataType;
+import flipkart.lego.api.entities.FallbackDataSource;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+/**
+ * Guards every data source with the {@link CircuitBreaker} of its circuit, the circuit declared by a
+ * {@link CircuitBreakableDataSource} or else the class name of the data source. A data source whose
+ * circuit is open is not dispatched: a {@link FallbackDataSource} is realized with its fallback data,
+ * any other fails right away with a {@link RejectedExecutionException}.
+ * <p/>
+ * Failures and calls abandoned after their deadline count against the circuit. Calls rejected by a
+ * bulkhead or a concurrency limit further down the chain, and calls abandoned before their deadline,
+ * are not counted.
+ */
+public class CircuitBreakerInterceptor implements DataSourceInterceptor {
+
+    private final ConcurrentMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long window;
+    private final long openDuration;
+    private final TimeUnit timeUnit;
+    private final Ticker ticker;
+
+    public CircuitBreakerInterceptor() {
+        this(0.5, 20, 10, 5, TimeUnit.SECONDS);
+    }
+
+    public CircuitBreakerInterceptor(double failureRateThreshold, int minimumCalls, long window, long openDuration, TimeUnit timeUnit) {
+        this(failureRateThreshold, minimumCalls, window, openDuration, timeUnit, Ticker.systemTicker());
+    }
+
+    /**
+     * @param failureRateThreshold failure rate, between 0 and 1, at which a circuit opens
+     * @param minimumCalls         calls in the window below which a circuit does not open
+     * @param window               length of the rolling window
+     * @param openDuration         time a circuit stays open before it is probed
+     * @param timeUnit
+     * @param ticker               time source
+     */
+    public CircuitBreakerInterceptor(double failureRateThreshold, int minimumCalls, long window, long openDuration, TimeUnit timeUnit, Ticker ticker) {
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = minimumCalls;
+        this.window = window;
+        this.openDuration = openDuration;
+        this.timeUnit = timeUnit;
+        this.ticker = ticker;
+    }
+
+    @Override
+    public ListenableFuture<DataType> intercept(final DataSourceInvocation invocation) {
+        DataSource dataSource = invocation.getDataSource();
+        final CircuitBreaker circuitBreaker = getOrCreateCircuitBreaker(circuitName(dataSource));
+        final CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (permit == CircuitBreaker.Permit.REJECTED) {
+            //the fallback of a data source is no stand in for the data of its replacement, such as a batch
+            if (dataSource instanceof FallbackDataSource && !invocation.isReplaced()) {
+                try {
+                    return Futures.immediateFuture(((FallbackDataSource<DataType>) dataSource).getFallback());
+                } catch (Exception exception) {
+                    return Futures.immediateFailedFuture(exception);
+                }
+            }
+            return Futures.immediateFailedFuture(new RejectedExecutionException("Circuit " + circuitBreaker.getName() + " is open, rejected " + invocation.getKey()));
+        }
+
+        final ListenableFuture<DataType> future;
+        try {
+            future = invocation.proceed();
+        } catch (RuntimeException exception) {
+            circuitBreaker.onFailure(permit);
+            throw exception;
+        }
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                record(circuitBreaker, permit, future, invocation);
+            }
+        }, directExecutor());
+        return future;
+    }
+
+    private void record(CircuitBreaker circuitBreaker, CircuitBreaker.Permit permit, ListenableFuture<DataType> future, DataSourceInvocation invocation) {
+        if (future.isCancelled()) {
+            if (invocation.getDeadline().isExpired()) {
+                circuitBreaker.onFailure(permit);
+            } else {
+                circuitBreaker.onIgnored(permit);
+            }
+            return;
+        }
+        try {
+            future.get();
+            circuitBreaker.onSuccess(permit);
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof RejectedExecutionException) {
+                circuitBreaker.onIgnored(permit);
+            } else {
+                circuitBreaker.onFailure(permit);
+            }
+        } catch (InterruptedException exception) {
+            //the future is done, get does not block
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String circuitName(DataSource dataSource) {
+        if (dataSource instanceof CircuitBreakableDataSource) {
+            return ((CircuitBreakableDataSource) dataSource).getCircuitName();
+        }
+        return dataSource.getClass().getName();
+    }
+
+    private CircuitBreaker getOrCreateCircuitBreaker(String circuitName) {
+        CircuitBreaker circuitBreaker = circuitBreakers.get(circuitName);
+        if (circuitBreaker == null) {
+            CircuitBreaker newCircuitBreaker = new CircuitBreaker(circuitName, failureRateThreshold, minimumCalls, window, openDuration, timeUnit, ticker);
+            circuitBreaker = circuitBreakers.putIfAbsent(circuitName, newCircuitBreaker);
+            if (circuitBreaker == null) {
+                circuitBreaker = newCircuitBreaker;
+            }
+        }
+        return circuitBreaker;
+    }
+
+    /**
+     * @param circuitName
+     * @return circuit breaker of the circuit, null if no data source of the circuit has been dispatched yet
+     */
+    public CircuitBreaker getCircuitBreaker(String circuitName) {
+        return circuitBreakers.get(circuitName);
+    }
+}
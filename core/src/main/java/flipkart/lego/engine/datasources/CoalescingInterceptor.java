@@ -0,0 +1,173 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.engine.datasources;
+
+import com.google.common.base.Objects;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import flipkart.lego.api.entities.CoalescableDataSource;
+import flipkart.lego.api.entities.DataType;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+/**
+ * Coalesces identical {@link CoalescableDataSource} calls arriving from concurrent requests
+ * (single flight). The first call for a coalescing key proceeds down the chain and is kept in an
+ * in-flight table until it completes, calls for the same key that arrive meanwhile attach to it.
+ * <p/>
+ * Every attached request gets a future of its own. Cancelling it, for example when that request
+ * times out, only detaches the request. The shared call is cancelled once no request is waiting on it.
+ * Data sources that are not coalescable pass straight through, as do replaced invocations such as batches.
+ */
+public class CoalescingInterceptor implements DataSourceInterceptor {
+
+    private final ConcurrentMap<CallKey, InFlightCall> inFlightCalls = new ConcurrentHashMap<>();
+
+    @Override
+    public ListenableFuture<DataType> intercept(DataSourceInvocation invocation) {
+        if (!(invocation.getDataSource() instanceof CoalescableDataSource) || invocation.isReplaced()) {
+            return invocation.proceed();
+        }
+
+        CoalescableDataSource dataSource = (CoalescableDataSource) invocation.getDataSource();
+        CallKey callKey = new CallKey(dataSource.getClass(), dataSource.getCoalescingKey());
+        while (true) {
+            InFlightCall inFlightCall = inFlightCalls.get(callKey);
+            if (inFlightCall == null) {
+                InFlightCall newCall = new InFlightCall(callKey);
+                inFlightCall = inFlightCalls.putIfAbsent(callKey, newCall);
+                if (inFlightCall == null) {
+                    ListenableFuture<DataType> view = newCall.attach();
+                    newCall.start(invocation);
+                    return view;
+                }
+            }
+
+            ListenableFuture<DataType> view = inFlightCall.attach();
+            if (view != null) {
+                return view;
+            }
+            //the call completed or was abandoned while we were looking it up
+            inFlightCalls.remove(callKey, inFlightCall);
+        }
+    }
+
+    /**
+     * @return number of distinct calls currently in flight
+     */
+    public int getInFlightCount() {
+        return inFlightCalls.size();
+    }
+
+    private class InFlightCall {
+        private final CallKey callKey;
+        private final SettableFuture<DataType> sharedFuture = SettableFuture.create();
+        private int waiters = 0;
+        private boolean closed = false;
+
+        private InFlightCall(CallKey callKey) {
+            this.callKey = callKey;
+            sharedFuture.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    close();
+                }
+            }, directExecutor());
+        }
+
+        private void start(DataSourceInvocation invocation) {
+            try {
+                DataSourceFutures.propagate(invocation.proceed(), sharedFuture);
+            } catch (RuntimeException exception) {
+                sharedFuture.setException(exception);
+            }
+        }
+
+        /*
+         * returns null if the call can no longer be attached to
+         */
+        private synchronized ListenableFuture<DataType> attach() {
+            if (closed) {
+                return null;
+            }
+            waiters++;
+            final SettableFuture<DataType> view = SettableFuture.create();
+            DataSourceFutures.forward(sharedFuture, view);
+            //cancelling a view only detaches its request from the shared call
+            view.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    if (view.isCancelled()) {
+                        detach();
+                    }
+                }
+            }, directExecutor());
+            return view;
+        }
+
+        private void detach() {
+            boolean abandoned;
+            synchronized (this) {
+                abandoned = --waiters == 0 && !closed;
+                if (abandoned) {
+                    closed = true;
+                }
+            }
+            if (abandoned) {
+                inFlightCalls.remove(callKey, this);
+                sharedFuture.cancel(true);
+            }
+        }
+
+        private void close() {
+            synchronized (this) {
+                closed = true;
+            }
+            inFlightCalls.remove(callKey, this);
+        }
+    }
+
+    private static class CallKey {
+        private final Class dataSourceClass;
+        private final String coalescingKey;
+
+        private CallKey(Class dataSourceClass, String coalescingKey) {
+            this.dataSourceClass = dataSourceClass;
+            this.coalescingKey = coalescingKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CallKey)) {
+                return false;
+            }
+            CallKey callKey = (CallKey) o;
+            return dataSourceClass.equals(callKey.dataSourceClass) && Objects.equal(coalescingKey, callKey.coalescingKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(dataSourceClass, coalescingKey);
+        }
+    }
+}
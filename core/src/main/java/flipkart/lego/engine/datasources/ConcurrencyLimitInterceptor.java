@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.engine.datasources;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import flipkart.lego.api.entities.DataType;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+/**
+ * Caps the data source calls in flight at an adaptive {@link VegasLimit} driven by the round trip times
+ * of the calls. A share of the limit is reserved for required data sources, so optional data sources are
+ * shed first as the limit is approached. A shed data source fails with a {@link RejectedExecutionException}.
+ * <p/>
+ * It belongs at the end of the interceptor chain, right in front of the data source executor, so that
+ * time spent queueing for a thread is part of the round trip times it measures.
+ */
+public class ConcurrencyLimitInterceptor implements DataSourceInterceptor {
+
+    private final VegasLimit limit;
+    private final double requiredReserve;
+    private int inFlightCount = 0;
+    private long shedCount = 0;
+
+    public ConcurrencyLimitInterceptor() {
+        this(new VegasLimit(20, 4, 1000), 0.2);
+    }
+
+    /**
+     * @param limit
+     * @param requiredReserve fraction of the limit only required data sources are admitted to
+     */
+    public ConcurrencyLimitInterceptor(VegasLimit limit, double requiredReserve) {
+        if (requiredReserve < 0 || requiredReserve > 1) {
+            throw new IllegalArgumentException("Invalid required reserve: " + requiredReserve);
+        }
+        this.limit = limit;
+        this.requiredReserve = requiredReserve;
+    }
+
+    @Override
+    public ListenableFuture<DataType> intercept(final DataSourceInvocation invocation) {
+        final int inFlight;
+        synchronized (this) {
+            int currentLimit = limit.getLimit();
+            double admissionLimit = invocation.isRequired() ? currentLimit : currentLimit * (1 - requiredReserve);
+            if (inFlightCount >= admissionLimit) {
+                shedCount++;
+                return Futures.immediateFailedFuture(new RejectedExecutionException("Concurrency limit " + currentLimit + " reached, shed " + invocation.getKey()));
+            }
+            inFlight = ++inFlightCount;
+        }
+
+        final long startTime = System.nanoTime();
+        //the slot is held until the call returns, a cancelled call can hold its thread for a while longer
+        final ListenableFuture<DataType> future = invocation.proceed(new Runnable() {
+            @Override
+            public void run() {
+                release();
+            }
+        });
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                sample(invocation, future, System.nanoTime() - startTime, inFlight);
+            }
+        }, directExecutor());
+        return future;
+    }
+
+    /*
+     * Only a call abandoned after its deadline is a drop. Calls cancelled before, such as late optional data
+     * sources, hedges that lost or callers that detached from a coalesced call, say nothing about the backend.
+     */
+    private void sample(DataSourceInvocation invocation, ListenableFuture<DataType> future, long rttNanos, int inFlight) {
+        if (future.isCancelled()) {
+            if (invocation.getDeadline().isExpired()) {
+                limit.onSample(invocation.getDataSource().getClass(), rttNanos, inFlight, true);
+            }
+            return;
+        }
+        limit.onSample(invocation.getDataSource().getClass(), rttNanos, inFlight, false);
+    }
+
+    private synchronized void release() {
+        inFlightCount--;
+    }
+
+    public VegasLimit getLimit() {
+        return limit;
+    }
+
+    public synchronized int getInFlightCount() {
+        return inFlightCount;
+    }
+
+    /**
+     * @return number of data sources shed since the interceptor was created
+     */
+    public synchronized long getShedCount() {
+        return shedCount;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.engine.datasources;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import flipkart.lego.api.entities.DataSource;
+import flipkart.lego.api.entities.DataType;
+import flipkart.lego.api.entities.DependentDataSource;
+import flipkart.lego.api.entities.TimeBoundDataSource;
+import flipkart.lego.api.exceptions.InternalErrorException;
+import flipkart.lego.api.helpers.Deadline;
+import flipkart.lego.concurrency.futures.TimedFutures;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+/**
+ * {@link DataSourceDispatcher} dispatches the {@link DataSource}s of a {@link flipkart.lego.api.entities.Buildable}
+ * over an executor service. Data sources are scheduled as a dependency graph: independent data sources
+ * are dispatched immediately and a {@link DependentDataSource} is dispatched the moment all of its
+ * dependencies have been realized, without any thread waiting for them. The order of dispatch is compiled
+ * into a {@link DispatchPlan} that can be reused across requests.
+ * <p/>
+ * Every data source is dispatched through the chain of {@link DataSourceInterceptor}s before it
+ * reaches the executor service. A {@link TimeBoundDataSource} is given up on once its own timeout
+ * has passed since it was dispatched.
+ */
+public class DataSourceDispatcher {
+
+    private final ListeningExecutorService dataSourceTPE;
+    private final List<DataSourceInterceptor> interceptors;
+    private final ScheduledExecutorService timeoutScheduler;
+
+    public DataSourceDispatcher(ExecutorService dataSourceExecutorService) {
+        this(dataSourceExecutorService, Collections.<DataSourceInterceptor>emptyList());
+    }
+
+    public DataSourceDispatcher(ExecutorService dataSourceExecutorService, List<DataSourceInterceptor> interceptors) {
+        this(dataSourceExecutorService, interceptors, TimedFutures.sharedScheduler());
+    }
+
+    public DataSourceDispatcher(ExecutorService dataSourceExecutorService, List<DataSourceInterceptor> interceptors, ScheduledExecutorService timeoutScheduler) {
+        this.dataSourceTPE = MoreExecutors.listeningDecorator(dataSourceExecutorService);
+        this.interceptors = new ArrayList<>(interceptors);
+        this.timeoutScheduler = timeoutScheduler;
+    }
+
+    /**
+     * Dispatches required and optional data sources and puts the future of each data source in the
+     * future map of the same kind. Dependencies can cross between required and optional data sources.
+     *
+     * @param requiredDataSources
+     * @param optionalDataSources
+     * @param requiredFutureHashMap
+     * @param optionalFutureHashMap
+     * @param deadline                deadline of the request, data sources are dispatched with it
+     * @throws InternalErrorException if a dependency is unknown or the dependencies form a cycle
+     */
+    public void dispatch(Map<String, DataSource> requiredDataSources, Map<String, DataSource> optionalDataSources,
+                         Map<String, ListenableFuture> requiredFutureHashMap, Map<String, ListenableFuture> optionalFutureHashMap, Deadline deadline) throws InternalErrorException {
+        DispatchPlan dispatchPlan = DispatchPlan.compile(requiredDataSources, optionalDataSources);
+        ListenableFuture[] futures = dispatch(dispatchPlan, requiredDataSources, optionalDataSources, deadline);
+        for (int i = 0; i < futures.length; i++) {
+            (dispatchPlan.isRequired(i) ? requiredFutureHashMap : optionalFutureHashMap).put(dispatchPlan.key(i), futures[i]);
+        }
+    }
+
+    /**
+     * Dispatches required and optional data sources in the order of a plan compiled from them, or from data
+     * sources under the same keys, see {@link DispatchPlan#matches(Map, Map)}.
+     *
+     * @param dispatchPlan
+     * @param requiredDataSources
+     * @param optionalDataSources
+     * @param deadline            deadline of the request, data sources are dispatched with it
+     * @return future of the data source at every position of the plan
+     */
+    public ListenableFuture[] dispatch(DispatchPlan dispatchPlan, Map<String, DataSource> requiredDataSources, Map<String, DataSource> optionalDataSources, Deadline deadline) {
+        ListenableFuture[] futures = new ListenableFuture[dispatchPlan.size()];
+        for (int i = 0; i < futures.length; i++) {
+            String key = dispatchPlan.key(i);
+            DataSource dataSource = dispatchPlan.dataSource(i, requiredDataSources, optionalDataSources);
+            int[] dependencies = dispatchPlan.dependencies(i);
+            if (dependencies != null) {
+                List<ListenableFuture<Object>> dependencyFutures = new ArrayList<>(dependencies.length);
+                for (int dependency : dependencies) {
+                    dependencyFutures.add(futures[dependency]);
+                }
+                futures[i] = submitAfter(key, (DependentDataSource) dataSource, dispatchPlan.isRequired(i), deadline,
+                        Arrays.asList(dispatchPlan.dependencyKeys(i)), dependencyFutures);
+            } else {
+                futures[i] = submit(key, dataSource, dispatchPlan.isRequired(i), deadline);
+            }
+        }
+        return futures;
+    }
+
+    private ListenableFuture<DataType> submit(String key, DataSource dataSource, boolean required, Deadline deadline) {
+        if (!(dataSource instanceof TimeBoundDataSource)) {
+            return new DataSourceInvocation(key, dataSource, required, deadline, interceptors, dataSourceTPE).proceed();
+        }
+        Deadline dataSourceDeadline = deadline.earliest(Deadline.after(((TimeBoundDataSource) dataSource).getTimeout(), TimeUnit.MILLISECONDS));
+        ListenableFuture<DataType> future = new DataSourceInvocation(key, dataSource, required, dataSourceDeadline, interceptors, dataSourceTPE).proceed();
+        return TimedFutures.withTimeout(future, dataSourceDeadline.timeRemaining(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS, timeoutScheduler);
+    }
+
+    /*
+     * The dependent's future is not chained to its dependencies' futures, cancelling it must not cancel
+     * a dependency that other data sources may be waiting on.
+     */
+    private ListenableFuture<DataType> submitAfter(final String key, final DependentDataSource dataSource, final boolean required, final Deadline deadline, final List<String> dependencyKeys, List<ListenableFuture<Object>> dependencyFutures) {
+        final SettableFuture<DataType> dependentFuture = SettableFuture.create();
+        Futures.addCallback(Futures.allAsList(dependencyFutures), new FutureCallback<List<Object>>() {
+            @Override
+            public void onSuccess(List<Object> dependencyValues) {
+                if (dependentFuture.isDone()) {
+                    return;
+                }
+                Map<String, DataType> dependencyResults = new HashMap<>();
+                for (int i = 0; i < dependencyKeys.size(); i++) {
+                    dependencyResults.put(dependencyKeys.get(i), (DataType) dependencyValues.get(i));
+                }
+                try {
+                    dataSource.setDependencyResults(dependencyResults);
+                } catch (Throwable throwable) {
+                    dependentFuture.setException(throwable);
+                    return;
+                }
+                DataSourceFutures.propagate(submit(key, dataSource, required, deadline), dependentFuture);
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                dependentFuture.setException(throwable);
+            }
+        }, directExecutor());
+        return dependentFuture;
+    }
+}
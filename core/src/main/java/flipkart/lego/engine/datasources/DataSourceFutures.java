@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.engine.datasources;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+/**
+ * Future helpers shared by the data source dispatch path.
+ */
+final class DataSourceFutures {
+
+    private DataSourceFutures() {
+    }
+
+    /**
+     * Completes target with the outcome of source. Cancelling target cancels source, but cancelling
+     * source only fails target with a {@link java.util.concurrent.CancellationException}.
+     */
+    static <V> void propagate(final ListenableFuture<? extends V> source, final SettableFuture<V> target) {
+        forward(source, target);
+        target.addListener(new Runnable() {
+            @Override
+            public void run() {
+                if (target.isCancelled()) {
+                    source.cancel(true);
+                }
+            }
+        }, directExecutor());
+    }
+
+    /**
+     * Completes target with the outcome of source. Cancelling target has no effect on source.
+     */
+    static <V> void forward(ListenableFuture<? extends V> source, final SettableFuture<V> target) {
+        Futures.addCallback(source, new FutureCallback<V>() {
+            @Override
+            public void onSuccess(V result) {
+                target.set(result);
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                target.setException(throwable);
+            }
+        }, directExecutor());
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.engine.datasources;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import flipkart.lego.api.entities.DataType;
+
+/**
+ * A {@link DataSourceInterceptor} sits between Lego and the data source executor. Every
+ * {@link flipkart.lego.api.entities.DataSource} that Lego dispatches passes through the chain of
+ * interceptors in order. An interceptor can continue the dispatch by calling
+ * {@link DataSourceInvocation#proceed()} or realize the data source by returning a future of its own.
+ * <p/>
+ * Interceptors are shared by all requests served by a Lego instance and must be thread safe.
+ */
+public interface DataSourceInterceptor {
+
+    /**
+     * Intercepts the dispatch of a data source.
+     *
+     * @param invocation
+     * @return future of the data fetched by the data source
+     */
+    ListenableFuture<DataType> intercept(DataSourceInvocation invocation);
+}
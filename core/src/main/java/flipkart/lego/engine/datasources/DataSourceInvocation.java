@@ -0,0 +1,291 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.engine.datasources;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import flipkart.lego.api.entities.ContextAwareDataSource;
+import flipkart.lego.api.entities.DataSource;
+import flipkart.lego.api.entities.DataType;
+import flipkart.lego.api.helpers.CancellationToken;
+import flipkart.lego.api.helpers.DataSourceContext;
+import flipkart.lego.api.helpers.Deadline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+/**
+ * A {@link DataSourceInvocation} is the dispatch of one {@link DataSource} of a request as it passes
+ * through the chain of {@link DataSourceInterceptor}s. {@link #proceed()} hands the invocation to the
+ * next interceptor and, after the last one, submits the data source to the data source executor.
+ * <p/>
+ * A {@link ContextAwareDataSource} is called with the deadline of the invocation and a cancellation
+ * token that is cancelled if the future of the call is cancelled.
+ * <p/>
+ * An interceptor that bounds the threads taken by data sources proceeds with {@link #proceed(Runnable)},
+ * which tracks the call itself rather than its future: a cancelled future completes right away while
+ * the call may still be running.
+ */
+public final class DataSourceInvocation {
+
+    private static final Logger exceptionLogger = LoggerFactory.getLogger("ExceptionLogger");
+
+    private final String key;
+    private final DataSource dataSource;
+    private final DataSource replacement;
+    private final boolean required;
+    private final Deadline deadline;
+    private final List<DataSourceInterceptor> interceptors;
+    private final int index;
+    private final ListeningExecutorService dataSourceTPE;
+    private final List<Release> releases;
+
+    DataSourceInvocation(String key, DataSource dataSource, boolean required, Deadline deadline, List<DataSourceInterceptor> interceptors, ListeningExecutorService dataSourceTPE) {
+        this(key, dataSource, null, required, deadline, interceptors, 0, dataSourceTPE, Collections.<Release>emptyList());
+    }
+
+    private DataSourceInvocation(String key, DataSource dataSource, DataSource replacement, boolean required, Deadline deadline, List<DataSourceInterceptor> interceptors, int index, ListeningExecutorService dataSourceTPE, List<Release> releases) {
+        this.key = key;
+        this.dataSource = dataSource;
+        this.replacement = replacement;
+        this.required = required;
+        this.deadline = deadline;
+        this.interceptors = interceptors;
+        this.index = index;
+        this.dataSourceTPE = dataSourceTPE;
+        this.releases = releases;
+    }
+
+    /**
+     * @return model key under which the data source was returned by the buildable
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return data source of the buildable, also when the invocation proceeds with a replacement
+     */
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * Interceptors that realize a data source with data of their own, such as cached or coalesced data,
+     * must pass a replaced invocation through, its data is not the data of {@link #getDataSource()}.
+     *
+     * @return true if the invocation proceeds with a replacement of its data source
+     * @see #proceedWith(DataSource)
+     */
+    public boolean isReplaced() {
+        return replacement != null;
+    }
+
+    /**
+     * @return true if the data source is a required data source of the buildable
+     */
+    public boolean isRequired() {
+        return required;
+    }
+
+    /**
+     * @return deadline by which the data of the data source is needed
+     */
+    public Deadline getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Returns a copy of this invocation that proceeds down the rest of the chain by a deadline of its own, for
+     * work that outlives the request such as a background refresh. The copy doesn't hold the places the request
+     * took in earlier interceptors.
+     *
+     * @param deadline
+     * @return invocation detached from the request
+     */
+    public DataSourceInvocation detach(Deadline deadline) {
+        return new DataSourceInvocation(key, dataSource, replacement, required, deadline, interceptors, index, dataSourceTPE, Collections.<Release>emptyList());
+    }
+
+    /**
+     * Continues the dispatch down the chain. It can be called more than once, every call
+     * dispatches the data source again through the rest of the chain.
+     *
+     * @return future of the data fetched by the data source
+     */
+    public ListenableFuture<DataType> proceed() {
+        if (index < interceptors.size()) {
+            DataSourceInvocation next = new DataSourceInvocation(key, dataSource, replacement, required, deadline, interceptors, index + 1, dataSourceTPE, releases);
+            return interceptors.get(index).intercept(next);
+        }
+        DataSource call = replacement != null ? replacement : dataSource;
+        if (call instanceof ContextAwareDataSource) {
+            final ContextAwareDataSource<DataType> contextAwareDataSource = (ContextAwareDataSource<DataType>) call;
+            final CancellationToken cancellationToken = new CancellationToken();
+            final ListenableFuture<DataType> future = submit(new Callable<DataType>() {
+                @Override
+                public DataType call() throws Exception {
+                    return contextAwareDataSource.call(new DataSourceContext(deadline, cancellationToken));
+                }
+            });
+            future.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    if (future.isCancelled()) {
+                        try {
+                            cancellationToken.cancel();
+                        } catch (RuntimeException exception) {
+                            exceptionLogger.warn("Aborting cancelled data source failed {}, Exception: {}", key, exception);
+                        }
+                    }
+                }
+            }, directExecutor());
+            return future;
+        }
+        return submit((DataSource<DataType>) call);
+    }
+
+    /**
+     * Continues the dispatch down the chain like {@link #proceed()} and runs onRelease once the dispatch
+     * no longer holds a thread of the data source executor: after every call made for it has returned,
+     * or, when no call is running, once its future completes, for instance if it was realized further
+     * down the chain or cancelled before its call started. onRelease runs exactly once and must not block.
+     *
+     * @param onRelease
+     * @return future of the data fetched by the data source
+     */
+    public ListenableFuture<DataType> proceed(Runnable onRelease) {
+        Release release = new Release(onRelease);
+        List<Release> nextReleases = new ArrayList<>(releases.size() + 1);
+        nextReleases.addAll(releases);
+        nextReleases.add(release);
+        ListenableFuture<DataType> future;
+        try {
+            future = new DataSourceInvocation(key, dataSource, replacement, required, deadline, interceptors, index, dataSourceTPE, nextReleases).proceed();
+        } catch (RuntimeException exception) {
+            release.run();
+            throw exception;
+        }
+        future.addListener(release, directExecutor());
+        return future;
+    }
+
+    /**
+     * Continues the dispatch down the chain with another data source in place of this one, for instance
+     * a call that fetches the data of many invocations at once. Interceptors further down the chain still
+     * see this data source, with its class, circuit and bulkhead group, but the replacement is what is called.
+     *
+     * @param replacement
+     * @return future of the data fetched by the replacement
+     */
+    public ListenableFuture<DataType> proceedWith(DataSource replacement) {
+        return new DataSourceInvocation(key, dataSource, replacement, required, deadline, interceptors, index, dataSourceTPE, releases).proceed();
+    }
+
+    private ListenableFuture<DataType> submit(final Callable<DataType> call) {
+        if (releases.isEmpty()) {
+            return dataSourceTPE.submit(call);
+        }
+        final List<Release> heldReleases = new ArrayList<>(releases.size());
+        for (Release release : releases) {
+            if (release.hold()) {
+                heldReleases.add(release);
+            }
+        }
+        final AtomicBoolean claimed = new AtomicBoolean(false);
+        ListenableFuture<DataType> future;
+        try {
+            future = dataSourceTPE.submit(new Callable<DataType>() {
+                @Override
+                public DataType call() throws Exception {
+                    //a call whose future was cancelled before it started is not made
+                    if (!claimed.compareAndSet(false, true)) {
+                        throw new CancellationException();
+                    }
+                    try {
+                        return call.call();
+                    } finally {
+                        runAll(heldReleases);
+                    }
+                }
+            });
+        } catch (RuntimeException exception) {
+            runAll(heldReleases);
+            throw exception;
+        }
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                if (claimed.compareAndSet(false, true)) {
+                    runAll(heldReleases);
+                }
+            }
+        }, directExecutor());
+        return future;
+    }
+
+    private static void runAll(List<Release> releases) {
+        for (Release release : releases) {
+            release.run();
+        }
+    }
+
+    /*
+     * Counts the holds on a release, one for the future of the dispatch and one for every call made for
+     * it that has not returned yet. Running the release drops a hold, onRelease runs with the last one.
+     */
+    private static final class Release implements Runnable {
+        private final Runnable onRelease;
+        private final AtomicInteger holds = new AtomicInteger(1);
+
+        private Release(Runnable onRelease) {
+            this.onRelease = onRelease;
+        }
+
+        //a call made after the release has run, for instance by a late batch, is not held
+        private boolean hold() {
+            int current;
+            do {
+                current = holds.get();
+                if (current == 0) {
+                    return false;
+                }
+            } while (!holds.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        @Override
+        public void run() {
+            if (holds.decrementAndGet() == 0) {
+                try {
+                    onRelease.run();
+                } catch (RuntimeException exception) {
+                    exceptionLogger.warn("Releasing data source failed, Exception: {}", exception);
+                }
+            }
+        }
+    }
+}
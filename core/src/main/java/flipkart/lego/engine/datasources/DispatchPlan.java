@@ -0,0 +1,270 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flipkart.lego.engine.datasources;
+
+import flipkart.lego.api.entities.DataSource;
+import flipkart.lego.api.entities.DependentDataSource;
+import flipkart.lego.api.exceptions.InternalErrorException;
+import flipkart.lego.api.helpers.ModelLayout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable plan of how the data sources of a {@link flipkart.lego.api.entities.Buildable} are dispatched,
+ * compiled once and shared by every request that returns data sources under the same keys. It holds the keys in
+ * dispatch order, with every dependent data source after its dependencies, and the dependencies as positions in
+ * that order, so dispatching a request only reads arrays. The dependency graph is validated when the plan is
+ * compiled, and not sorted at all if no data source is dependent.
+ */
+public final class DispatchPlan {
+
+    private final String[] keys;
+    private final Map<String, Integer> positions;
+    private final boolean[] required;
+    //positions of the dependencies of every dependent data source, null for the others
+    private final int[][] dependencies;
+    private final String[][] dependencyKeys;
+    //keys that are both required and optional, they are dispatched once as required
+    private final String[] overlappingKeys;
+    private final int requiredSize;
+    private final int optionalSize;
+    private volatile Slots slots;
+
+    private DispatchPlan(String[] keys, boolean[] required, int[][] dependencies, String[][] dependencyKeys, String[] overlappingKeys, int requiredSize, int optionalSize) {
+        this.keys = keys;
+        this.positions = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            positions.put(keys[i], i);
+        }
+        this.required = required;
+        this.dependencies = dependencies;
+        this.dependencyKeys = dependencyKeys;
+        this.overlappingKeys = overlappingKeys;
+        this.requiredSize = requiredSize;
+        this.optionalSize = optionalSize;
+    }
+
+    /**
+     * @param requiredDataSources
+     * @param optionalDataSources
+     * @return plan of the data sources
+     * @throws InternalErrorException if a dependency is unknown or the dependencies form a cycle
+     */
+    public static DispatchPlan compile(Map<String, DataSource> requiredDataSources, Map<String, DataSource> optionalDataSources) throws InternalErrorException {
+        List<String> keys = new ArrayList<>();
+        List<String> overlappingKeys = new ArrayList<>();
+        boolean dependent = false;
+        if (requiredDataSources != null) {
+            for (Map.Entry<String, DataSource> entry : requiredDataSources.entrySet()) {
+                keys.add(entry.getKey());
+                dependent |= entry.getValue() instanceof DependentDataSource;
+            }
+        }
+        if (optionalDataSources != null) {
+            for (Map.Entry<String, DataSource> entry : optionalDataSources.entrySet()) {
+                if (requiredDataSources != null && requiredDataSources.containsKey(entry.getKey())) {
+                    overlappingKeys.add(entry.getKey());
+                } else {
+                    keys.add(entry.getKey());
+                    dependent |= entry.getValue() instanceof DependentDataSource;
+                }
+            }
+        }
+
+        if (dependent) {
+            //the graph is validated before anything is dispatched so that a bad graph has no side effects
+            List<String> dispatchOrder = new ArrayList<>(keys.size());
+            Set<String> sorted = new HashSet<>();
+            Set<String> visiting = new HashSet<>();
+            for (String key : keys) {
+                sort(key, requiredDataSources, optionalDataSources, visiting, sorted, dispatchOrder);
+            }
+            keys = dispatchOrder;
+        }
+
+        int size = keys.size();
+        boolean[] required = new boolean[size];
+        int[][] dependencies = new int[size][];
+        String[][] dependencyKeys = new String[size][];
+        Map<String, Integer> positions = dependent ? new HashMap<String, Integer>() : null;
+        for (int i = 0; i < size; i++) {
+            String key = keys.get(i);
+            required[i] = requiredDataSources != null && requiredDataSources.containsKey(key);
+            DataSource dataSource = dataSource(key, requiredDataSources, optionalDataSources);
+            if (dependent) {
+                positions.put(key, i);
+                if (dataSource instanceof DependentDataSource) {
+                    Set<String> dependencySet = ((DependentDataSource) dataSource).getDependencies();
+                    dependencyKeys[i] = dependencySet.toArray(new String[dependencySet.size()]);
+                    dependencies[i] = new int[dependencyKeys[i].length];
+                    for (int j = 0; j < dependencyKeys[i].length; j++) {
+                        dependencies[i][j] = positions.get(dependencyKeys[i][j]);
+                    }
+                }
+            }
+        }
+        return new DispatchPlan(keys.toArray(new String[size]), required, dependencies, dependencyKeys, overlappingKeys.toArray(new String[overlappingKeys.size()]),
+                requiredDataSources == null ? 0 : requiredDataSources.size(), optionalDataSources == null ? 0 : optionalDataSources.size());
+    }
+
+    /*
+     * Depth first topological sort, every data source is placed after all of its dependencies.
+     */
+    private static void sort(String key, Map<String, DataSource> requiredDataSources, Map<String, DataSource> optionalDataSources, Set<String> visiting, Set<String> sorted,
+                             List<String> dispatchOrder) throws InternalErrorException {
+        if (sorted.contains(key)) {
+            return;
+        }
+
+        DataSource dataSource = dataSource(key, requiredDataSources, optionalDataSources);
+        if (dataSource == null) {
+            throw new InternalErrorException("Unknown data source dependency: " + key);
+        }
+        if (!visiting.add(key)) {
+            throw new InternalErrorException("Cyclic data source dependency: " + visiting);
+        }
+
+        if (dataSource instanceof DependentDataSource) {
+            for (Object dependencyKey : ((DependentDataSource) dataSource).getDependencies()) {
+                sort((String) dependencyKey, requiredDataSources, optionalDataSources, visiting, sorted, dispatchOrder);
+            }
+        }
+
+        visiting.remove(key);
+        sorted.add(key);
+        dispatchOrder.add(key);
+    }
+
+    private static DataSource dataSource(String key, Map<String, DataSource> requiredDataSources, Map<String, DataSource> optionalDataSources) {
+        DataSource dataSource = requiredDataSources == null ? null : requiredDataSources.get(key);
+        if (dataSource == null && optionalDataSources != null) {
+            dataSource = optionalDataSources.get(key);
+        }
+        return dataSource;
+    }
+
+    /**
+     * Tells whether this plan was compiled from data sources under the same keys, with the same dependencies.
+     *
+     * @param requiredDataSources
+     * @param optionalDataSources
+     * @return true if the data sources can be dispatched with this plan
+     */
+    public boolean matches(Map<String, DataSource> requiredDataSources, Map<String, DataSource> optionalDataSources) {
+        if ((requiredDataSources == null ? 0 : requiredDataSources.size()) != requiredSize
+                || (optionalDataSources == null ? 0 : optionalDataSources.size()) != optionalSize) {
+            return false;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            DataSource dataSource = dataSource(i, requiredDataSources, optionalDataSources);
+            if (dataSource == null || (dataSource instanceof DependentDataSource) != (dependencies[i] != null)) {
+                return false;
+            }
+            if (dependencies[i] != null) {
+                Set dependencySet = ((DependentDataSource) dataSource).getDependencies();
+                if (dependencySet.size() != dependencyKeys[i].length || !dependencySet.containsAll(Arrays.asList(dependencyKeys[i]))) {
+                    return false;
+                }
+            }
+        }
+        for (String overlappingKey : overlappingKeys) {
+            if (!optionalDataSources.containsKey(overlappingKey)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * @param position
+     * @return key of the data source dispatched at the position
+     */
+    public String key(int position) {
+        return keys[position];
+    }
+
+    /**
+     * @param key
+     * @return position at which the data source of the key is dispatched, -1 if the plan has no such key
+     */
+    public int position(String key) {
+        Integer position = positions.get(key);
+        return position == null ? -1 : position;
+    }
+
+    public boolean isRequired(int position) {
+        return required[position];
+    }
+
+    DataSource dataSource(int position, Map<String, DataSource> requiredDataSources, Map<String, DataSource> optionalDataSources) {
+        Map<String, DataSource> dataSources = required[position] ? requiredDataSources : optionalDataSources;
+        return dataSources == null ? null : dataSources.get(keys[position]);
+    }
+
+    int[] dependencies(int position) {
+        return dependencies[position];
+    }
+
+    String[] dependencyKeys(int position) {
+        return dependencyKeys[position];
+    }
+
+    /**
+     * Resolves the slot of every data source in a model layout, once for as long as the layout is the same.
+     *
+     * @param modelLayout
+     * @return slot of the data source at every position, -1 for data sources the layout has no key for
+     */
+    public int[] slotsIn(ModelLayout modelLayout) {
+        Slots current = slots;
+        if (current != null && current.modelLayout == modelLayout) {
+            return current.slots;
+        }
+        int[] resolved = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            resolved[i] = modelLayout.slotOf(keys[i]);
+        }
+        slots = new Slots(modelLayout, resolved);
+        return resolved;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(keys);
+    }
+
+    private static final class Slots {
+        private final ModelLayout modelLayout;
+        private final int[] slots;
+
+        private Slots(ModelLayout modelLayout, int[] slots) {
+            this.modelLayout = modelLayout;
+            this.slots = slots;
+        }
+    }
+}
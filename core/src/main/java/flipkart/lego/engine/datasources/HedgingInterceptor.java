@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.engine.datasources;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import flipkart.lego.api.entities.DataType;
+import flipkart.lego.api.entities.HedgeableDataSource;
+import flipkart.lego.concurrency.futures.TimedFutures;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+/**
+ * Hedges {@link HedgeableDataSource}s. The latencies of recent successful calls are tracked per data source
+ * class, and when a call hasn't completed by a percentile of those latencies a second identical call is
+ * dispatched down the chain. Whichever call completes first is used and the other one is cancelled.
+ * Failed calls aren't tracked: a data source that often fails fast is hedged at the latency of its successes,
+ * and one that hasn't succeeded often enough yet isn't hedged at all.
+ * <p/>
+ * Hedges are paid for from a budget that every call adds a fraction of a hedge to, so hedging adds at most
+ * that fraction of extra calls and stops on its own when a backend slows down as a whole. This interceptor
+ * should follow a {@link CoalescingInterceptor}, otherwise a hedge would just attach to the call it hedges.
+ */
+public class HedgingInterceptor implements DataSourceInterceptor {
+
+    private static final int SAMPLE_SIZE = 256;
+    private static final int MINIMUM_SAMPLES = 32;
+    private static final double MAXIMUM_BUDGET = 10;
+
+    private final double percentile;
+    private final double hedgeRatio;
+    private final ScheduledExecutorService timeoutScheduler;
+    private final ConcurrentMap<Class, LatencyTracker> latencyTrackers = new ConcurrentHashMap<>();
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private double budget = 0;
+
+    /**
+     * Creates an interceptor that hedges at the 95th percentile with at most 5% extra calls.
+     */
+    public HedgingInterceptor() {
+        this(0.95, 0.05, TimedFutures.sharedScheduler());
+    }
+
+    /**
+     * @param percentile       percentile of recent latencies after which a call is hedged, between 0 and 1
+     * @param hedgeRatio       maximum ratio of hedges to calls
+     * @param timeoutScheduler scheduler on which hedge timers are armed
+     */
+    public HedgingInterceptor(double percentile, double hedgeRatio, ScheduledExecutorService timeoutScheduler) {
+        if (percentile <= 0 || percentile > 1 || hedgeRatio < 0) {
+            throw new IllegalArgumentException("Percentile must be in (0, 1] and hedge ratio non negative");
+        }
+        this.percentile = percentile;
+        this.hedgeRatio = hedgeRatio;
+        this.timeoutScheduler = timeoutScheduler;
+    }
+
+    @Override
+    public ListenableFuture<DataType> intercept(final DataSourceInvocation invocation) {
+        if (!(invocation.getDataSource() instanceof HedgeableDataSource)) {
+            return invocation.proceed();
+        }
+
+        final LatencyTracker latencyTracker = getLatencyTracker(invocation.getDataSource().getClass());
+        depositBudget();
+        final Race race = new Race(latencyTracker);
+        race.enter(invocation.proceed());
+
+        long hedgeDelay = latencyTracker.getPercentileLatency();
+        if (hedgeDelay >= 0 && !race.result.isDone()) {
+            final ScheduledFuture<?> hedgeTimer = timeoutScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (!race.result.isDone() && withdrawBudget()) {
+                        hedgeCount.incrementAndGet();
+                        race.enter(invocation.proceed());
+                    }
+                }
+            }, hedgeDelay, TimeUnit.NANOSECONDS);
+            race.result.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    hedgeTimer.cancel(false);
+                }
+            }, directExecutor());
+        }
+        return race.result;
+    }
+
+    /**
+     * @return number of hedges dispatched
+     */
+    public long getHedgeCount() {
+        return hedgeCount.get();
+    }
+
+    private LatencyTracker getLatencyTracker(Class dataSourceClass) {
+        LatencyTracker latencyTracker = latencyTrackers.get(dataSourceClass);
+        if (latencyTracker == null) {
+            latencyTracker = new LatencyTracker(SAMPLE_SIZE, percentile, MINIMUM_SAMPLES);
+            LatencyTracker existing = latencyTrackers.putIfAbsent(dataSourceClass, latencyTracker);
+            if (existing != null) {
+                latencyTracker = existing;
+            }
+        }
+        return latencyTracker;
+    }
+
+    private synchronized void depositBudget() {
+        budget = Math.min(budget + hedgeRatio, MAXIMUM_BUDGET);
+    }
+
+    private synchronized boolean withdrawBudget() {
+        if (budget >= 1) {
+            budget -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /*
+     * The calls of one invocation racing each other, the first successful call wins and the result only
+     * fails once every call that entered has failed.
+     */
+    private static class Race {
+        private final SettableFuture<DataType> result = SettableFuture.create();
+        private final AtomicInteger running = new AtomicInteger();
+        private final LatencyTracker latencyTracker;
+
+        private Race(LatencyTracker latencyTracker) {
+            this.latencyTracker = latencyTracker;
+        }
+
+        private void enter(final ListenableFuture<DataType> call) {
+            final long start = System.nanoTime();
+            running.incrementAndGet();
+            Futures.addCallback(call, new FutureCallback<DataType>() {
+                @Override
+                public void onSuccess(DataType value) {
+                    latencyTracker.record(System.nanoTime() - start);
+                    result.set(value);
+                }
+
+                @Override
+                public void onFailure(Throwable throwable) {
+                    if (running.decrementAndGet() == 0) {
+                        result.setException(throwable);
+                    }
+                }
+            }, directExecutor());
+            //the loser is cancelled once the result is in, and all calls are cancelled with the result
+            result.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    call.cancel(true);
+                }
+            }, directExecutor());
+        }
+    }
+}
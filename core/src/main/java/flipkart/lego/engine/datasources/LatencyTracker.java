@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.engine.datasources;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the latencies of the most recent calls of a data source and estimates a percentile of them.
+ * The percentile is recomputed once every few recorded samples rather than on every read.
+ * <p/>
+ * Only the latencies it is given are tracked. {@link HedgingInterceptor} records successful calls alone, so a
+ * data source that often fails fast is judged by its successes and one that never succeeds has no percentile.
+ */
+class LatencyTracker {
+
+    private static final int RECOMPUTE_INTERVAL = 16;
+
+    private final long[] samples;
+    private final double percentile;
+    private final int minimumSamples;
+    //samples recorded so far
+    private long count = 0;
+    private int next = 0;
+    private volatile long percentileLatency = -1;
+
+    LatencyTracker(int sampleSize, double percentile, int minimumSamples) {
+        this.samples = new long[sampleSize];
+        this.percentile = percentile;
+        this.minimumSamples = minimumSamples;
+    }
+
+    synchronized void record(long latencyNanos) {
+        samples[next] = latencyNanos;
+        next = (next + 1) % samples.length;
+        count++;
+        if (count >= minimumSamples && count % RECOMPUTE_INTERVAL == 0) {
+            int size = (int) Math.min(count, samples.length);
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            percentileLatency = sorted[Math.max(Math.min((int) Math.ceil(percentile * size) - 1, size - 1), 0)];
+        }
+    }
+
+    /**
+     * @return latency at the percentile in nanoseconds, or -1 until enough samples have been recorded
+     */
+    long getPercentileLatency() {
+        return percentileLatency;
+    }
+}
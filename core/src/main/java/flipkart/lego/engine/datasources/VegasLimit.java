@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.engine.datasources;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A concurrency limit that adjusts itself to the latency of the data sources, in the manner of TCP Vegas.
+ * The queueing a sample suffered is estimated from how far its round trip time is above the round trip
+ * time of the same kind of call without load. The limit grows while queueing stays low and shrinks once
+ * it builds up or calls time out.
+ * <p/>
+ * The no load round trip time of every kind of call is relearned periodically, so that the limit follows
+ * a backend whose latency has changed for good.
+ */
+public class VegasLimit {
+
+    private static final int PROBE_INTERVAL = 256;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final Map<Object, NoLoadRtt> noLoadRtts = new HashMap<>();
+    private double limit;
+
+    public VegasLimit(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Invalid limits: " + initialLimit + ", " + minLimit + ", " + maxLimit);
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Adjusts the limit with the outcome of a call.
+     *
+     * @param key      kind of call, round trip times are only compared among calls of the same kind
+     * @param rttNanos round trip time of the call
+     * @param inFlight calls in flight when the call was started
+     * @param dropped  true if the call was abandoned because it ran past its deadline
+     */
+    public synchronized void onSample(Object key, long rttNanos, int inFlight, boolean dropped) {
+        double log = Math.max(1, Math.log10(limit));
+        if (dropped) {
+            setLimit(limit - log);
+            return;
+        }
+
+        NoLoadRtt noLoadRtt = noLoadRtts.get(key);
+        if (noLoadRtt == null) {
+            noLoadRtt = new NoLoadRtt();
+            noLoadRtts.put(key, noLoadRtt);
+        }
+        long noLoadRttNanos = noLoadRtt.update(Math.max(rttNanos, 1));
+
+        //there is nothing to learn about the limit while the limit is not what holds calls back
+        if (inFlight * 2 < limit) {
+            return;
+        }
+
+        double queueSize = Math.ceil(limit * (1 - (double) noLoadRttNanos / Math.max(rttNanos, 1)));
+        if (queueSize <= 3 * log) {
+            setLimit(limit + log);
+        } else if (queueSize >= 6 * log) {
+            setLimit(limit - log);
+        }
+    }
+
+    private void setLimit(double newLimit) {
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    private static class NoLoadRtt {
+        private long rttNanos = Long.MAX_VALUE;
+        private int samples = 0;
+
+        private long update(long sampleNanos) {
+            if (++samples % PROBE_INTERVAL == 0) {
+                rttNanos = sampleNanos;
+            } else {
+                rttNanos = Math.min(rttNanos, sampleNanos);
+            }
+            return rttNanos;
+        }
+    }
+}
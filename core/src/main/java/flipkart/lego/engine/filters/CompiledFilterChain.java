@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.engine.filters;
+
+import flipkart.lego.api.entities.Filter;
+import flipkart.lego.api.entities.ParallelFilter;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * An immutable, compiled chain of {@link Filter}s that can be shared by every request of a
+ * {@link flipkart.lego.api.entities.Buildable}. The filters are held in declared order for the request
+ * phase and in reverse order for the response phase, along with where the stage that starts at every
+ * position ends, so processing a chain only reads arrays.
+ */
+public final class CompiledFilterChain {
+
+    private final Filter[] filters;
+    private final Filter[] reversedFilters;
+    private final int[] stageEnds;
+    private final int[] reversedStageEnds;
+
+    private CompiledFilterChain(Filter[] filters) {
+        this.filters = filters;
+        this.reversedFilters = new Filter[filters.length];
+        for (int i = 0; i < filters.length; i++) {
+            reversedFilters[i] = filters[filters.length - 1 - i];
+        }
+        this.stageEnds = stageEnds(filters);
+        this.reversedStageEnds = stageEnds(reversedFilters);
+    }
+
+    /**
+     * @param filters filters in declared order
+     * @return compiled chain of the filters
+     */
+    public static CompiledFilterChain compile(Collection<Filter> filters) {
+        return new CompiledFilterChain(filters.toArray(new Filter[filters.size()]));
+    }
+
+    /**
+     * Tells whether this chain was compiled from the same filters, in the same order.
+     *
+     * @param filters
+     * @return true if the chain holds exactly these filters
+     */
+    public boolean matches(Collection<Filter> filters) {
+        if (filters.size() != this.filters.length) {
+            return false;
+        }
+        Iterator<Filter> iterator = filters.iterator();
+        for (Filter filter : this.filters) {
+            if (iterator.next() != filter) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int size() {
+        return filters.length;
+    }
+
+    /*
+     * the response phase runs the filters in reverse order
+     */
+    Filter[] filters(FilterExecutionPhase filterExecutionPhase) {
+        return filterExecutionPhase == FilterExecutionPhase.RESPONSE ? reversedFilters : filters;
+    }
+
+    int[] stageEnds(FilterExecutionPhase filterExecutionPhase) {
+        return filterExecutionPhase == FilterExecutionPhase.RESPONSE ? reversedStageEnds : stageEnds;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(filters);
+    }
+
+    /*
+     * A stage is a single filter, or a run of consecutive parallel filters that are run concurrently.
+     */
+    private static int[] stageEnds(Filter[] filters) {
+        int[] stageEnds = new int[filters.length];
+        int end = filters.length;
+        for (int i = filters.length - 1; i >= 0; i--) {
+            if (!(filters[i] instanceof ParallelFilter) || i + 1 == filters.length || !(filters[i + 1] instanceof ParallelFilter)) {
+                end = i + 1;
+            }
+            stageEnds[i] = end;
+        }
+        return stageEnds;
+    }
+}
@@ -16,37 +16,94 @@
 
 package flipkart.lego.engine.filters;
 
+import com.google.common.base.Function;
 import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureFallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import flipkart.lego.api.entities.AsyncFilter;
+import flipkart.lego.api.entities.BlockingFilter;
 import flipkart.lego.api.entities.Filter;
 import flipkart.lego.api.entities.Request;
 import flipkart.lego.api.entities.Response;
 import flipkart.lego.api.exceptions.BadRequestException;
 import flipkart.lego.api.exceptions.InternalErrorException;
 import flipkart.lego.api.exceptions.ProcessingException;
+import flipkart.lego.concurrency.futures.TimedFutures;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 
 /**
  * {@link FilterChain} is an entity that processes a given {@link flipkart.lego.api.entities.Request}
  * and {@link flipkart.lego.api.entities.Response}
  * through a chain of Filters. We use a callable to process the filter chain because
- * we need Timeout semantics around the processing.
+ * we need Timeout semantics around the processing. The timeout is enforced by a timer
+ * so that the chain can also be processed without a waiting thread.
+ * <p/>
+ * {@link AsyncFilter}s are composed through their completion stages, no thread waits on them.
+ * <p/>
+ * A {@link FilterChain} holds the state of a single request, the filters themselves are held by a
+ * {@link CompiledFilterChain} that can be shared across requests.
+ * <p/>
+ * In the {@link FilterExecutionMode#INLINE} mode filters are run on the calling thread instead, saving
+ * the hand off to the filter executor, and the deadline is checked between filters. Only
+ * {@link BlockingFilter}s are run on the filter executor.
+ * <p/>
+ * Consecutive {@link flipkart.lego.api.entities.ParallelFilter}s form a stage whose filters are run concurrently, the stages and all
+ * other filters are run in the declared order. Either phase only moves on once every filter of a stage
+ * has completed.
  */
 public class FilterChain {
-    private LinkedHashSet<Filter> filterChain;
-    private final ExecutorService filterTPE;
+    private final CompiledFilterChain compiledFilterChain;
+    private final ListeningExecutorService filterTPE;
+    private final ScheduledExecutorService timeoutScheduler;
+    private final FilterExecutionMode filterExecutionMode;
+    //filters executed in the request phase by their declared index, only those are run in the response phase
+    private final boolean[] executedFilters;
+    private boolean requestFiltered = false;
     private final Logger exceptionLogger = LoggerFactory.getLogger("ExceptionLogger");
 
 
     public FilterChain(LinkedHashSet<Filter> filterChain, ExecutorService filterTPE) {
-        this.filterChain = filterChain;
-        this.filterTPE = filterTPE;
+        this(filterChain, filterTPE, TimedFutures.sharedScheduler());
+    }
+
+    public FilterChain(LinkedHashSet<Filter> filterChain, ExecutorService filterTPE, ScheduledExecutorService timeoutScheduler) {
+        this(filterChain, filterTPE, timeoutScheduler, FilterExecutionMode.POOLED);
+    }
+
+    public FilterChain(LinkedHashSet<Filter> filterChain, ExecutorService filterTPE, ScheduledExecutorService timeoutScheduler, FilterExecutionMode filterExecutionMode) {
+        this(CompiledFilterChain.compile(filterChain), filterTPE, timeoutScheduler, filterExecutionMode);
+    }
+
+    /**
+     * Creates the chain of a single request over a compiled chain that may be shared with other requests.
+     *
+     * @param compiledFilterChain
+     * @param filterTPE
+     * @param timeoutScheduler
+     * @param filterExecutionMode
+     */
+    public FilterChain(CompiledFilterChain compiledFilterChain, ExecutorService filterTPE, ScheduledExecutorService timeoutScheduler, FilterExecutionMode filterExecutionMode) {
+        this.compiledFilterChain = compiledFilterChain;
+        this.filterTPE = MoreExecutors.listeningDecorator(filterTPE);
+        this.timeoutScheduler = timeoutScheduler;
+        this.filterExecutionMode = filterExecutionMode;
+        this.executedFilters = new boolean[compiledFilterChain.size()];
     }
 
     /**
@@ -63,73 +120,363 @@ public class FilterChain {
      * @throws flipkart.lego.api.exceptions.ProcessingException
      */
     public long process(Request request, Response response, FilterExecutionPhase filterExecutionPhase, long remainingTime) throws TimeoutException, InternalErrorException, BadRequestException, ProcessingException {
-        Stopwatch filterChainStopwatch = Stopwatch.createStarted();
-
-        Future filterProcessing = this.filterTPE.submit(new FilterChainExecutor(this, filterExecutionPhase, request, response));
+        ListenableFuture<Long> filterProcessing = processAsync(request, response, filterExecutionPhase, remainingTime);
 
         try {
-            filterProcessing.get(remainingTime, TimeUnit.MILLISECONDS);
+            return filterProcessing.get();
         } catch (InterruptedException e) {
             filterProcessing.cancel(true);
-            exceptionLogger.error("Filter Processing timed out: ", filterChain);
+            exceptionLogger.error("Filter Processing timed out: ", compiledFilterChain);
             throw new TimeoutException("Timed out while executing filterChain");
         } catch (ExecutionException e) {
-            filterProcessing.cancel(true);
-            if (e.getCause() instanceof InternalErrorException) {
-                exceptionLogger.error("InternalErrorException when processing filters", filterChain);
+            if (e.getCause() instanceof TimeoutException) {
+                throw (TimeoutException) e.getCause();
+            } else if (e.getCause() instanceof InternalErrorException) {
                 throw (InternalErrorException) e.getCause();
             } else if (e.getCause() instanceof BadRequestException) {
-                exceptionLogger.error("BadRequestException when processing filters", filterChain);
                 throw (BadRequestException) e.getCause();
             } else if (e.getCause() instanceof ProcessingException) {
                 throw (ProcessingException) e.getCause();
             } else {
-                exceptionLogger.error("Execution Exception when processing filters", filterChain);
-                throw new InternalErrorException(e);
+                throw new InternalErrorException(e.getCause());
             }
         }
+    }
+
+    /**
+     * Processes a given filter chain without blocking the calling thread. The returned future
+     * holds the remaining time for timeout once the chain has been processed, or fails with a
+     * {@link java.util.concurrent.TimeoutException}, {@link flipkart.lego.api.exceptions.InternalErrorException},
+     * {@link flipkart.lego.api.exceptions.BadRequestException} or {@link flipkart.lego.api.exceptions.ProcessingException}.
+     *
+     * @param request
+     * @param response
+     * @param filterExecutionPhase
+     * @param remainingTime
+     * @return future of remaining time for timeout after filter processing
+     */
+    public ListenableFuture<Long> processAsync(Request request, Response response, FilterExecutionPhase filterExecutionPhase, final long remainingTime) {
+        final Stopwatch filterChainStopwatch = Stopwatch.createStarted();
+        final FilterChainExecutor filterChainExecutor = new FilterChainExecutor(filterExecutionPhase, request, response, filterChainStopwatch, remainingTime);
+
+        ListenableFuture<Object> timedFilterProcessing;
+        if (filterExecutionMode == FilterExecutionMode.INLINE) {
+            timedFilterProcessing = filterChainExecutor.proceed(0);
+        } else {
+            ListenableFuture<Object> filterProcessing = Futures.dereference(this.filterTPE.submit(new Callable<ListenableFuture<Object>>() {
+                @Override
+                public ListenableFuture<Object> call() throws Exception {
+                    return filterChainExecutor.proceed(0);
+                }
+            }));
+            timedFilterProcessing = TimedFutures.withTimeout(filterProcessing, remainingTime, TimeUnit.MILLISECONDS, timeoutScheduler);
+        }
+
+        ListenableFuture<Long> remainingTimeFuture = Futures.transform(timedFilterProcessing, new Function<Object, Long>() {
+            @Override
+            public Long apply(Object filteredPhase) {
+                filterChainStopwatch.stop();
+                return remainingTime - filterChainStopwatch.elapsed(TimeUnit.MILLISECONDS);
+            }
+        }, directExecutor());
 
-        filterChainStopwatch.stop();
-        return remainingTime - filterChainStopwatch.elapsed(TimeUnit.MILLISECONDS);
+        return Futures.withFallback(remainingTimeFuture, new FutureFallback<Long>() {
+            @Override
+            public ListenableFuture<Long> create(Throwable throwable) throws Exception {
+                if (throwable instanceof TimeoutException) {
+                    exceptionLogger.error("Filter Processing timed out: ", compiledFilterChain);
+                    throw (TimeoutException) throwable;
+                } else if (throwable instanceof InternalErrorException) {
+                    exceptionLogger.error("InternalErrorException when processing filters", compiledFilterChain);
+                    throw (InternalErrorException) throwable;
+                } else if (throwable instanceof BadRequestException) {
+                    exceptionLogger.error("BadRequestException when processing filters", compiledFilterChain);
+                    throw (BadRequestException) throwable;
+                } else if (throwable instanceof ProcessingException) {
+                    throw (ProcessingException) throwable;
+                } else {
+                    exceptionLogger.error("Execution Exception when processing filters", compiledFilterChain);
+                    throw new InternalErrorException(throwable);
+                }
+            }
+        }, directExecutor());
     }
 
-    private class FilterChainExecutor implements Callable {
+    /*
+     * Steps through the filters of a phase without ever waiting on a thread. Synchronous filters are run
+     * on the thread that steps through the chain, a filter executor thread in the pooled mode and the calling
+     * thread in the inline mode, where blocking filters are run on the filter executor instead. An async
+     * filter is started on the stepping thread and the chain is resumed once its completion stage completes.
+     * The deadline is checked before every stage.
+     */
+    private class FilterChainExecutor {
 
-        private final FilterChain filterChain;
+        private final Filter[] filters;
+        private final int[] stageEnds;
         private final FilterExecutionPhase filterExecutionPhase;
         private final Request request;
         private final Response response;
+        private final Stopwatch filterChainStopwatch;
+        private final long remainingTime;
 
-        private FilterChainExecutor(FilterChain filterChain, FilterExecutionPhase filterExecutionPhase, Request request, Response response) {
-            this.filterChain = filterChain;
+        private FilterChainExecutor(FilterExecutionPhase filterExecutionPhase, Request request, Response response, Stopwatch filterChainStopwatch, long remainingTime) {
+            this.filters = compiledFilterChain.filters(filterExecutionPhase);
+            this.stageEnds = compiledFilterChain.stageEnds(filterExecutionPhase);
             this.filterExecutionPhase = filterExecutionPhase;
             this.request = request;
             this.response = response;
+            this.filterChainStopwatch = filterChainStopwatch;
+            this.remainingTime = remainingTime;
+            if (filterExecutionPhase == FilterExecutionPhase.REQUEST) {
+                Arrays.fill(executedFilters, false);
+                requestFiltered = true;
+            }
         }
 
-        @Override
-        public Object call() throws Exception {
-            List<Filter> executedFilters = new ArrayList<>();
+        private ListenableFuture<Object> proceed(int from) {
             try {
+                for (int i = from; i < filters.length; i = stageEnds[i]) {
+                    int included = 0;
+                    int last = i;
+                    for (int j = i; j < stageEnds[i]; j++) {
+                        if (isIncluded(j)) {
+                            included++;
+                            last = j;
+                        }
+                    }
+                    if (included == 0) {
+                        continue;
+                    }
+
+                    long timeLeft = remainingTime - filterChainStopwatch.elapsed(TimeUnit.MILLISECONDS);
+                    if (timeLeft <= 0) {
+                        throw new TimeoutException("Timed out while executing filterChain");
+                    }
+
+                    if (included == 1 && runsOnStepper(filters[last], true)) {
+                        runFilter(filters[last], filterExecutionPhase, request, response);
+                        executed(last);
+                        continue;
+                    }
+
+                    List<ListenableFuture<Filter>> futures = startStage(i, stageEnds[i]);
+                    if (!allDone(futures)) {
+                        return awaitStage(i, futures, timeLeft);
+                    }
+                    completeStage(i, futures);
+                }
+            } catch (Exception exception) {
+                return Futures.immediateFailedFuture(exception);
+            }
+            return Futures.<Object>immediateFuture(filterExecutionPhase);
+        }
+
+        /*
+         * the response phase only unwinds the filters that were executed in the request phase
+         */
+        private boolean isIncluded(int position) {
+            return filterExecutionPhase == FilterExecutionPhase.REQUEST || !requestFiltered || executedFilters[filters.length - 1 - position];
+        }
+
+        private void executed(int position) {
+            if (filterExecutionPhase == FilterExecutionPhase.REQUEST) {
+                executedFilters[position] = true;
+            }
+        }
+
+        /*
+         * in the pooled mode the stepping thread runs the first filter of a stage itself
+         */
+        private boolean runsOnStepper(Filter filter, boolean first) {
+            if (filter instanceof AsyncFilter) {
+                return false;
+            }
+            if (filterExecutionMode == FilterExecutionMode.INLINE) {
+                return !(filter instanceof BlockingFilter);
+            }
+            return first;
+        }
 
-                for (Filter filter : filterChain.filterChain) {
-                    switch (filterExecutionPhase) {
-                        case REQUEST:
-                            filter.filterRequest(request, response);
-                            executedFilters.add(filter);
-                            break;
-                        case RESPONSE:
-                            filter.filterResponse(request, response);
-                            break;
-                        default:
-                            break;
+        /*
+         * futures are indexed by position in the stage, filters that are not run have none
+         */
+        private List<ListenableFuture<Filter>> startStage(int from, int end) {
+            List<ListenableFuture<Filter>> futures = new ArrayList<>(end - from);
+            List<ListenableFutureTask<Filter>> steppedTasks = new ArrayList<>();
+            for (int j = from; j < end; j++) {
+                Filter filter = filters[j];
+                if (!isIncluded(j)) {
+                    futures.add(null);
+                } else if (filter instanceof AsyncFilter) {
+                    futures.add(startAsyncFilter((AsyncFilter) filter, filterExecutionPhase, request, response));
+                } else {
+                    ListenableFutureTask<Filter> task = filterTask(filter, filterExecutionPhase, request, response);
+                    futures.add(task);
+                    if (runsOnStepper(filter, steppedTasks.isEmpty())) {
+                        steppedTasks.add(task);
+                    } else {
+                        offload(task);
                     }
                 }
-            } finally {
-                Collections.reverse(executedFilters);
-                filterChain.filterChain = new LinkedHashSet<>(executedFilters);
             }
-            return executedFilters;
+            for (ListenableFutureTask<Filter> task : steppedTasks) {
+                task.run();
+            }
+            return futures;
+        }
+
+        private ListenableFuture<Object> awaitStage(final int from, final List<ListenableFuture<Filter>> futures, long timeLeft) {
+            List<ListenableFuture<Filter>> startedFutures = new ArrayList<>();
+            //the completion stage of an async filter may complete on any thread, the pooled mode resumes on the filter executor
+            Executor resumeExecutor = directExecutor();
+            for (int j = 0; j < futures.size(); j++) {
+                if (futures.get(j) != null) {
+                    startedFutures.add(futures.get(j));
+                    if (filterExecutionMode == FilterExecutionMode.POOLED && filters[from + j] instanceof AsyncFilter) {
+                        resumeExecutor = filterTPE;
+                    }
+                }
+            }
+
+            ListenableFuture<List<Filter>> stageProcessing = TimedFutures.withTimeout(Futures.successfulAsList(startedFutures), timeLeft, TimeUnit.MILLISECONDS, timeoutScheduler);
+            ListenableFuture<List<Filter>> recorded = Futures.withFallback(stageProcessing, new FutureFallback<List<Filter>>() {
+                @Override
+                public ListenableFuture<List<Filter>> create(Throwable throwable) throws Exception {
+                    for (int j = 0; j < futures.size(); j++) {
+                        if (succeeded(futures.get(j))) {
+                            executed(from + j);
+                        }
+                    }
+                    return Futures.immediateFailedFuture(throwable);
+                }
+            }, directExecutor());
+
+            return Futures.transform(recorded, new AsyncFunction<List<Filter>, Object>() {
+                @Override
+                public ListenableFuture<Object> apply(List<Filter> stageFilters) throws Exception {
+                    completeStage(from, futures);
+                    return proceed(stageEnds[from]);
+                }
+            }, resumeExecutor);
+        }
+
+        /*
+         * Records the filters of a completed stage that were executed and rethrows the failure of the first
+         * filter of the stage that failed.
+         */
+        private void completeStage(int from, List<ListenableFuture<Filter>> futures) throws Exception {
+            Exception failure = null;
+            for (int j = 0; j < futures.size(); j++) {
+                if (futures.get(j) == null) {
+                    continue;
+                }
+                try {
+                    futures.get(j).get();
+                    executed(from + j);
+                } catch (ExecutionException exception) {
+                    if (failure == null) {
+                        failure = exception.getCause() instanceof Exception ? (Exception) exception.getCause() : exception;
+                    }
+                } catch (CancellationException exception) {
+                    if (failure == null) {
+                        failure = exception;
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private static ListenableFutureTask<Filter> filterTask(final Filter filter, final FilterExecutionPhase filterExecutionPhase, final Request request, final Response response) {
+        return ListenableFutureTask.create(new Callable<Filter>() {
+            @Override
+            public Filter call() throws Exception {
+                runFilter(filter, filterExecutionPhase, request, response);
+                return filter;
+            }
+        });
+    }
+
+    /*
+     * Adapts the completion stage of an async filter, cancelling the future cancels the completion stage.
+     */
+    private static ListenableFuture<Filter> startAsyncFilter(final AsyncFilter filter, FilterExecutionPhase filterExecutionPhase, Request request, Response response) {
+        final CompletionStage<Void> completionStage;
+        try {
+            completionStage = filterExecutionPhase == FilterExecutionPhase.REQUEST ? filter.filterRequestAsync(request, response) : filter.filterResponseAsync(request, response);
+        } catch (Exception exception) {
+            return Futures.immediateFailedFuture(exception);
+        }
+
+        final SettableFuture<Filter> future = SettableFuture.create();
+        completionStage.whenComplete(new BiConsumer<Void, Throwable>() {
+            @Override
+            public void accept(Void result, Throwable throwable) {
+                if (throwable == null) {
+                    future.set(filter);
+                } else if (throwable instanceof CompletionException && throwable.getCause() != null) {
+                    future.setException(throwable.getCause());
+                } else {
+                    future.setException(throwable);
+                }
+            }
+        });
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                if (future.isCancelled()) {
+                    completionStage.toCompletableFuture().cancel(true);
+                }
+            }
+        }, directExecutor());
+        return future;
+    }
+
+    /*
+     * a task the executor rejects is run on the calling thread
+     */
+    private void offload(ListenableFutureTask<Filter> task) {
+        try {
+            filterTPE.execute(task);
+        } catch (RejectedExecutionException exception) {
+            exceptionLogger.warn("Filter executor rejected a filter, running it inline: {}", exception.getMessage());
+            task.run();
+        }
+    }
+
+    private static boolean allDone(List<ListenableFuture<Filter>> futures) {
+        for (ListenableFuture<Filter> future : futures) {
+            if (future != null && !future.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean succeeded(ListenableFuture<Filter> future) {
+        if (future == null || !future.isDone() || future.isCancelled()) {
+            return false;
+        }
+        try {
+            future.get();
+            return true;
+        } catch (InterruptedException | ExecutionException exception) {
+            return false;
+        }
+    }
+
+    private static void runFilter(Filter filter, FilterExecutionPhase filterExecutionPhase, Request request, Response response) throws Exception {
+        switch (filterExecutionPhase) {
+            case REQUEST:
+                filter.filterRequest(request, response);
+                break;
+            case RESPONSE:
+                filter.filterResponse(request, response);
+                break;
+            default:
+                break;
         }
     }
 
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.engine.filters;
+
+/**
+ * How a {@link FilterChain} runs its filters.
+ */
+public enum FilterExecutionMode {
+
+    /**
+     * Every phase of the chain is run on the filter executor.
+     */
+    POOLED,
+
+    /**
+     * Filters are run on the thread that processes the phase and the deadline is checked between filters.
+     * {@link flipkart.lego.api.entities.BlockingFilter}s are still run on the filter executor. Lego also builds
+     * the response on the thread that realized the data instead of handing it to the filter executor, unless
+     * the wait for the data ended on a timer.
+     */
+    INLINE
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import flipkart.lego.api.entities.BatchableDataSource;
+import flipkart.lego.api.entities.DataSource;
+import flipkart.lego.api.entities.DataType;
+import flipkart.lego.api.helpers.Deadline;
+import flipkart.lego.concurrency.futures.TimedFutures;
+import flipkart.lego.engine.datasources.BatchingInterceptor;
+import flipkart.lego.engine.datasources.CircuitBreakerInterceptor;
+import flipkart.lego.engine.datasources.DataSourceDispatcher;
+import flipkart.lego.engine.datasources.DataSourceInterceptor;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+public class BatchingInterceptorTest {
+
+    private ExecutorService executorService = Executors.newCachedThreadPool();
+
+    class Listing implements DataType {
+        final String id;
+
+        Listing(String id) {
+            this.id = id;
+        }
+    }
+
+    class ListingDataSource implements BatchableDataSource<Listing> {
+        private final String id;
+        private final List<Set<String>> batches;
+
+        ListingDataSource(String id, List<Set<String>> batches) {
+            this.id = id;
+            this.batches = batches;
+        }
+
+        @Override
+        public String getBatchKey() {
+            return id;
+        }
+
+        @Override
+        public Map<String, Listing> callBatch(Set<String> batchKeys) throws Exception {
+            batches.add(batchKeys);
+            Map<String, Listing> listings = new HashMap<>();
+            for (String batchKey : batchKeys) {
+                if (!batchKey.equals("missing")) {
+                    listings.put(batchKey, new Listing(batchKey));
+                }
+            }
+            return listings;
+        }
+
+        @Override
+        public Listing call() throws Exception {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private ListenableFuture dispatch(DataSourceDispatcher dispatcher, DataSource dataSource) throws Exception {
+        Map<String, DataSource> required = new HashMap<>();
+        required.put("listing", dataSource);
+        Map<String, ListenableFuture> requiredFutures = new HashMap<>();
+        dispatcher.dispatch(required, null, requiredFutures, new HashMap<String, ListenableFuture>(), Deadline.after(1, TimeUnit.MINUTES));
+        return requiredFutures.get("listing");
+    }
+
+    @Test
+    public void testFullBatchIsFetchedInOneCall() throws Exception {
+        BatchingInterceptor batchingInterceptor = new BatchingInterceptor(3, 1, TimeUnit.MINUTES, TimedFutures.sharedScheduler());
+        DataSourceDispatcher dispatcher = new DataSourceDispatcher(executorService, Collections.<DataSourceInterceptor>singletonList(batchingInterceptor));
+        List<Set<String>> batches = new CopyOnWriteArrayList<>();
+
+        ListenableFuture first = dispatch(dispatcher, new ListingDataSource("l1", batches));
+        ListenableFuture second = dispatch(dispatcher, new ListingDataSource("l2", batches));
+        ListenableFuture third = dispatch(dispatcher, new ListingDataSource("l3", batches));
+
+        assertEquals(((Listing) first.get(1, TimeUnit.SECONDS)).id, "l1");
+        assertEquals(((Listing) second.get(1, TimeUnit.SECONDS)).id, "l2");
+        assertEquals(((Listing) third.get(1, TimeUnit.SECONDS)).id, "l3");
+        assertEquals(batches.size(), 1);
+        assertEquals(batches.get(0).size(), 3);
+    }
+
+    @Test
+    public void testBatchIsFetchedWhenWindowPasses() throws Exception {
+        BatchingInterceptor batchingInterceptor = new BatchingInterceptor(100, 20, TimeUnit.MILLISECONDS, TimedFutures.sharedScheduler());
+        DataSourceDispatcher dispatcher = new DataSourceDispatcher(executorService, Collections.<DataSourceInterceptor>singletonList(batchingInterceptor));
+        List<Set<String>> batches = new CopyOnWriteArrayList<>();
+
+        //identical keys are fetched once
+        ListenableFuture first = dispatch(dispatcher, new ListingDataSource("l1", batches));
+        ListenableFuture second = dispatch(dispatcher, new ListingDataSource("l1", batches));
+        ListenableFuture missing = dispatch(dispatcher, new ListingDataSource("missing", batches));
+
+        assertTrue(first.get(1, TimeUnit.SECONDS) == second.get(1, TimeUnit.SECONDS));
+        boolean missingFailed = false;
+        try {
+            missing.get(1, TimeUnit.SECONDS);
+        } catch (ExecutionException exception) {
+            missingFailed = true;
+        }
+        assertTrue(missingFailed);
+        assertEquals(batches.size(), 1);
+        assertEquals(batches.get(0).size(), 2);
+    }
+
+    @Test
+    public void testBatchKeepsTheIdentityOfItsDataSources() throws Exception {
+        BatchingInterceptor batchingInterceptor = new BatchingInterceptor(1, 1, TimeUnit.MINUTES, TimedFutures.sharedScheduler());
+        CircuitBreakerInterceptor circuitBreakerInterceptor = new CircuitBreakerInterceptor();
+        DataSourceDispatcher dispatcher = new DataSourceDispatcher(executorService, Arrays.<DataSourceInterceptor>asList(batchingInterceptor, circuitBreakerInterceptor));
+        List<Set<String>> batches = new CopyOnWriteArrayList<>();
+
+        ListenableFuture future = dispatch(dispatcher, new ListingDataSource("l1", batches));
+        assertEquals(((Listing) future.get(1, TimeUnit.SECONDS)).id, "l1");
+
+        //the batch went through the circuit of its data sources
+        assertNotNull(circuitBreakerInterceptor.getCircuitBreaker(ListingDataSource.class.getName()));
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import flipkart.lego.api.entities.DataSource;
+import flipkart.lego.api.entities.DataType;
+import flipkart.lego.api.entities.IsolatedDataSource;
+import flipkart.lego.api.helpers.Deadline;
+import flipkart.lego.engine.datasources.Bulkhead;
+import flipkart.lego.engine.datasources.BulkheadInterceptor;
+import flipkart.lego.engine.datasources.DataSourceDispatcher;
+import flipkart.lego.engine.datasources.DataSourceInterceptor;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class BulkheadInterceptorTest {
+
+    private ExecutorService executorService = Executors.newCachedThreadPool();
+
+    class Reviews implements DataType {
+    }
+
+    class ReviewsDataSource implements IsolatedDataSource<Reviews> {
+        private final CountDownLatch release;
+
+        ReviewsDataSource(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public String getBulkheadGroup() {
+            return "reviews";
+        }
+
+        @Override
+        public Reviews call() throws Exception {
+            release.await();
+            return new Reviews();
+        }
+    }
+
+    private ListenableFuture dispatch(DataSourceDispatcher dispatcher, DataSource dataSource, boolean required) throws Exception {
+        Map<String, DataSource> dataSources = new HashMap<>();
+        dataSources.put("reviews", dataSource);
+        Map<String, ListenableFuture> futures = new HashMap<>();
+        if (required) {
+            dispatcher.dispatch(dataSources, null, futures, new HashMap<String, ListenableFuture>(), Deadline.after(1, TimeUnit.MINUTES));
+        } else {
+            dispatcher.dispatch(null, dataSources, new HashMap<String, ListenableFuture>(), futures, Deadline.after(1, TimeUnit.MINUTES));
+        }
+        return futures.get("reviews");
+    }
+
+    private boolean isRejected(ListenableFuture future) throws Exception {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            return false;
+        } catch (ExecutionException exception) {
+            return exception.getCause() instanceof RejectedExecutionException;
+        }
+    }
+
+    //the permit of a call is released by a listener that may run just after get returns
+    private void awaitIdle(Bulkhead bulkhead) throws Exception {
+        for (int i = 0; i < 100 && bulkhead.getInFlightCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(bulkhead.getInFlightCount(), 0);
+    }
+
+    @Test
+    public void testFullBulkheadRejectsOptionalAndQueuesRequired() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("reviews", 1, 1);
+        BulkheadInterceptor bulkheadInterceptor = new BulkheadInterceptor(Collections.singletonList(bulkhead));
+        DataSourceDispatcher dispatcher = new DataSourceDispatcher(executorService, Collections.<DataSourceInterceptor>singletonList(bulkheadInterceptor));
+        CountDownLatch release = new CountDownLatch(1);
+
+        ListenableFuture first = dispatch(dispatcher, new ReviewsDataSource(release), true);
+        assertEquals(bulkhead.getSaturation(), 1.0);
+
+        //optional data sources fail fast on a full bulkhead
+        assertTrue(isRejected(dispatch(dispatcher, new ReviewsDataSource(release), false)));
+
+        //required data sources queue until the queue is full as well
+        ListenableFuture queued = dispatch(dispatcher, new ReviewsDataSource(release), true);
+        assertEquals(bulkhead.getQueuedCount(), 1);
+        assertTrue(isRejected(dispatch(dispatcher, new ReviewsDataSource(release), true)));
+        assertEquals(bulkhead.getRejectedCount(), 2);
+
+        release.countDown();
+        first.get(1, TimeUnit.SECONDS);
+        queued.get(1, TimeUnit.SECONDS);
+        awaitIdle(bulkhead);
+        assertEquals(bulkhead.getQueuedCount(), 0);
+    }
+
+    @Test
+    public void testCancelledQueuedCallLeavesTheQueue() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("reviews", 1, 1);
+        BulkheadInterceptor bulkheadInterceptor = new BulkheadInterceptor(Collections.singletonList(bulkhead));
+        DataSourceDispatcher dispatcher = new DataSourceDispatcher(executorService, Collections.<DataSourceInterceptor>singletonList(bulkheadInterceptor));
+        CountDownLatch release = new CountDownLatch(1);
+
+        ListenableFuture first = dispatch(dispatcher, new ReviewsDataSource(release), true);
+        ListenableFuture queued = dispatch(dispatcher, new ReviewsDataSource(release), true);
+        queued.cancel(true);
+        assertEquals(bulkhead.getQueuedCount(), 0);
+
+        release.countDown();
+        first.get(1, TimeUnit.SECONDS);
+        awaitIdle(bulkhead);
+    }
+
+    @Test
+    public void testCancelledCallHoldsItsPermitUntilItReturns() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("reviews", 1);
+        BulkheadInterceptor bulkheadInterceptor = new BulkheadInterceptor(Collections.singletonList(bulkhead));
+        DataSourceDispatcher dispatcher = new DataSourceDispatcher(executorService, Collections.<DataSourceInterceptor>singletonList(bulkheadInterceptor));
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        //a call stuck in I/O that ignores interrupts
+        ListenableFuture first = dispatch(dispatcher, new ReviewsDataSource(release) {
+            @Override
+            public Reviews call() throws Exception {
+                started.countDown();
+                while (true) {
+                    try {
+                        release.await();
+                        return new Reviews();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            }
+        }, true);
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        first.cancel(true);
+
+        //the cancelled call still holds its thread and so its permit
+        assertEquals(bulkhead.getInFlightCount(), 1);
+        assertTrue(isRejected(dispatch(dispatcher, new ReviewsDataSource(release), true)));
+
+        release.countDown();
+        awaitIdle(bulkhead);
+    }
+}
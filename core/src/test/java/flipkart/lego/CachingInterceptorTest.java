@@ -0,0 +1,144 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flipkart.lego;
+
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.ListenableFuture;
+import flipkart.lego.api.entities.CacheableDataSource;
+import flipkart.lego.api.entities.ContextAwareDataSource;
+import flipkart.lego.api.entities.DataSource;
+import flipkart.lego.api.entities.DataType;
+import flipkart.lego.api.helpers.DataSourceContext;
+import flipkart.lego.api.helpers.Deadline;
+import flipkart.lego.engine.cache.DataSourceCache;
+import flipkart.lego.engine.cache.Weigher;
+import flipkart.lego.engine.datasources.CachingInterceptor;
+import flipkart.lego.engine.datasources.DataSourceDispatcher;
+import flipkart.lego.engine.datasources.DataSourceInterceptor;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class CachingInterceptorTest {
+
+    private ExecutorService executorService = Executors.newCachedThreadPool();
+
+    class Offers implements DataType {
+        final int version;
+
+        Offers(int version) {
+            this.version = version;
+        }
+    }
+
+    class FakeTicker extends Ticker {
+        volatile long nanos = 0;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+    }
+
+    class OffersDataSource implements CacheableDataSource<Offers>, ContextAwareDataSource<Offers> {
+        private final AtomicInteger calls;
+        private final CountDownLatch refreshed;
+        volatile boolean calledAfterDeadline = false;
+
+        OffersDataSource(AtomicInteger calls, CountDownLatch refreshed) {
+            this.calls = calls;
+            this.refreshed = refreshed;
+        }
+
+        @Override
+        public String getCacheKey() {
+            return "offers-1";
+        }
+
+        @Override
+        public long getTimeToLive() {
+            return 1000;
+        }
+
+        @Override
+        public Offers call(DataSourceContext context) {
+            calledAfterDeadline |= context.getDeadline().isExpired();
+            Offers offers = new Offers(calls.incrementAndGet());
+            if (offers.version > 1) {
+                refreshed.countDown();
+            }
+            return offers;
+        }
+
+        @Override
+        public Offers call() throws Exception {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private ListenableFuture dispatch(DataSourceDispatcher dispatcher, DataSource dataSource, Deadline deadline) throws Exception {
+        Map<String, DataSource> optional = new HashMap<>();
+        optional.put("offers", dataSource);
+        Map<String, ListenableFuture> optionalFutures = new HashMap<>();
+        dispatcher.dispatch(null, optional, new HashMap<String, ListenableFuture>(), optionalFutures, deadline);
+        return optionalFutures.get("offers");
+    }
+
+    @Test
+    public void testRefreshOutlivesTheDeadlineOfTheRequest() throws Exception {
+        FakeTicker ticker = new FakeTicker();
+        DataSourceCache cache = new DataSourceCache(100, 100, new Weigher() {
+            @Override
+            public int weigh(String key, DataType value) {
+                return 1;
+            }
+        }, ticker);
+        DataSourceDispatcher dispatcher = new DataSourceDispatcher(executorService,
+                Collections.<DataSourceInterceptor>singletonList(new CachingInterceptor(cache, 1, TimeUnit.MINUTES)));
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch refreshed = new CountDownLatch(1);
+
+        assertEquals(((Offers) dispatch(dispatcher, new OffersDataSource(calls, refreshed), Deadline.after(1, TimeUnit.MINUTES)).get(1, TimeUnit.SECONDS)).version, 1);
+        ticker.nanos += TimeUnit.SECONDS.toNanos(2);
+
+        //the stale data is served to a request that is out of time, the refresh still has time of its own
+        OffersDataSource refreshingDataSource = new OffersDataSource(calls, refreshed);
+        assertEquals(((Offers) dispatch(dispatcher, refreshingDataSource, Deadline.after(0, TimeUnit.MILLISECONDS)).get(1, TimeUnit.SECONDS)).version, 1);
+        assertTrue(refreshed.await(1, TimeUnit.SECONDS));
+        assertFalse(refreshingDataSource.calledAfterDeadline);
+
+        Offers cached = null;
+        for (int attempt = 0; attempt < 100 && (cached == null || cached.version != 2); attempt++) {
+            cached = (Offers) dispatch(dispatcher, new OffersDataSource(calls, refreshed), Deadline.after(1, TimeUnit.MINUTES)).get(1, TimeUnit.SECONDS);
+            Thread.sleep(10);
+        }
+        assertEquals(cached.version, 2);
+        assertEquals(calls.get(), 2);
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego;
+
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.ListenableFuture;
+import flipkart.lego.api.entities.CircuitBreakableDataSource;
+import flipkart.lego.api.entities.DataSource;
+import flipkart.lego.api.entities.DataType;
+import flipkart.lego.api.entities.FallbackDataSource;
+import flipkart.lego.api.helpers.Deadline;
+import flipkart.lego.engine.datasources.CircuitBreaker;
+import flipkart.lego.engine.datasources.CircuitBreakerInterceptor;
+import flipkart.lego.engine.datasources.DataSourceDispatcher;
+import flipkart.lego.engine.datasources.DataSourceInterceptor;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class CircuitBreakerInterceptorTest {
+
+    private ExecutorService executorService = Executors.newCachedThreadPool();
+
+    class Ratings implements DataType {
+        final boolean fallback;
+
+        Ratings(boolean fallback) {
+            this.fallback = fallback;
+        }
+    }
+
+    class RatingsDataSource implements CircuitBreakableDataSource<Ratings>, FallbackDataSource<Ratings> {
+        private final AtomicInteger calls;
+        private final boolean failing;
+
+        RatingsDataSource(AtomicInteger calls, boolean failing) {
+            this.calls = calls;
+            this.failing = failing;
+        }
+
+        @Override
+        public String getCircuitName() {
+            return "ratings";
+        }
+
+        @Override
+        public Ratings getFallback() throws Exception {
+            return new Ratings(true);
+        }
+
+        @Override
+        public Ratings call() throws Exception {
+            calls.incrementAndGet();
+            if (failing) {
+                throw new IllegalStateException("ratings service is down");
+            }
+            return new Ratings(false);
+        }
+    }
+
+    class ManualTicker extends Ticker {
+        private final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    }
+
+    private Ratings dispatch(DataSourceDispatcher dispatcher, DataSource dataSource) throws Exception {
+        Map<String, DataSource> required = new HashMap<>();
+        required.put("ratings", dataSource);
+        Map<String, ListenableFuture> requiredFutures = new HashMap<>();
+        dispatcher.dispatch(required, null, requiredFutures, new HashMap<String, ListenableFuture>(), Deadline.after(1, TimeUnit.MINUTES));
+        ListenableFuture future = requiredFutures.get("ratings");
+        try {
+            return (Ratings) future.get(1, TimeUnit.SECONDS);
+        } catch (ExecutionException exception) {
+            return null;
+        } finally {
+            //outcomes are recorded by a listener that may run just after get returns
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testOpenCircuitFallsBackAndRecovers() throws Exception {
+        ManualTicker ticker = new ManualTicker();
+        CircuitBreakerInterceptor circuitBreakerInterceptor = new CircuitBreakerInterceptor(0.5, 4, 10, 5, TimeUnit.SECONDS, ticker);
+        DataSourceDispatcher dispatcher = new DataSourceDispatcher(executorService, Collections.<DataSourceInterceptor>singletonList(circuitBreakerInterceptor));
+        AtomicInteger calls = new AtomicInteger();
+
+        for (int i = 0; i < 4; i++) {
+            dispatch(dispatcher, new RatingsDataSource(calls, true));
+        }
+        CircuitBreaker circuitBreaker = circuitBreakerInterceptor.getCircuitBreaker("ratings");
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.OPEN);
+
+        //an open circuit is not called, the fallback is used instead
+        assertTrue(dispatch(dispatcher, new RatingsDataSource(calls, false)).fallback);
+        assertEquals(calls.get(), 4);
+
+        //once the open duration is over a probe is let through and its success closes the circuit
+        ticker.nanos.addAndGet(TimeUnit.SECONDS.toNanos(6));
+        assertTrue(!dispatch(dispatcher, new RatingsDataSource(calls, false)).fallback);
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.CLOSED);
+        assertEquals(calls.get(), 5);
+    }
+
+    @Test
+    public void testOpenCircuitRejectsWithoutFallback() throws Exception {
+        ManualTicker ticker = new ManualTicker();
+        CircuitBreakerInterceptor circuitBreakerInterceptor = new CircuitBreakerInterceptor(0.5, 2, 10, 5, TimeUnit.SECONDS, ticker);
+        DataSourceDispatcher dispatcher = new DataSourceDispatcher(executorService, Collections.<DataSourceInterceptor>singletonList(circuitBreakerInterceptor));
+        final AtomicInteger calls = new AtomicInteger();
+        DataSource<Ratings> dataSource = new DataSource<Ratings>() {
+            @Override
+            public Ratings call() throws Exception {
+                calls.incrementAndGet();
+                throw new IllegalStateException("ratings service is down");
+            }
+        };
+
+        dispatch(dispatcher, dataSource);
+        dispatch(dispatcher, dataSource);
+        assertEquals(circuitBreakerInterceptor.getCircuitBreaker(dataSource.getClass().getName()).getState(), CircuitBreaker.State.OPEN);
+
+        Map<String, DataSource> optional = new HashMap<>();
+        optional.put("ratings", dataSource);
+        Map<String, ListenableFuture> optionalFutures = new HashMap<>();
+        dispatcher.dispatch(null, optional, new HashMap<String, ListenableFuture>(), optionalFutures, Deadline.after(1, TimeUnit.MINUTES));
+        boolean rejected = false;
+        try {
+            optionalFutures.get("ratings").get(0, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException exception) {
+            rejected = exception.getCause() instanceof RejectedExecutionException;
+        }
+        assertTrue(rejected);
+        assertEquals(calls.get(), 2);
+    }
+
+    @Test
+    public void testNegativeTickerReadings() throws Exception {
+        //System.nanoTime may be negative
+        ManualTicker ticker = new ManualTicker();
+        ticker.nanos.set(-TimeUnit.SECONDS.toNanos(3) - 7);
+        CircuitBreakerInterceptor circuitBreakerInterceptor = new CircuitBreakerInterceptor(0.5, 2, 10, 5, TimeUnit.SECONDS, ticker);
+        DataSourceDispatcher dispatcher = new DataSourceDispatcher(executorService, Collections.<DataSourceInterceptor>singletonList(circuitBreakerInterceptor));
+        AtomicInteger calls = new AtomicInteger();
+
+        dispatch(dispatcher, new RatingsDataSource(calls, false));
+        dispatch(dispatcher, new RatingsDataSource(calls, true));
+        CircuitBreaker circuitBreaker = circuitBreakerInterceptor.getCircuitBreaker("ratings");
+        assertEquals(circuitBreaker.getFailureRate(), 0.5);
+        assertEquals(circuitBreaker.getState(), CircuitBreaker.State.OPEN);
+        assertEquals(calls.get(), 2);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import flipkart.lego.api.entities.CoalescableDataSource;
+import flipkart.lego.api.entities.DataSource;
+import flipkart.lego.api.entities.DataType;
+import flipkart.lego.api.helpers.Deadline;
+import flipkart.lego.engine.datasources.CoalescingInterceptor;
+import flipkart.lego.engine.datasources.DataSourceDispatcher;
+import flipkart.lego.engine.datasources.DataSourceInterceptor;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class CoalescingInterceptorTest {
+
+    private ExecutorService executorService = Executors.newCachedThreadPool();
+
+    class Product implements DataType {
+    }
+
+    class ProductDataSource implements CoalescableDataSource<Product> {
+        private final AtomicInteger calls;
+        private final CountDownLatch release;
+
+        ProductDataSource(AtomicInteger calls, CountDownLatch release) {
+            this.calls = calls;
+            this.release = release;
+        }
+
+        @Override
+        public String getCoalescingKey() {
+            return "product-1";
+        }
+
+        @Override
+        public Product call() throws Exception {
+            calls.incrementAndGet();
+            release.await();
+            return new Product();
+        }
+    }
+
+    private ListenableFuture dispatch(DataSourceDispatcher dispatcher, DataSource dataSource) throws Exception {
+        Map<String, DataSource> required = new HashMap<>();
+        required.put("product", dataSource);
+        Map<String, ListenableFuture> requiredFutures = new HashMap<>();
+        dispatcher.dispatch(required, null, requiredFutures, new HashMap<String, ListenableFuture>(), Deadline.after(1, TimeUnit.MINUTES));
+        return requiredFutures.get("product");
+    }
+
+    @Test
+    public void testIdenticalCallsAreCoalesced() throws Exception {
+        CoalescingInterceptor coalescingInterceptor = new CoalescingInterceptor();
+        DataSourceDispatcher dispatcher = new DataSourceDispatcher(executorService, Collections.<DataSourceInterceptor>singletonList(coalescingInterceptor));
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        ListenableFuture first = dispatch(dispatcher, new ProductDataSource(calls, release));
+        ListenableFuture second = dispatch(dispatcher, new ProductDataSource(calls, release));
+        ListenableFuture third = dispatch(dispatcher, new ProductDataSource(calls, release));
+        assertEquals(coalescingInterceptor.getInFlightCount(), 1);
+
+        //one request giving up must not cancel the shared call
+        first.cancel(true);
+        release.countDown();
+
+        assertTrue(second.get(1, TimeUnit.SECONDS) == third.get(1, TimeUnit.SECONDS));
+        assertEquals(calls.get(), 1);
+        assertEquals(coalescingInterceptor.getInFlightCount(), 0);
+    }
+
+    @Test
+    public void testAbandonedCallIsCancelled() throws Exception {
+        CoalescingInterceptor coalescingInterceptor = new CoalescingInterceptor();
+        DataSourceDispatcher dispatcher = new DataSourceDispatcher(executorService, Collections.<DataSourceInterceptor>singletonList(coalescingInterceptor));
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        ListenableFuture first = dispatch(dispatcher, new ProductDataSource(calls, release));
+        ListenableFuture second = dispatch(dispatcher, new ProductDataSource(calls, release));
+        first.cancel(true);
+        second.cancel(true);
+        assertEquals(coalescingInterceptor.getInFlightCount(), 0);
+
+        ListenableFuture third = dispatch(dispatcher, new ProductDataSource(calls, release));
+        release.countDown();
+        third.get(1, TimeUnit.SECONDS);
+    }
+}
@@ -17,12 +17,19 @@
 package flipkart.lego;
 
 import flipkart.lego.concurrency.api.Promise;
+import flipkart.lego.concurrency.api.PromiseListener;
 import flipkart.lego.concurrency.exceptions.PromiseBrokenException;
+import flipkart.lego.concurrency.promises.CompositePromise;
 import flipkart.lego.concurrency.promises.DeliverablePromise;
 import flipkart.lego.concurrency.promises.LazyComposablePromise;
+import flipkart.lego.concurrency.promises.PartialResult;
 import org.testng.annotations.Test;
 
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ComposablePromiseTest {
 
@@ -81,4 +88,86 @@ public class ComposablePromiseTest {
         assert promiseBroken;
     }
 
+    @Test(enabled = true)
+    public void testTimeoutBoundsAllConstituentPromises() throws Exception {
+        Promise composablePromise = new LazyComposablePromise(new DeliverablePromise(), new DeliverablePromise(), new DeliverablePromise());
+        boolean timeoutExceptionThrown = false;
+
+        long start = System.currentTimeMillis();
+        try {
+            composablePromise.get(100, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException exception) {
+            timeoutExceptionThrown = true;
+        }
+        assert timeoutExceptionThrown;
+        assert System.currentTimeMillis() - start < 250;
+    }
+
+    @Test(enabled = true)
+    public void testCompositePromiseIsRealizedByItsPromises() throws Exception {
+        DeliverablePromise<Integer> promise1 = new DeliverablePromise<>();
+        DeliverablePromise<Integer> promise2 = new DeliverablePromise<>();
+        CompositePromise<Integer> compositePromise = new CompositePromise<>(promise1, promise2);
+
+        promise2.fullFillPromise(2);
+        assert !compositePromise.isRealized();
+        promise1.fullFillPromise(1);
+
+        assert compositePromise.isRealized();
+        assert compositePromise.get().get(0) == 1;
+        assert compositePromise.get().get(1) == 2;
+    }
+
+    @Test(enabled = true)
+    public void testCompositePromisePartialResults() throws Exception {
+        DeliverablePromise<Integer> promise1 = new DeliverablePromise<>();
+        DeliverablePromise<Integer> promise2 = new DeliverablePromise<>();
+        DeliverablePromise<Integer> promise3 = new DeliverablePromise<>();
+        CompositePromise<Integer> compositePromise = new CompositePromise<>(promise1, promise2, promise3);
+
+        promise1.fullFillPromise(1);
+        promise2.breakPromise(new PromiseBrokenException("just felt like it"));
+        Promise<List<PartialResult<Integer>>> partialResultsPromise = compositePromise.partialResults(50, TimeUnit.MILLISECONDS, Executors.newSingleThreadScheduledExecutor());
+
+        List<PartialResult<Integer>> partialResults = partialResultsPromise.get(1, TimeUnit.SECONDS);
+        assert partialResults.get(0).getValue() == 1;
+        assert partialResults.get(1).getState() == PartialResult.State.BROKEN;
+        assert partialResults.get(2).getState() == PartialResult.State.PENDING;
+        assert compositePromise.getPartialResults(10, TimeUnit.MILLISECONDS).get(2).getState() == PartialResult.State.PENDING;
+    }
+
+    @Test(enabled = true)
+    public void testRealizedValueIsCollectedOnce() throws Exception {
+        DeliverablePromise<Integer> promise1 = new DeliverablePromise<>();
+        DeliverablePromise<Integer> promise2 = new DeliverablePromise<>();
+        LazyComposablePromise<Integer> composablePromise = new LazyComposablePromise<>(promise1, promise2);
+        final AtomicInteger triggered = new AtomicInteger();
+        composablePromise.addListener(new PromiseListener<List<Integer>>() {
+            @Override
+            public void whenFullfilled(List<Integer> value) {
+                triggered.incrementAndGet();
+            }
+
+            @Override
+            public void whenBroken(PromiseBrokenException promiseBrokenException) {
+            }
+        });
+        promise1.fullFillPromise(1);
+        promise2.fullFillPromise(2);
+
+        List<Integer> first = composablePromise.get(1, TimeUnit.SECONDS);
+        List<Integer> second = composablePromise.get();
+        composablePromise.await(1, TimeUnit.SECONDS);
+        assert first == second;
+        assert second.size() == 2;
+        assert triggered.get() == 1;
+
+        boolean unmodifiable = false;
+        try {
+            first.add(3);
+        } catch (UnsupportedOperationException exception) {
+            unmodifiable = true;
+        }
+        assert unmodifiable;
+    }
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import flipkart.lego.api.entities.DataSource;
+import flipkart.lego.api.entities.DataType;
+import flipkart.lego.api.helpers.Deadline;
+import flipkart.lego.engine.datasources.ConcurrencyLimitInterceptor;
+import flipkart.lego.engine.datasources.DataSourceDispatcher;
+import flipkart.lego.engine.datasources.DataSourceInterceptor;
+import flipkart.lego.engine.datasources.VegasLimit;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class ConcurrencyLimitInterceptorTest {
+
+    private ExecutorService executorService = Executors.newCachedThreadPool();
+
+    class Stock implements DataType {
+    }
+
+    class StockDataSource implements DataSource<Stock> {
+        private final CountDownLatch release;
+
+        StockDataSource(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public Stock call() throws Exception {
+            release.await();
+            return new Stock();
+        }
+    }
+
+    private ListenableFuture dispatch(DataSourceDispatcher dispatcher, DataSource dataSource, boolean required) throws Exception {
+        Map<String, DataSource> dataSources = new HashMap<>();
+        dataSources.put("stock", dataSource);
+        Map<String, ListenableFuture> futures = new HashMap<>();
+        if (required) {
+            dispatcher.dispatch(dataSources, null, futures, new HashMap<String, ListenableFuture>(), Deadline.after(1, TimeUnit.MINUTES));
+        } else {
+            dispatcher.dispatch(null, dataSources, new HashMap<String, ListenableFuture>(), futures, Deadline.after(1, TimeUnit.MINUTES));
+        }
+        return futures.get("stock");
+    }
+
+    private boolean isShed(ListenableFuture future) throws Exception {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            return false;
+        } catch (ExecutionException exception) {
+            return exception.getCause() instanceof RejectedExecutionException;
+        }
+    }
+
+    @Test
+    public void testOptionalDataSourcesAreShedFirst() throws Exception {
+        ConcurrencyLimitInterceptor limitInterceptor = new ConcurrencyLimitInterceptor(new VegasLimit(10, 1, 100), 0.2);
+        DataSourceDispatcher dispatcher = new DataSourceDispatcher(executorService, Collections.<DataSourceInterceptor>singletonList(limitInterceptor));
+        CountDownLatch release = new CountDownLatch(1);
+
+        for (int i = 0; i < 8; i++) {
+            dispatch(dispatcher, new StockDataSource(release), false);
+        }
+        assertTrue(isShed(dispatch(dispatcher, new StockDataSource(release), false)));
+
+        //the reserved share of the limit is still open to required data sources
+        ListenableFuture required = dispatch(dispatcher, new StockDataSource(release), true);
+        dispatch(dispatcher, new StockDataSource(release), true);
+        assertTrue(isShed(dispatch(dispatcher, new StockDataSource(release), true)));
+        assertEquals(limitInterceptor.getShedCount(), 2);
+
+        release.countDown();
+        required.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testLimitFollowsLatency() throws Exception {
+        VegasLimit limit = new VegasLimit(20, 1, 100);
+        for (int i = 0; i < 10; i++) {
+            limit.onSample("stock", TimeUnit.MILLISECONDS.toNanos(10), limit.getLimit(), false);
+        }
+        int grownLimit = limit.getLimit();
+        assertTrue(grownLimit > 20);
+
+        //calls queueing up behind a slower backend shrink the limit
+        for (int i = 0; i < 10; i++) {
+            limit.onSample("stock", TimeUnit.MILLISECONDS.toNanos(40), limit.getLimit(), false);
+        }
+        assertTrue(limit.getLimit() < grownLimit);
+
+        int limitBeforeDrop = limit.getLimit();
+        limit.onSample("stock", TimeUnit.SECONDS.toNanos(1), limit.getLimit(), true);
+        assertTrue(limit.getLimit() < limitBeforeDrop);
+    }
+
+    @Test
+    public void testCancellationBeforeTheDeadlineIsNotADrop() throws Exception {
+        VegasLimit limit = new VegasLimit(10, 1, 100);
+        ConcurrencyLimitInterceptor limitInterceptor = new ConcurrencyLimitInterceptor(limit, 0.2);
+        DataSourceDispatcher dispatcher = new DataSourceDispatcher(executorService, Collections.<DataSourceInterceptor>singletonList(limitInterceptor));
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        //an optional data source given up on well before its deadline, stuck in I/O that ignores interrupts
+        ListenableFuture late = dispatch(dispatcher, new StockDataSource(release) {
+            @Override
+            public Stock call() throws Exception {
+                started.countDown();
+                while (true) {
+                    try {
+                        release.await();
+                        return new Stock();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            }
+        }, false);
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        late.cancel(true);
+        assertEquals(limit.getLimit(), 10);
+
+        //its slot is freed once the call returns, not when its future was cancelled
+        assertEquals(limitInterceptor.getInFlightCount(), 1);
+        release.countDown();
+        for (int i = 0; i < 100 && limitInterceptor.getInFlightCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(limitInterceptor.getInFlightCount(), 0);
+    }
+}
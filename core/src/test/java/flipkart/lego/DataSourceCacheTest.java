@@ -0,0 +1,191 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego;
+
+import com.google.common.base.Ticker;
+import flipkart.lego.api.entities.DataType;
+import flipkart.lego.engine.cache.CacheStats;
+import flipkart.lego.engine.cache.CachedData;
+import flipkart.lego.engine.cache.DataSourceCache;
+import flipkart.lego.engine.cache.Weigher;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class DataSourceCacheTest {
+
+    class Banner implements DataType {
+        final int size;
+
+        Banner(int size) {
+            this.size = size;
+        }
+    }
+
+    class FakeTicker extends Ticker {
+        long nanos = 0;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+    }
+
+    @Test
+    public void testTimeToLive() {
+        FakeTicker ticker = new FakeTicker();
+        DataSourceCache cache = new DataSourceCache(100, 100, new Weigher() {
+            @Override
+            public int weigh(String key, DataType value) {
+                return 1;
+            }
+        }, ticker);
+
+        cache.put("banner", new Banner(1), 100, TimeUnit.MILLISECONDS);
+        assertNotNull(cache.getIfPresent("banner"));
+
+        ticker.nanos += TimeUnit.MILLISECONDS.toNanos(100);
+        assertNull(cache.getIfPresent("banner"));
+        assertEquals(cache.size(), 0);
+
+        CacheStats stats = cache.getStats();
+        assertEquals(stats.getHitCount(), 1);
+        assertEquals(stats.getMissCount(), 1);
+    }
+
+    @Test
+    public void testStalePeriod() {
+        FakeTicker ticker = new FakeTicker();
+        DataSourceCache cache = new DataSourceCache(100, 100, new Weigher() {
+            @Override
+            public int weigh(String key, DataType value) {
+                return 1;
+            }
+        }, ticker);
+
+        cache.put("banner", new Banner(1), 100, 50, TimeUnit.MILLISECONDS);
+        assertFalse(cache.getIfPresentOrStale("banner").isStale());
+
+        ticker.nanos += TimeUnit.MILLISECONDS.toNanos(120);
+        assertNull(cache.getIfPresent("banner"));
+        CachedData cachedData = cache.getIfPresentOrStale("banner");
+        assertTrue(cachedData.isStale());
+        assertNotNull(cachedData.getValue());
+        assertEquals(cache.getStats().getStaleHitCount(), 1);
+
+        ticker.nanos += TimeUnit.MILLISECONDS.toNanos(30);
+        assertNull(cache.getIfPresentOrStale("banner"));
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testScanDoesNotFlushHotEntries() {
+        DataSourceCache cache = new DataSourceCache(100);
+        for (int i = 0; i < 100; i++) {
+            cache.put("hot-" + i, new Banner(1), 1, TimeUnit.HOURS);
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 100; i++) {
+                cache.getIfPresent("hot-" + i);
+            }
+        }
+
+        //hot entries keep being read while one-off keys stream through
+        for (int i = 0; i < 10000; i++) {
+            cache.put("scan-" + i, new Banner(1), 1, TimeUnit.HOURS);
+            cache.getIfPresent("hot-" + (i % 100));
+        }
+
+        int hotEntries = 0;
+        for (int i = 0; i < 100; i++) {
+            if (cache.getIfPresent("hot-" + i) != null) {
+                hotEntries++;
+            }
+        }
+        assertTrue(hotEntries >= 90, "hot entries retained: " + hotEntries);
+        assertTrue(cache.size() <= 100);
+        assertTrue(cache.getStats().getEvictionCount() >= 10000);
+    }
+
+    @Test
+    public void testWeightBound() {
+        DataSourceCache cache = new DataSourceCache(100, 10, new Weigher() {
+            @Override
+            public int weigh(String key, DataType value) {
+                return ((Banner) value).size;
+            }
+        });
+
+        cache.put("too-heavy", new Banner(11), 1, TimeUnit.HOURS);
+        assertNull(cache.getIfPresent("too-heavy"));
+
+        for (int i = 0; i < 10; i++) {
+            cache.put("banner-" + i, new Banner(3), 1, TimeUnit.HOURS);
+        }
+        assertTrue(cache.getStats().getWeight() <= 10);
+        assertTrue(cache.size() <= 3);
+    }
+
+    @Test
+    public void testConcurrentReadsAndWrites() throws Exception {
+        final DataSourceCache cache = new DataSourceCache(100);
+        for (int i = 0; i < 100; i++) {
+            cache.put("banner-" + i, new Banner(1), 1, TimeUnit.HOURS);
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> readers = new ArrayList<>();
+        for (int thread = 0; thread < 8; thread++) {
+            final int seed = thread;
+            readers.add(executorService.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    int reads = 0;
+                    for (int i = 0; i < 10000; i++) {
+                        cache.getIfPresent("banner-" + ((i * 7 + seed) % 200));
+                        reads++;
+                        if (i % 100 == seed) {
+                            cache.put("banner-" + (100 + i % 100), new Banner(1), 1, TimeUnit.HOURS);
+                        }
+                    }
+                    return reads;
+                }
+            }));
+        }
+        int reads = 0;
+        for (Future<Integer> reader : readers) {
+            reads += reader.get(10, TimeUnit.SECONDS);
+        }
+        executorService.shutdown();
+
+        CacheStats stats = cache.getStats();
+        assertEquals(stats.getHitCount() + stats.getMissCount(), reads);
+        assertTrue(cache.size() <= 100);
+    }
+}
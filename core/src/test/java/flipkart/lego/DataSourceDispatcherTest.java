@@ -0,0 +1,213 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import flipkart.lego.api.entities.ContextAwareDataSource;
+import flipkart.lego.api.entities.DataSource;
+import flipkart.lego.api.entities.DataType;
+import flipkart.lego.api.entities.DependentDataSource;
+import flipkart.lego.api.entities.TimeBoundDataSource;
+import flipkart.lego.api.exceptions.InternalErrorException;
+import flipkart.lego.api.helpers.Cancellable;
+import flipkart.lego.api.helpers.DataSourceContext;
+import flipkart.lego.api.helpers.Deadline;
+import flipkart.lego.engine.datasources.DataSourceDispatcher;
+import flipkart.lego.engine.datasources.DispatchPlan;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class DataSourceDispatcherTest {
+
+    private ExecutorService executorService = Executors.newCachedThreadPool();
+
+    class Value implements DataType {
+        final String value;
+
+        Value(String value) {
+            this.value = value;
+        }
+    }
+
+    class ValueDataSource implements DataSource<Value> {
+        @Override
+        public Value call() throws Exception {
+            Thread.sleep(50);
+            return new Value("product");
+        }
+    }
+
+    class ChainedDataSource implements DependentDataSource<Value> {
+        private final String dependency;
+        private Map<String, DataType> dependencyResults;
+
+        ChainedDataSource(String dependency) {
+            this.dependency = dependency;
+        }
+
+        @Override
+        public Set<String> getDependencies() {
+            return Collections.singleton(dependency);
+        }
+
+        @Override
+        public void setDependencyResults(Map<String, DataType> dependencyResults) {
+            this.dependencyResults = dependencyResults;
+        }
+
+        @Override
+        public Value call() throws Exception {
+            return new Value("seller of " + ((Value) dependencyResults.get(dependency)).value);
+        }
+    }
+
+    class BoundedDataSource implements ContextAwareDataSource<Value>, TimeBoundDataSource<Value> {
+        private volatile long remainingTime = -1;
+        private final CountDownLatch aborted = new CountDownLatch(1);
+
+        @Override
+        public long getTimeout() {
+            return 100;
+        }
+
+        @Override
+        public Value call(DataSourceContext context) throws Exception {
+            remainingTime = context.getDeadline().timeRemaining(TimeUnit.MILLISECONDS);
+            //like a client that ignores interrupts, the call only ends when it is aborted
+            final CountDownLatch response = new CountDownLatch(1);
+            context.getCancellationToken().register(new Cancellable() {
+                @Override
+                public void cancel() {
+                    aborted.countDown();
+                    response.countDown();
+                }
+            });
+            while (response.getCount() > 0) {
+                try {
+                    response.await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+            return new Value("offers");
+        }
+
+        @Override
+        public Value call() throws Exception {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Test
+    public void testDependentDataSourceReceivesDependencyResults() throws Exception {
+        DataSourceDispatcher dispatcher = new DataSourceDispatcher(executorService);
+        Map<String, DataSource> required = new HashMap<>();
+        Map<String, DataSource> optional = new HashMap<>();
+        required.put("seller", new ChainedDataSource("product"));
+        optional.put("product", new ValueDataSource());
+        Map<String, ListenableFuture> requiredFutures = new HashMap<>();
+        Map<String, ListenableFuture> optionalFutures = new HashMap<>();
+
+        dispatcher.dispatch(required, optional, requiredFutures, optionalFutures, Deadline.after(1, TimeUnit.MINUTES));
+
+        Value seller = (Value) requiredFutures.get("seller").get(1, TimeUnit.SECONDS);
+        assertEquals(seller.value, "seller of product");
+        assertTrue(optionalFutures.get("product").isDone());
+    }
+
+    @Test
+    public void testCyclicAndUnknownDependencies() throws Exception {
+        DataSourceDispatcher dispatcher = new DataSourceDispatcher(executorService);
+        Map<String, DataSource> required = new HashMap<>();
+        required.put("a", new ChainedDataSource("b"));
+        required.put("b", new ChainedDataSource("a"));
+        boolean internalErrorExceptionThrown = false;
+        try {
+            dispatcher.dispatch(required, null, new HashMap<String, ListenableFuture>(), new HashMap<String, ListenableFuture>(), Deadline.after(1, TimeUnit.MINUTES));
+        } catch (InternalErrorException exception) {
+            internalErrorExceptionThrown = true;
+        }
+        assertTrue(internalErrorExceptionThrown);
+
+        required.clear();
+        required.put("a", new ChainedDataSource("missing"));
+        internalErrorExceptionThrown = false;
+        try {
+            dispatcher.dispatch(required, null, new HashMap<String, ListenableFuture>(), new HashMap<String, ListenableFuture>(), Deadline.after(1, TimeUnit.MINUTES));
+        } catch (InternalErrorException exception) {
+            internalErrorExceptionThrown = true;
+        }
+        assertTrue(internalErrorExceptionThrown);
+    }
+
+    @Test
+    public void testTimeBoundDataSourceIsAbortedAfterItsOwnTimeout() throws Exception {
+        DataSourceDispatcher dispatcher = new DataSourceDispatcher(executorService);
+        BoundedDataSource dataSource = new BoundedDataSource();
+        Map<String, DataSource> optional = new HashMap<>();
+        optional.put("offers", dataSource);
+        Map<String, ListenableFuture> optionalFutures = new HashMap<>();
+
+        dispatcher.dispatch(null, optional, new HashMap<String, ListenableFuture>(), optionalFutures, Deadline.after(1, TimeUnit.MINUTES));
+
+        boolean timeoutExceptionThrown = false;
+        try {
+            optionalFutures.get("offers").get(1, TimeUnit.SECONDS);
+        } catch (ExecutionException exception) {
+            timeoutExceptionThrown = exception.getCause() instanceof TimeoutException;
+        }
+        assertTrue(timeoutExceptionThrown);
+        assertTrue(dataSource.remainingTime >= 0 && dataSource.remainingTime <= 100);
+        assertTrue(dataSource.aborted.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDispatchPlanIsReusedForDataSourcesUnderTheSameKeys() throws Exception {
+        Map<String, DataSource> required = new HashMap<>();
+        Map<String, DataSource> optional = new HashMap<>();
+        required.put("seller", new ChainedDataSource("product"));
+        optional.put("product", new ValueDataSource());
+        DispatchPlan dispatchPlan = DispatchPlan.compile(required, optional);
+        assertTrue(dispatchPlan.position("product") < dispatchPlan.position("seller"));
+
+        //the next request returns new data sources under the same keys
+        required.put("seller", new ChainedDataSource("product"));
+        optional.put("product", new ValueDataSource());
+        assertTrue(dispatchPlan.matches(required, optional));
+        ListenableFuture[] futures = new DataSourceDispatcher(executorService).dispatch(dispatchPlan, required, optional, Deadline.after(1, TimeUnit.MINUTES));
+        Value seller = (Value) futures[dispatchPlan.position("seller")].get(1, TimeUnit.SECONDS);
+        assertEquals(seller.value, "seller of product");
+
+        required.put("seller", new ValueDataSource());
+        assertFalse(dispatchPlan.matches(required, optional));
+        optional.put("offers", new ValueDataSource());
+        assertFalse(DispatchPlan.compile(Collections.<String, DataSource>singletonMap("seller", new ValueDataSource()), null).matches(required, optional));
+    }
+}
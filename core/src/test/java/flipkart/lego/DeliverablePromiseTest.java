@@ -16,12 +16,20 @@
 
 package flipkart.lego;
 
+import flipkart.lego.concurrency.api.PromiseListener;
 import flipkart.lego.concurrency.exceptions.PromiseBrokenException;
 import flipkart.lego.concurrency.exceptions.PromiseRealizedException;
 import flipkart.lego.concurrency.promises.DeliverablePromise;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.testng.annotations.Test;
 
+import java.lang.reflect.Field;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class DeliverablePromiseTest {
 
@@ -105,4 +113,127 @@ public class DeliverablePromiseTest {
 
         assert promiseBrokenExceptionThrown;
     }
+
+    @Test(enabled = true)
+    public void testConcurrentRealizationAndListeners() throws Exception {
+        final int threads = 16;
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        for (int round = 0; round < 100; round++) {
+            final DeliverablePromise<Integer> promise = new DeliverablePromise<>();
+            final CountDownLatch start = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(threads);
+            final AtomicInteger fullFilments = new AtomicInteger();
+            final AtomicInteger notifications = new AtomicInteger();
+            final AtomicInteger wakeUps = new AtomicInteger();
+            for (int i = 0; i < threads; i++) {
+                final int thread = i;
+                executorService.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            promise.addListener(new PromiseListener<Integer>() {
+                                @Override
+                                public void whenFullfilled(Integer value) {
+                                    notifications.incrementAndGet();
+                                }
+
+                                @Override
+                                public void whenBroken(PromiseBrokenException promiseBrokenException) {
+                                }
+                            });
+                            if (thread % 2 == 0) {
+                                promise.fullFillPromise(thread);
+                                fullFilments.incrementAndGet();
+                            } else {
+                                promise.get();
+                                wakeUps.incrementAndGet();
+                            }
+                        } catch (PromiseRealizedException exception) {
+                            //another thread realized the promise first
+                        } catch (Exception exception) {
+                            throw new RuntimeException(exception);
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                });
+            }
+            start.countDown();
+            assert done.await(10, TimeUnit.SECONDS);
+
+            assert fullFilments.get() == 1;
+            assert notifications.get() == threads;
+            assert wakeUps.get() == threads / 2;
+        }
+        executorService.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void testListenerRunsOnItsExecutor() throws Exception {
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        DeliverablePromise<Integer> promise = new DeliverablePromise<>();
+        final AtomicReference<Thread> executorListenerThread = new AtomicReference<>();
+        final AtomicReference<Thread> directListenerThread = new AtomicReference<>();
+        final CountDownLatch listened = new CountDownLatch(1);
+
+        promise.addListener(new PromiseListener<Integer>() {
+            @Override
+            public void whenFullfilled(Integer value) {
+                executorListenerThread.set(Thread.currentThread());
+                listened.countDown();
+            }
+
+            @Override
+            public void whenBroken(PromiseBrokenException promiseBrokenException) {
+            }
+        }, executorService);
+        promise.addListener(new PromiseListener<Integer>() {
+            @Override
+            public void whenFullfilled(Integer value) {
+                directListenerThread.set(Thread.currentThread());
+            }
+
+            @Override
+            public void whenBroken(PromiseBrokenException promiseBrokenException) {
+            }
+        }, MoreExecutors.directExecutor());
+
+        promise.fullFillPromise(1);
+        assert listened.await(10, TimeUnit.SECONDS);
+
+        assert directListenerThread.get() == Thread.currentThread();
+        assert executorListenerThread.get() != Thread.currentThread();
+        executorService.shutdown();
+    }
+
+    @Test(enabled = true)
+    public void testTimedOutWaitersAreUnlinked() throws Exception {
+        DeliverablePromise<Integer> promise = new DeliverablePromise<>();
+        final AtomicInteger fullFilled = new AtomicInteger();
+        promise.addListener(new PromiseListener<Integer>() {
+            @Override
+            public void whenFullfilled(Integer value) {
+                fullFilled.incrementAndGet();
+            }
+
+            @Override
+            public void whenBroken(PromiseBrokenException promiseBrokenException) {
+            }
+        });
+        for (int i = 0; i < 1000; i++) {
+            promise.await(1, TimeUnit.MICROSECONDS);
+        }
+
+        //only the listener is left on the stack
+        Field state = DeliverablePromise.class.getDeclaredField("state");
+        state.setAccessible(true);
+        Object head = state.get(promise);
+        Field next = head.getClass().getDeclaredField("next");
+        next.setAccessible(true);
+        assert next.get(head) == null;
+
+        promise.fullFillPromise(1);
+        assert fullFilled.get() == 1;
+    }
 }
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import flipkart.lego.api.entities.AsyncFilter;
+import flipkart.lego.api.entities.BlockingFilter;
+import flipkart.lego.api.entities.Filter;
+import flipkart.lego.api.entities.ParallelFilter;
+import flipkart.lego.api.entities.Request;
+import flipkart.lego.api.entities.Response;
+import flipkart.lego.api.exceptions.InternalErrorException;
+import flipkart.lego.api.exceptions.ProcessingException;
+import flipkart.lego.engine.filters.CompiledFilterChain;
+import flipkart.lego.engine.filters.FilterChain;
+import flipkart.lego.engine.filters.FilterExecutionMode;
+import flipkart.lego.engine.filters.FilterExecutionPhase;
+import org.testng.annotations.Test;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+public class FilterChainTest {
+
+    private ExecutorService executorService = Executors.newCachedThreadPool();
+    private Request request = mock(Request.class);
+    private Response response = mock(Response.class);
+
+    class RecordingFilter implements Filter {
+        final String name;
+        final List<String> calls;
+        final long sleep;
+        volatile Thread requestThread;
+
+        RecordingFilter(String name, List<String> calls, long sleep) {
+            this.name = name;
+            this.calls = calls;
+            this.sleep = sleep;
+        }
+
+        @Override
+        public void filterRequest(Request request, Response response) {
+            requestThread = Thread.currentThread();
+            calls.add(name + ".request");
+            try {
+                Thread.sleep(sleep);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void filterResponse(Request request, Response response) {
+            calls.add(name + ".response");
+        }
+    }
+
+    class RecordingBlockingFilter extends RecordingFilter implements BlockingFilter {
+        RecordingBlockingFilter(String name, List<String> calls, long sleep) {
+            super(name, calls, sleep);
+        }
+    }
+
+    class RecordingParallelFilter extends RecordingFilter implements ParallelFilter, BlockingFilter {
+        final boolean failing;
+
+        RecordingParallelFilter(String name, List<String> calls, long sleep, boolean failing) {
+            super(name, calls, sleep);
+            this.failing = failing;
+        }
+
+        @Override
+        public void filterRequest(Request request, Response response) {
+            super.filterRequest(request, response);
+            if (failing) {
+                throw new IllegalStateException(name + " failed");
+            }
+        }
+    }
+
+    class RecordingAsyncFilter implements AsyncFilter {
+        final String name;
+        final List<String> calls;
+        final CompletableFuture<Void> requestCompletion = new CompletableFuture<>();
+
+        RecordingAsyncFilter(String name, List<String> calls) {
+            this.name = name;
+            this.calls = calls;
+        }
+
+        @Override
+        public CompletionStage<Void> filterRequestAsync(Request request, Response response) {
+            calls.add(name + ".request");
+            return requestCompletion;
+        }
+
+        @Override
+        public CompletionStage<Void> filterResponseAsync(Request request, Response response) {
+            calls.add(name + ".response");
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private LinkedHashSet<Filter> parallelFilters(List<String> calls, boolean failing) {
+        LinkedHashSet<Filter> filters = new LinkedHashSet<>();
+        filters.add(new RecordingParallelFilter("auth", calls, 200, false));
+        filters.add(new RecordingParallelFilter("geo", calls, 200, failing));
+        filters.add(new RecordingFilter("experiment", calls, 0));
+        return filters;
+    }
+
+    @Test
+    public void testParallelFiltersRunConcurrently() throws Exception {
+        for (FilterExecutionMode filterExecutionMode : FilterExecutionMode.values()) {
+            List<String> calls = new CopyOnWriteArrayList<>();
+            FilterChain filterChain = new FilterChain(parallelFilters(calls, false), executorService, Executors.newSingleThreadScheduledExecutor(), filterExecutionMode);
+
+            long remainingTime = filterChain.process(request, response, FilterExecutionPhase.REQUEST, 1000);
+
+            assertTrue(remainingTime > 1000 - 350, filterExecutionMode + " took " + (1000 - remainingTime));
+            //a filter declared after a stage of parallel filters still runs after all of them
+            assertEquals(calls.get(2), "experiment.request");
+        }
+    }
+
+    @Test
+    public void testFailedParallelFilterIsNotUnwound() throws Exception {
+        for (FilterExecutionMode filterExecutionMode : FilterExecutionMode.values()) {
+            List<String> calls = new CopyOnWriteArrayList<>();
+            FilterChain filterChain = new FilterChain(parallelFilters(calls, true), executorService, Executors.newSingleThreadScheduledExecutor(), filterExecutionMode);
+
+            boolean internalErrorExceptionThrown = false;
+            try {
+                filterChain.process(request, response, FilterExecutionPhase.REQUEST, 1000);
+            } catch (InternalErrorException exception) {
+                internalErrorExceptionThrown = true;
+            }
+            assertTrue(internalErrorExceptionThrown);
+
+            calls.clear();
+            filterChain.process(request, response, FilterExecutionPhase.RESPONSE, 1000);
+            assertEquals(calls.toString(), "[auth.response]");
+        }
+    }
+
+    @Test
+    public void testInlineChainOffloadsOnlyBlockingFilters() throws Exception {
+        List<String> calls = new CopyOnWriteArrayList<>();
+        RecordingFilter auth = new RecordingFilter("auth", calls, 0);
+        RecordingFilter geo = new RecordingBlockingFilter("geo", calls, 0);
+        LinkedHashSet<Filter> filters = new LinkedHashSet<>();
+        filters.add(auth);
+        filters.add(geo);
+        FilterChain filterChain = new FilterChain(filters, executorService, Executors.newSingleThreadScheduledExecutor(), FilterExecutionMode.INLINE);
+
+        filterChain.process(request, response, FilterExecutionPhase.REQUEST, 1000);
+        filterChain.process(request, response, FilterExecutionPhase.RESPONSE, 1000);
+
+        assertEquals(auth.requestThread, Thread.currentThread());
+        assertNotEquals(geo.requestThread, Thread.currentThread());
+        assertEquals(calls.toString(), "[auth.request, geo.request, geo.response, auth.response]");
+    }
+
+    @Test
+    public void testInlineChainChecksDeadlineBetweenFilters() throws Exception {
+        List<String> calls = new CopyOnWriteArrayList<>();
+        LinkedHashSet<Filter> filters = new LinkedHashSet<>();
+        filters.add(new RecordingFilter("auth", calls, 100));
+        filters.add(new RecordingFilter("geo", calls, 0));
+        FilterChain filterChain = new FilterChain(filters, executorService, Executors.newSingleThreadScheduledExecutor(), FilterExecutionMode.INLINE);
+
+        boolean timeoutExceptionThrown = false;
+        try {
+            filterChain.process(request, response, FilterExecutionPhase.REQUEST, 50);
+        } catch (TimeoutException exception) {
+            timeoutExceptionThrown = true;
+        }
+        assertTrue(timeoutExceptionThrown);
+
+        //only the filters that were executed are unwound
+        filterChain.process(request, response, FilterExecutionPhase.RESPONSE, 1000);
+        assertEquals(calls.toString(), "[auth.request, auth.response]");
+    }
+
+    @Test
+    public void testAsyncFilterIsComposedWithoutBlocking() throws Exception {
+        for (FilterExecutionMode filterExecutionMode : FilterExecutionMode.values()) {
+            List<String> calls = new CopyOnWriteArrayList<>();
+            RecordingAsyncFilter auth = new RecordingAsyncFilter("auth", calls);
+            LinkedHashSet<Filter> filters = new LinkedHashSet<>();
+            filters.add(auth);
+            filters.add(new RecordingFilter("geo", calls, 0));
+            FilterChain filterChain = new FilterChain(filters, executorService, Executors.newSingleThreadScheduledExecutor(), filterExecutionMode);
+
+            ListenableFuture<Long> filterProcessing = filterChain.processAsync(request, response, FilterExecutionPhase.REQUEST, 1000);
+            Thread.sleep(50);
+            assertFalse(filterProcessing.isDone());
+            assertEquals(calls.toString(), "[auth.request]");
+
+            auth.requestCompletion.complete(null);
+            filterProcessing.get();
+            filterChain.process(request, response, FilterExecutionPhase.RESPONSE, 1000);
+            assertEquals(calls.toString(), "[auth.request, geo.request, geo.response, auth.response]");
+        }
+    }
+
+    @Test
+    public void testProcessingExceptionOfAsyncFilterShortCircuitsChain() throws Exception {
+        for (FilterExecutionMode filterExecutionMode : FilterExecutionMode.values()) {
+            List<String> calls = new CopyOnWriteArrayList<>();
+            RecordingAsyncFilter auth = new RecordingAsyncFilter("auth", calls);
+            LinkedHashSet<Filter> filters = new LinkedHashSet<>();
+            filters.add(auth);
+            filters.add(new RecordingFilter("geo", calls, 0));
+            FilterChain filterChain = new FilterChain(filters, executorService, Executors.newSingleThreadScheduledExecutor(), filterExecutionMode);
+            auth.requestCompletion.completeExceptionally(new ProcessingException("redirect"));
+
+            boolean processingExceptionThrown = false;
+            try {
+                filterChain.process(request, response, FilterExecutionPhase.REQUEST, 1000);
+            } catch (ProcessingException exception) {
+                processingExceptionThrown = true;
+            }
+            assertTrue(processingExceptionThrown);
+            assertEquals(calls.toString(), "[auth.request]");
+        }
+    }
+
+    @Test
+    public void testAsyncFilterCanBeRunSynchronously() throws Exception {
+        List<String> calls = new CopyOnWriteArrayList<>();
+        RecordingAsyncFilter auth = new RecordingAsyncFilter("auth", calls);
+        auth.requestCompletion.completeExceptionally(new ProcessingException("redirect"));
+
+        boolean processingExceptionThrown = false;
+        try {
+            auth.filterRequest(request, response);
+        } catch (ProcessingException exception) {
+            processingExceptionThrown = true;
+        }
+        assertTrue(processingExceptionThrown);
+        auth.filterResponse(request, response);
+        assertEquals(calls.toString(), "[auth.request, auth.response]");
+    }
+
+    @Test
+    public void testCompiledFilterChainIsSharedAcrossRequests() throws Exception {
+        List<String> calls = new CopyOnWriteArrayList<>();
+        LinkedHashSet<Filter> filters = parallelFilters(calls, false);
+        CompiledFilterChain compiledFilterChain = CompiledFilterChain.compile(filters);
+        FilterChain firstRequest = new FilterChain(compiledFilterChain, executorService, Executors.newSingleThreadScheduledExecutor(), FilterExecutionMode.INLINE);
+        FilterChain secondRequest = new FilterChain(compiledFilterChain, executorService, Executors.newSingleThreadScheduledExecutor(), FilterExecutionMode.INLINE);
+
+        firstRequest.process(request, response, FilterExecutionPhase.REQUEST, 1000);
+        secondRequest.process(request, response, FilterExecutionPhase.REQUEST, 1000);
+        calls.clear();
+        firstRequest.process(request, response, FilterExecutionPhase.RESPONSE, 1000);
+
+        //the response phase runs the parallel stage after the filter that follows it
+        assertEquals(calls.get(0), "experiment.response");
+        assertEquals(calls.size(), 3);
+        assertTrue(compiledFilterChain.matches(filters));
+        assertFalse(compiledFilterChain.matches(parallelFilters(calls, false)));
+    }
+}
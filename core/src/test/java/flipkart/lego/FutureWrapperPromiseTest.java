@@ -16,15 +16,20 @@
 
 package flipkart.lego;
 
+import flipkart.lego.concurrency.api.PromiseListener;
 import flipkart.lego.concurrency.exceptions.PromiseBrokenException;
 import flipkart.lego.concurrency.promises.DeliverablePromise;
 import flipkart.lego.concurrency.promises.FutureWrapperPromise;
 import org.testng.annotations.Test;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class FutureWrapperPromiseTest {
 
@@ -86,4 +91,70 @@ public class FutureWrapperPromiseTest {
 
         assert promiseBrokenExceptionThrown;
     }
+
+    @Test
+    public void listenersAreTriggeredOnceTest() throws Exception {
+        Future future = tpe.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return "dude";
+            }
+        });
+
+        FutureWrapperPromise<String> promise = new FutureWrapperPromise<>(future);
+        final AtomicInteger triggered = new AtomicInteger();
+        PromiseListener<String> promiseListener = new PromiseListener<String>() {
+            @Override
+            public void whenFullfilled(String value) {
+                triggered.incrementAndGet();
+            }
+
+            @Override
+            public void whenBroken(PromiseBrokenException promiseBrokenException) {
+            }
+        };
+        promise.addListener(promiseListener);
+        promise.get();
+        promise.get(1, TimeUnit.SECONDS);
+        promise.await();
+        assert triggered.get() == 1;
+
+        //a listener added once the promise is realized is triggered right away
+        promise.addListener(promiseListener);
+        assert triggered.get() == 2;
+    }
+
+    @Test
+    public void listenerOfFailedFutureIsBrokenTest() throws Exception {
+        final IllegalStateException failure = new IllegalStateException("backend down");
+        Future<String> future = tpe.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                throw failure;
+            }
+        });
+        try {
+            future.get();
+        } catch (ExecutionException ignored) {
+        }
+
+        FutureWrapperPromise<String> promise = new FutureWrapperPromise<>(future);
+        assert promise.isRealized();
+        assert promise.isBroken();
+        assert !promise.isFullfilled();
+
+        final AtomicReference<PromiseBrokenException> broken = new AtomicReference<>();
+        promise.addListener(new PromiseListener<String>() {
+            @Override
+            public void whenFullfilled(String value) {
+            }
+
+            @Override
+            public void whenBroken(PromiseBrokenException promiseBrokenException) {
+                broken.set(promiseBrokenException);
+            }
+        });
+        assert broken.get() != null;
+        assert broken.get().getCause() == failure;
+    }
 }
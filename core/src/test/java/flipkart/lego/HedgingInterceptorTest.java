@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import flipkart.lego.api.entities.DataSource;
+import flipkart.lego.api.entities.DataType;
+import flipkart.lego.api.entities.HedgeableDataSource;
+import flipkart.lego.concurrency.futures.TimedFutures;
+import flipkart.lego.api.helpers.Deadline;
+import flipkart.lego.engine.datasources.DataSourceDispatcher;
+import flipkart.lego.engine.datasources.DataSourceInterceptor;
+import flipkart.lego.engine.datasources.HedgingInterceptor;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+
+public class HedgingInterceptorTest {
+
+    private ExecutorService executorService = Executors.newCachedThreadPool();
+
+    class Price implements DataType {
+    }
+
+    //the first call of a slow replica data source hangs, a second identical call is fast
+    class PriceDataSource implements HedgeableDataSource<Price> {
+        private final boolean slowReplica;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        PriceDataSource(boolean slowReplica) {
+            this.slowReplica = slowReplica;
+        }
+
+        @Override
+        public Price call() throws Exception {
+            if (slowReplica && calls.getAndIncrement() == 0) {
+                Thread.sleep(5000);
+            } else {
+                Thread.sleep(2);
+            }
+            return new Price();
+        }
+    }
+
+    private ListenableFuture dispatch(DataSourceDispatcher dispatcher, DataSource dataSource) throws Exception {
+        Map<String, DataSource> required = new HashMap<>();
+        required.put("price", dataSource);
+        Map<String, ListenableFuture> requiredFutures = new HashMap<>();
+        dispatcher.dispatch(required, null, requiredFutures, new HashMap<String, ListenableFuture>(), Deadline.after(1, TimeUnit.MINUTES));
+        return requiredFutures.get("price");
+    }
+
+    @Test
+    public void testSlowCallIsHedged() throws Exception {
+        HedgingInterceptor hedgingInterceptor = new HedgingInterceptor(0.95, 0.5, TimedFutures.sharedScheduler());
+        DataSourceDispatcher dispatcher = new DataSourceDispatcher(executorService, Collections.<DataSourceInterceptor>singletonList(hedgingInterceptor));
+
+        for (int i = 0; i < 64; i++) {
+            dispatch(dispatcher, new PriceDataSource(false)).get(1, TimeUnit.SECONDS);
+        }
+        long hedgeCount = hedgingInterceptor.getHedgeCount();
+
+        PriceDataSource slowDataSource = new PriceDataSource(true);
+        dispatch(dispatcher, slowDataSource).get(1, TimeUnit.SECONDS);
+        assertEquals(hedgingInterceptor.getHedgeCount(), hedgeCount + 1);
+        assertEquals(slowDataSource.calls.get(), 2);
+    }
+
+    @Test
+    public void testHedgeBudget() throws Exception {
+        HedgingInterceptor hedgingInterceptor = new HedgingInterceptor(0.5, 0.0, TimedFutures.sharedScheduler());
+        DataSourceDispatcher dispatcher = new DataSourceDispatcher(executorService, Collections.<DataSourceInterceptor>singletonList(hedgingInterceptor));
+
+        for (int i = 0; i < 64; i++) {
+            dispatch(dispatcher, new PriceDataSource(false)).get(1, TimeUnit.SECONDS);
+        }
+
+        ListenableFuture slowCall = dispatch(dispatcher, new PriceDataSource(true));
+        Thread.sleep(100);
+        assertEquals(hedgingInterceptor.getHedgeCount(), 0);
+        slowCall.cancel(true);
+    }
+}
@@ -18,18 +18,39 @@ package flipkart.lego;
 
 import flipkart.lego.api.entities.*;
 import flipkart.lego.api.exceptions.*;
+import flipkart.lego.api.helpers.ModelKey;
+import flipkart.lego.api.helpers.ModelLayout;
+import flipkart.lego.api.helpers.Section;
+import flipkart.lego.api.helpers.TypedModel;
+import flipkart.lego.concurrency.futures.TimedFutures;
 import flipkart.lego.engine.Lego;
+import flipkart.lego.engine.OptionalWaitPolicy;
+import flipkart.lego.engine.datasources.CoalescingInterceptor;
+import flipkart.lego.engine.datasources.DataSourceInterceptor;
+import flipkart.lego.engine.filters.FilterExecutionMode;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
 public class LegoTest {
@@ -261,5 +282,403 @@ public class LegoTest {
         Mockito.verify(buildable1, Mockito.never()).getRequiredDataSources(request);
     }
 
+    //Testing whether buildResponseAsync realizes the response and fails appropriately on timeout
+    @Test(groups = "b", dependsOnGroups = "a")
+    public void testBuildResponseAsync() throws Exception {
+        class SlowDataSource implements DataSource {
+
+            public DataType call() {
+                try {
+                    Thread.sleep(3000);
+                } catch (Exception e) {
+                }
+                return dataType;
+            }
+        }
+        LegoSet legoSet1 = Mockito.mock(LegoSet.class);
+        Buildable buildable1 = Mockito.mock(Buildable.class);
+        Lego lego1 = new Lego(legoSet1, executorService, executorService);
+        Map<String, Object> stringMap = new HashMap<>();
+        stringMap.put("sample", dataType);
+
+        Mockito.when(legoSet1.getBuildable(request)).thenReturn(buildable1);
+        Mockito.when(buildable1.getTimeout()).thenReturn(1000l);
+        Mockito.when(buildable1.getRequiredDataSources(request)).thenReturn(dataSourceMap);
+        Mockito.when(buildable1.getFilters(request)).thenReturn(new LinkedHashSet<Filter>());
+        Mockito.when(dataSource.call()).thenReturn(dataType);
+
+        Future<Response> responseFuture = lego1.buildResponseAsync(request, response);
+        responseFuture.get();
+        Mockito.verify(buildable1).build(request, response, stringMap);
+
+        Map<String, DataSource> slowDataSourceMap = new HashMap<>();
+        slowDataSourceMap.put("sample", new SlowDataSource());
+        Mockito.when(buildable1.getRequiredDataSources(request)).thenReturn(slowDataSourceMap);
+        boolean internalErrorExceptionThrown = false;
+        try {
+            lego1.buildResponseAsync(request, response).get();
+        } catch (ExecutionException exception) {
+            internalErrorExceptionThrown = exception.getCause() instanceof InternalErrorException;
+        }
+        assertTrue(internalErrorExceptionThrown);
+    }
+
+    //Testing whether optional data sources are waited on as per the optional wait policy
+    @Test(groups = "b", dependsOnGroups = "a")
+    public void testOptionalWaitPolicy() throws Exception {
+        class SlowDataSource implements DataSource {
+
+            public DataType call() throws Exception {
+                Thread.sleep(200);
+                return dataType;
+            }
+        }
+        LegoSet legoSet1 = Mockito.mock(LegoSet.class);
+        Buildable buildable1 = Mockito.mock(Buildable.class);
+        Map<String, DataSource> optionalDataSourceMap = new HashMap<>();
+        optionalDataSourceMap.put("slow", new SlowDataSource());
+        Map<String, Object> stringMap = new HashMap<>();
+        stringMap.put("slow", dataType);
+
+        Mockito.when(legoSet1.getBuildable(request)).thenReturn(buildable1);
+        Mockito.when(buildable1.getTimeout()).thenReturn(2000l);
+        Mockito.when(buildable1.getOptionalDataSources(request)).thenReturn(optionalDataSourceMap);
+        Mockito.when(buildable1.getFilters(request)).thenReturn(new LinkedHashSet<Filter>());
+
+        //by default optional data sources get 1 millisecond once required data is realized
+        new Lego(legoSet1, executorService, executorService).buildResponse(request, response);
+        Mockito.verify(buildable1).build(request, response, new HashMap<String, Object>());
+
+        Lego waitingLego = new Lego(legoSet1, executorService, executorService, TimedFutures.sharedScheduler(),
+                Collections.<DataSourceInterceptor>singletonList(new CoalescingInterceptor()), OptionalWaitPolicy.fractionOfRemainingTime(0.5));
+        waitingLego.buildResponse(request, response);
+        Mockito.verify(buildable1).build(request, response, stringMap);
+    }
+
+    //Testing whether a typed buildable is built from a model laid out by its model keys
+    @Test(groups = "b", dependsOnGroups = "a")
+    public void testTypedBuildable() throws Exception {
+        ModelKey<DataType> sample = ModelKey.of("sample");
+        ModelKey<DataType> missing = ModelKey.of("missing");
+        ModelLayout modelLayout = ModelLayout.of(sample, missing);
+        LegoSet legoSet1 = Mockito.mock(LegoSet.class);
+        TypedBuildable typedBuildable = Mockito.mock(TypedBuildable.class);
+
+        Mockito.when(legoSet1.getBuildable(request)).thenReturn(typedBuildable);
+        Mockito.when(typedBuildable.getTimeout()).thenReturn(1000l);
+        Mockito.when(typedBuildable.getRequiredDataSources(request)).thenReturn(dataSourceMap);
+        Mockito.when(typedBuildable.getFilters(request)).thenReturn(new LinkedHashSet<Filter>());
+        Mockito.when(typedBuildable.getModelLayout()).thenReturn(modelLayout);
+        Mockito.when(dataSource.call()).thenReturn(dataType);
+
+        new Lego(legoSet1, executorService, executorService).buildResponse(request, response);
+
+        ArgumentCaptor<TypedModel> model = ArgumentCaptor.forClass(TypedModel.class);
+        Mockito.verify(typedBuildable).build(Mockito.eq(request), Mockito.eq(response), model.capture());
+        assertEquals(model.getValue().get(sample), dataType);
+        assertFalse(model.getValue().contains(missing));
+    }
+
+    //Testing whether a typed buildable built from a map is built from the typed model laid out from it
+    @Test
+    public void testTypedBuildableBuiltFromAMap() throws Exception {
+        final ModelKey<DataType> sample = ModelKey.of("sample");
+        final ModelLayout modelLayout = ModelLayout.of(sample);
+        final List<Object> built = new CopyOnWriteArrayList<>();
+        TypedBuildable typedBuildable = new TypedBuildable() {
+            @Override
+            public ModelLayout getModelLayout() {
+                return modelLayout;
+            }
+
+            @Override
+            public void build(Request request, Response response, TypedModel model) {
+                built.add(model.get(sample));
+            }
+
+            @Override
+            public long getTimeout() {
+                return 1000;
+            }
+
+            @Override
+            public Map<String, DataSource> getRequiredDataSources(Request request) {
+                return new HashMap<>();
+            }
+
+            @Override
+            public Map<String, DataSource> getOptionalDataSources(Request request) {
+                return new HashMap<>();
+            }
+
+            @Override
+            public LinkedHashSet<Filter> getFilters(Request request) {
+                return new LinkedHashSet<>();
+            }
+        };
+        Map<String, Object> model = new HashMap<>();
+        model.put("sample", dataType);
+        model.put("unknown", dataType);
+
+        typedBuildable.build(request, response, model);
+        assertEquals(built, Collections.singletonList(dataType));
+    }
+
+    //Testing whether a response is built without the filter executor when filters are run inline
+    @Test(groups = "b", dependsOnGroups = "a")
+    public void testInlineFilterExecutionModeBuildsWithoutTheFilterExecutor() throws Exception {
+        LegoSet legoSet1 = Mockito.mock(LegoSet.class);
+        Buildable buildable1 = Mockito.mock(Buildable.class);
+        Map<String, Object> stringMap = new HashMap<>();
+        stringMap.put("sample", dataType);
+        ExecutorService filterExecutorService = Executors.newSingleThreadExecutor();
+        filterExecutorService.shutdown();
+
+        Mockito.when(legoSet1.getBuildable(request)).thenReturn(buildable1);
+        Mockito.when(buildable1.getTimeout()).thenReturn(1000l);
+        Mockito.when(buildable1.getRequiredDataSources(request)).thenReturn(dataSourceMap);
+        Mockito.when(buildable1.getFilters(request)).thenReturn(new LinkedHashSet<Filter>());
+        Mockito.when(dataSource.call()).thenReturn(dataType);
+
+        new Lego(legoSet1, executorService, filterExecutorService, TimedFutures.sharedScheduler(), Collections.<DataSourceInterceptor>singletonList(new CoalescingInterceptor()),
+                OptionalWaitPolicy.fixed(1, TimeUnit.MILLISECONDS), FilterExecutionMode.INLINE).buildResponse(request, response);
+        Mockito.verify(buildable1).build(request, response, stringMap);
+    }
+
+    //Testing whether a response whose optional wait ends on the timer is built off the timer thread when filters are run inline
+    @Test(groups = "b", dependsOnGroups = "a")
+    public void testInlineFilterExecutionModeNeverBuildsOnTheTimer() throws Exception {
+        class LateDataSource implements DataSource {
+
+            public DataType call() throws Exception {
+                Thread.sleep(500);
+                return dataType;
+            }
+        }
+        LegoSet legoSet1 = Mockito.mock(LegoSet.class);
+        Buildable buildable1 = Mockito.mock(Buildable.class);
+        Map<String, DataSource> optionalDataSourceMap = new HashMap<>();
+        optionalDataSourceMap.put("late", new LateDataSource());
+        final List<String> buildThreads = new CopyOnWriteArrayList<>();
+
+        Mockito.when(legoSet1.getBuildable(request)).thenReturn(buildable1);
+        Mockito.when(buildable1.getTimeout()).thenReturn(2000l);
+        Mockito.when(buildable1.getRequiredDataSources(request)).thenReturn(dataSourceMap);
+        Mockito.when(buildable1.getOptionalDataSources(request)).thenReturn(optionalDataSourceMap);
+        Mockito.when(buildable1.getFilters(request)).thenReturn(new LinkedHashSet<Filter>());
+        Mockito.when(dataSource.call()).thenReturn(dataType);
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                buildThreads.add(Thread.currentThread().getName());
+                return null;
+            }
+        }).when(buildable1).build(Mockito.eq(request), Mockito.eq(response), Mockito.anyMap());
+
+        new Lego(legoSet1, executorService, executorService, TimedFutures.sharedScheduler(), Collections.<DataSourceInterceptor>singletonList(new CoalescingInterceptor()),
+                OptionalWaitPolicy.fixed(50, TimeUnit.MILLISECONDS), FilterExecutionMode.INLINE).buildResponse(request, response);
+        assertEquals(buildThreads.size(), 1);
+        assertFalse(buildThreads.get(0).startsWith("lego-timer"), "built on " + buildThreads.get(0));
+    }
+
+    //Testing whether the sections of a streaming buildable are rendered as soon as their data is realized
+    @Test(groups = "b", dependsOnGroups = "a")
+    public void testStreamingBuildable() throws Exception {
+        //the body's data is only realized once the header has been rendered, so the header can't wait for it
+        final CountDownLatch headerRendered = new CountDownLatch(1);
+        class BodyDataSource implements DataSource {
+
+            public DataType call() throws Exception {
+                if (!headerRendered.await(2, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Header wasn't rendered ahead of the body's data");
+                }
+                return dataType;
+            }
+        }
+        final List<String> rendered = new CopyOnWriteArrayList<>();
+        final Map<String, DataSource> requiredDataSources = new HashMap<>();
+        requiredDataSources.put("sample", dataSource);
+        requiredDataSources.put("body", new BodyDataSource());
+        Mockito.when(dataSource.call()).thenReturn(dataType);
+
+        StreamingBuildable streamingBuildable = new TestStreamingBuildable(requiredDataSources) {
+            @Override
+            public void renderSection(Request request, Response response, Section section, Map<String, Object> model) {
+                rendered.add(section.getName() + model.keySet());
+                if (section.getName().equals("header")) {
+                    headerRendered.countDown();
+                }
+            }
+
+            @Override
+            public void build(Request request, Response response, Map<String, Object> model) {
+                rendered.add("build");
+            }
+        };
+        LegoSet legoSet1 = Mockito.mock(LegoSet.class);
+        Mockito.when(legoSet1.getBuildable(request)).thenReturn(streamingBuildable);
+
+        new Lego(legoSet1, executorService, executorService).buildResponse(request, response);
+
+        assertEquals(rendered.toString(), "[header[sample], body[body], build]");
+    }
+
+    //Testing whether the sections left when the optional wait ends on the timer are rendered off the timer thread
+    @Test(groups = "b", dependsOnGroups = "a")
+    public void testStreamingBuildableNeverRendersOnTheTimer() throws Exception {
+        class LateDataSource implements DataSource {
+
+            public DataType call() throws Exception {
+                Thread.sleep(500);
+                return dataType;
+            }
+        }
+        final List<String> renderThreads = new CopyOnWriteArrayList<>();
+        final Map<String, DataSource> requiredDataSources = new HashMap<>();
+        requiredDataSources.put("sample", dataSource);
+        Mockito.when(dataSource.call()).thenReturn(dataType);
+
+        StreamingBuildable streamingBuildable = new TestStreamingBuildable(requiredDataSources) {
+            @Override
+            public Map<String, DataSource> getOptionalDataSources(Request request) {
+                Map<String, DataSource> optionalDataSources = new HashMap<>();
+                optionalDataSources.put("body", new LateDataSource());
+                return optionalDataSources;
+            }
+
+            @Override
+            public void renderSection(Request request, Response response, Section section, Map<String, Object> model) {
+                renderThreads.add(section.getName() + "@" + Thread.currentThread().getName());
+            }
+
+            @Override
+            public void build(Request request, Response response, Map<String, Object> model) {
+                renderThreads.add("build@" + Thread.currentThread().getName());
+            }
+        };
+        LegoSet legoSet1 = Mockito.mock(LegoSet.class);
+        Mockito.when(legoSet1.getBuildable(request)).thenReturn(streamingBuildable);
+        StreamingResponse streamingResponse = new StreamingResponse() {
+            @Override
+            public void write(Object content) {
+            }
+
+            @Override
+            public void flush() {
+                renderThreads.add("flush@" + Thread.currentThread().getName());
+            }
+
+            @Override
+            public void setResponse(Object responseBody) {
+            }
+
+            @Override
+            public Object getResponse() {
+                return null;
+            }
+        };
+
+        new Lego(legoSet1, executorService, executorService, TimedFutures.sharedScheduler(), Collections.<DataSourceInterceptor>singletonList(new CoalescingInterceptor()),
+                OptionalWaitPolicy.fixed(50, TimeUnit.MILLISECONDS), FilterExecutionMode.INLINE).buildResponse(request, streamingResponse);
+
+        assertTrue(renderThreads.toString().contains("body@"), renderThreads.toString());
+        assertFalse(renderThreads.toString().contains("@lego-timer"), renderThreads.toString());
+    }
+
+    @Test
+    public void testFailedStreamingBuildableAbortsTheResponse() throws Exception {
+        class FailingDataSource implements DataSource {
 
+            public DataType call() throws Exception {
+                throw new IllegalStateException("backend down");
+            }
+        }
+        final List<String> rendered = new CopyOnWriteArrayList<>();
+        final Map<String, DataSource> requiredDataSources = new HashMap<>();
+        requiredDataSources.put("sample", dataSource);
+        requiredDataSources.put("body", new FailingDataSource());
+        Mockito.when(dataSource.call()).thenReturn(dataType);
+
+        StreamingBuildable streamingBuildable = new TestStreamingBuildable(requiredDataSources) {
+            @Override
+            public void renderSection(Request request, Response response, Section section, Map<String, Object> model) {
+                rendered.add(section.getName());
+            }
+
+            @Override
+            public void build(Request request, Response response, Map<String, Object> model) {
+                rendered.add("build");
+            }
+        };
+        LegoSet legoSet1 = Mockito.mock(LegoSet.class);
+        Mockito.when(legoSet1.getBuildable(request)).thenReturn(streamingBuildable);
+        final CountDownLatch aborted = new CountDownLatch(1);
+        StreamingResponse streamingResponse = new StreamingResponse() {
+            @Override
+            public void write(Object content) {
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void abort(Throwable cause) {
+                aborted.countDown();
+            }
+
+            @Override
+            public void setResponse(Object responseBody) {
+            }
+
+            @Override
+            public Object getResponse() {
+                return null;
+            }
+        };
+
+        boolean failed = false;
+        try {
+            new Lego(legoSet1, executorService, executorService).buildResponse(request, streamingResponse);
+        } catch (InternalErrorException exception) {
+            failed = true;
+        }
+
+        assertTrue(failed);
+        assertTrue(aborted.await(1, TimeUnit.SECONDS));
+        assertTrue(!rendered.contains("body") && !rendered.contains("build"));
+    }
+
+    abstract class TestStreamingBuildable implements StreamingBuildable {
+        private final Map<String, DataSource> requiredDataSources;
+
+        TestStreamingBuildable(Map<String, DataSource> requiredDataSources) {
+            this.requiredDataSources = requiredDataSources;
+        }
+
+        @Override
+        public List<Section> getSections(Request request) {
+            return Arrays.asList(new Section("header", "sample"), new Section("body", "body"));
+        }
+
+        @Override
+        public long getTimeout() {
+            return 2000;
+        }
+
+        @Override
+        public Map<String, DataSource> getRequiredDataSources(Request request) {
+            return requiredDataSources;
+        }
+
+        @Override
+        public Map<String, DataSource> getOptionalDataSources(Request request) {
+            return new HashMap<>();
+        }
+
+        @Override
+        public LinkedHashSet<Filter> getFilters(Request request) {
+            return new LinkedHashSet<>();
+        }
+    }
 }
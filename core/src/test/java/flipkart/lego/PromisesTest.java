@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego;
+
+import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.SettableFuture;
+import flipkart.lego.concurrency.api.Promise;
+import flipkart.lego.concurrency.exceptions.PromiseBrokenException;
+import flipkart.lego.concurrency.promises.DeliverablePromise;
+import flipkart.lego.concurrency.promises.Promises;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class PromisesTest {
+
+    @Test
+    public void testMapAndFlatMap() throws Exception {
+        DeliverablePromise<Integer> promise = new DeliverablePromise<>();
+        Promise<String> mapped = Promises.map(promise, new Function<Integer, String>() {
+            @Override
+            public String apply(Integer value) {
+                return "value-" + value;
+            }
+        });
+        final DeliverablePromise<Integer> nextPromise = new DeliverablePromise<>();
+        Promise<Integer> flatMapped = Promises.flatMap(promise, new Function<Integer, Promise<Integer>>() {
+            @Override
+            public Promise<Integer> apply(Integer value) {
+                return nextPromise;
+            }
+        });
+
+        promise.fullFillPromise(1);
+        assertEquals(mapped.get(), "value-1");
+        assertFalse(flatMapped.isRealized());
+
+        nextPromise.fullFillPromise(2);
+        assertEquals(flatMapped.get(), Integer.valueOf(2));
+    }
+
+    @Test
+    public void testAllOfAnyOfAndFirstSuccessful() throws Exception {
+        DeliverablePromise<Integer> first = new DeliverablePromise<>();
+        DeliverablePromise<Integer> second = new DeliverablePromise<>();
+        Promise<List<Integer>> all = Promises.allOf(first, second);
+        Promise<Integer> any = Promises.anyOf(first, second);
+        Promise<Integer> firstSuccessful = Promises.firstSuccessful(first, second);
+
+        first.breakPromise(new PromiseBrokenException("first failed"));
+        assertTrue(all.isBroken());
+        assertTrue(any.isBroken());
+        assertFalse(firstSuccessful.isRealized());
+
+        second.fullFillPromise(2);
+        assertEquals(firstSuccessful.get(), Integer.valueOf(2));
+
+        DeliverablePromise<Integer> third = new DeliverablePromise<>();
+        Promise<List<Integer>> allFullfilled = Promises.allOf(second, third);
+        third.fullFillPromise(3);
+        assertEquals(allFullfilled.get(), Arrays.asList(2, 3));
+    }
+
+    @Test
+    public void testWithTimeout() throws Exception {
+        Promise<Integer> timedPromise = Promises.withTimeout(new DeliverablePromise<Integer>(), 10, TimeUnit.MILLISECONDS, Executors.newSingleThreadScheduledExecutor());
+
+        boolean timedOut = false;
+        try {
+            timedPromise.get(1, TimeUnit.SECONDS);
+        } catch (PromiseBrokenException exception) {
+            timedOut = Throwables.getRootCause(exception) instanceof TimeoutException;
+        }
+        assertTrue(timedOut);
+    }
+
+    @Test
+    public void testAdaptersAreRealizedWithoutWaiting() throws Exception {
+        SettableFuture<Integer> future = SettableFuture.create();
+        Promise<Integer> promise = Promises.fromFuture(future);
+        CompletableFuture<Integer> completableFuture = Promises.toCompletableFuture(promise);
+        Promise<Integer> roundTrip = Promises.fromCompletionStage(completableFuture.thenApply(new java.util.function.Function<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer value) {
+                return value + 1;
+            }
+        }));
+
+        future.set(1);
+        assertTrue(completableFuture.isDone());
+        assertTrue(roundTrip.isRealized());
+        assertEquals(roundTrip.get(), Integer.valueOf(2));
+
+        CompletableFuture<Integer> failedFuture = new CompletableFuture<>();
+        Promise<Integer> brokenPromise = Promises.fromCompletionStage(failedFuture);
+        failedFuture.completeExceptionally(new IllegalStateException("failed"));
+        assertTrue(brokenPromise.isBroken());
+
+        boolean failed = false;
+        try {
+            Promises.toCompletableFuture(brokenPromise).get();
+        } catch (ExecutionException exception) {
+            failed = Throwables.getRootCause(exception) instanceof IllegalStateException;
+        }
+        assertTrue(failed);
+    }
+}
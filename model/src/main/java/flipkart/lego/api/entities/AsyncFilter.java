@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.api.entities;
+
+import flipkart.lego.api.exceptions.BadRequestException;
+import flipkart.lego.api.exceptions.InternalErrorException;
+import flipkart.lego.api.exceptions.ProcessingException;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A {@link Filter} whose processing completes asynchronously. The filter chain only calls
+ * {@link #filterRequestAsync(Request, Response)} and {@link #filterResponseAsync(Request, Response)} and composes
+ * the returned completion stages instead of waiting on them, so these methods must not block.
+ * <p/>
+ * An async filter only implements the async methods. The synchronous methods of {@link Filter} wait for the
+ * stages, for callers that run filters outside of a filter chain.
+ * <p/>
+ * A stage completed exceptionally with an {@link flipkart.lego.api.exceptions.InternalErrorException},
+ * {@link flipkart.lego.api.exceptions.BadRequestException} or {@link flipkart.lego.api.exceptions.ProcessingException}
+ * is handled like the same exception thrown by a synchronous filter.
+ */
+public interface AsyncFilter extends Filter {
+
+    /**
+     * Triggers processing of the request by this filter entity
+     *
+     * @param request
+     * @param response
+     * @return stage that completes once the request has been processed
+     */
+    public CompletionStage<Void> filterRequestAsync(Request request, Response response);
+
+    /**
+     * Triggers processing of the response by this filter
+     *
+     * @param request
+     * @param response
+     * @return stage that completes once the response has been processed
+     */
+    public CompletionStage<Void> filterResponseAsync(Request request, Response response);
+
+    /**
+     * Processes the request and waits until the processing has completed
+     *
+     * @param request
+     * @param response
+     * @throws InternalErrorException
+     * @throws BadRequestException
+     * @throws ProcessingException
+     */
+    @Override
+    default void filterRequest(Request request, Response response) throws InternalErrorException, BadRequestException, ProcessingException {
+        CompletionStages.await(filterRequestAsync(request, response));
+    }
+
+    /**
+     * Processes the response and waits until the processing has completed
+     *
+     * @param request
+     * @param response
+     * @throws InternalErrorException
+     * @throws BadRequestException
+     * @throws ProcessingException
+     */
+    @Override
+    default void filterResponse(Request request, Response response) throws InternalErrorException, BadRequestException, ProcessingException {
+        CompletionStages.await(filterResponseAsync(request, response));
+    }
+
+}
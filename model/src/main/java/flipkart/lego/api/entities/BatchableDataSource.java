@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.api.entities;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link DataSource} that fetches a single entity from a backend with a multi-get endpoint. Calls of
+ * the same class arriving from concurrent requests within a short window are collected by Lego and
+ * fetched together with one {@link #callBatch(Set)}, instead of calling each data source.
+ */
+public interface BatchableDataSource<T extends DataType> extends DataSource<T> {
+
+    /**
+     * @return key of the entity the data source fetches
+     */
+    String getBatchKey();
+
+    /**
+     * Fetches the entities of many data sources of this class in one call. Keys missing from the
+     * returned map fail their data sources.
+     *
+     * @param batchKeys
+     * @return data fetched by batch key
+     * @throws Exception
+     */
+    Map<String, T> callBatch(Set<String> batchKeys) throws Exception;
+}
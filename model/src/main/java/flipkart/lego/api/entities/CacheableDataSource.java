@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.api.entities;
+
+/**
+ * A {@link DataSource} whose data can be cached by Lego. Cacheable data sources of the same class that
+ * return equal cache keys are expected to fetch the same data. When data for the key is cached and
+ * hasn't expired, Lego puts it in the model without dispatching the data source.
+ */
+public interface CacheableDataSource<T extends DataType> extends DataSource<T> {
+
+    /**
+     * Returns a key that identifies the data fetched by this data source among data sources
+     * of the same class.
+     *
+     * @return cache key
+     */
+    String getCacheKey();
+
+    /**
+     * Returns the time in milliseconds for which the data fetched by this data source can be served
+     * from the cache. Data is not cached if the time to live is not positive.
+     *
+     * @return time to live in milliseconds
+     */
+    long getTimeToLive();
+}
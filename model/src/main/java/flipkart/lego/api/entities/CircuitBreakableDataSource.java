@@ -0,0 +1,30 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.api.entities;
+
+/**
+ * A {@link DataSource} that declares the circuit it is tracked under. Data sources of different classes
+ * calling the same backend can share a circuit this way. Data sources that do not declare a circuit are
+ * tracked under their class name.
+ */
+public interface CircuitBreakableDataSource<T extends DataType> extends DataSource<T> {
+
+    /**
+     * @return name of the circuit of the data source
+     */
+    String getCircuitName();
+}
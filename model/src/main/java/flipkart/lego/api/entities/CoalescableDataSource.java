@@ -0,0 +1,34 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.api.entities;
+
+/**
+ * A {@link DataSource} whose calls can be shared between concurrent requests. Two coalescable data
+ * sources of the same class that return equal coalescing keys are expected to fetch the same data,
+ * for example the same backend call with the same arguments. While one of them is being fetched,
+ * Lego attaches the others to the call in flight instead of dispatching them again.
+ */
+public interface CoalescableDataSource<T extends DataType> extends DataSource<T> {
+
+    /**
+     * Returns a key that identifies the data fetched by this data source among data sources
+     * of the same class.
+     *
+     * @return coalescing key
+     */
+    String getCoalescingKey();
+}
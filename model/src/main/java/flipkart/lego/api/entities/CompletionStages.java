@@ -0,0 +1,57 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package flipkart.lego.api.entities;
+
+import flipkart.lego.api.exceptions.BadRequestException;
+import flipkart.lego.api.exceptions.InternalErrorException;
+import flipkart.lego.api.exceptions.ProcessingException;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Waits for the completion stages of {@link AsyncFilter}s and rethrows their failures like a synchronous filter.
+ */
+final class CompletionStages {
+
+    private CompletionStages() {
+    }
+
+    static void await(CompletionStage<Void> stage) throws InternalErrorException, BadRequestException, ProcessingException {
+        try {
+            stage.toCompletableFuture().get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InternalErrorException(exception);
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof InternalErrorException) {
+                throw (InternalErrorException) cause;
+            } else if (cause instanceof BadRequestException) {
+                throw (BadRequestException) cause;
+            } else if (cause instanceof ProcessingException) {
+                throw (ProcessingException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new InternalErrorException(cause);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.api.entities;
+
+import flipkart.lego.api.helpers.DataSourceContext;
+
+/**
+ * A {@link DataSource} that is called with the context of the request it fetches data for. Lego calls
+ * {@link #call(DataSourceContext)} instead of {@link #call()} on a context aware data source.
+ */
+public interface ContextAwareDataSource<T extends DataType> extends DataSource<T> {
+
+    /**
+     * Fetches the data within the given context.
+     *
+     * @param context
+     * @return data fetched
+     * @throws Exception
+     */
+    T call(DataSourceContext context) throws Exception;
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.api.entities;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link DataSource} that depends on the data fetched by other data sources of the same {@link Buildable}.
+ * Dependencies are declared using the model keys under which the other data sources are returned by
+ * {@link Buildable#getRequiredDataSources(Request)} or {@link Buildable#getOptionalDataSources(Request)}.
+ * <p/>
+ * Lego dispatches a dependent data source as soon as all of its dependencies have been fetched, after
+ * handing it their results. If a dependency fails or is cancelled the dependent data source is never called.
+ */
+public interface DependentDataSource<T extends DataType> extends DataSource<T> {
+
+    /**
+     * Returns the model keys of the data sources this data source depends on.
+     *
+     * @return Set of model keys
+     */
+    Set<String> getDependencies();
+
+    /**
+     * This is called before the data source is called with the data fetched by each of its dependencies,
+     * keyed by the model keys returned by {@link #getDependencies()}.
+     *
+     * @param dependencyResults
+     */
+    void setDependencyResults(Map<String, DataType> dependencyResults);
+}
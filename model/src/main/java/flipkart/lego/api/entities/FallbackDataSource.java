@@ -0,0 +1,32 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.api.entities;
+
+/**
+ * A {@link DataSource} with fallback data, used instead of calling the data source when it can not be
+ * called, for instance while its circuit is open.
+ */
+public interface FallbackDataSource<T extends DataType> extends DataSource<T> {
+
+    /**
+     * Returns fallback data, it should be cheap and must not call the backend of the data source.
+     *
+     * @return fallback data
+     * @throws Exception
+     */
+    T getFallback() throws Exception;
+}
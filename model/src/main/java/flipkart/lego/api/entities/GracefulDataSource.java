@@ -0,0 +1,32 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.api.entities;
+
+/**
+ * A {@link DataSource} that declares how long Lego may wait for it when it is an optional data source.
+ * The grace period overrides the engine's optional wait policy for this data source.
+ */
+public interface GracefulDataSource<T extends DataType> extends DataSource<T> {
+
+    /**
+     * Returns the time in milliseconds Lego waits for this data source once the required data sources
+     * have been realized. The wait never extends past the timeout of the {@link Buildable}.
+     *
+     * @return grace period in milliseconds
+     */
+    long getGracePeriod();
+}
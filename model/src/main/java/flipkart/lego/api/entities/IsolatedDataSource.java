@@ -0,0 +1,29 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.api.entities;
+
+/**
+ * A {@link DataSource} that belongs to a bulkhead group. Data sources of a group share a lane of
+ * bounded concurrency, so that a slow backend can only hold the threads of its own group.
+ */
+public interface IsolatedDataSource<T extends DataType> extends DataSource<T> {
+
+    /**
+     * @return name of the bulkhead group of the data source, usually one per backend
+     */
+    String getBulkheadGroup();
+}
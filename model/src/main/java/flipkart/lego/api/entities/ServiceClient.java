@@ -20,6 +20,11 @@ import flipkart.lego.api.exceptions.LegoServiceException;
 
 /**
  * A ServiceClient is used as a base for implementing lego Service Clients
+ * <p/>
+ * Calls made for a {@link ContextAwareDataSource} should be registered as a
+ * {@link flipkart.lego.api.helpers.Cancellable} with the cancellation token of its
+ * {@link flipkart.lego.api.helpers.DataSourceContext}, so that the call is aborted when
+ * Lego abandons the data source.
  */
 public interface ServiceClient extends Block {
 
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.api.entities;
+
+import flipkart.lego.api.exceptions.InternalErrorException;
+import flipkart.lego.api.helpers.Section;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link Buildable} that is rendered progressively, one {@link Section} at a time. Sections are rendered
+ * in order, each as soon as its own data sources are realized and the sections before it are rendered,
+ * rather than once every required data source is realized. When the response is a {@link StreamingResponse}
+ * it's flushed after every section.
+ * <p/>
+ * Sections still waiting on optional data sources once Lego stops waiting for them are rendered with the
+ * data that is available, after which {@link #build(Request, Response, Map)} is called with the full model
+ * to complete the response.
+ */
+public interface StreamingBuildable extends Buildable {
+
+    /**
+     * Returns the sections of this buildable in the order in which they are rendered.
+     *
+     * @param request
+     * @return sections of the buildable
+     * @throws InternalErrorException
+     */
+    List<Section> getSections(Request request) throws InternalErrorException;
+
+    /**
+     * Renders a section into the response.
+     *
+     * @param request
+     * @param response
+     * @param section
+     * @param model    data of the data sources of the section that were realized
+     * @throws InternalErrorException
+     */
+    void renderSection(final Request request, Response response, Section section, final Map<String, Object> model) throws InternalErrorException;
+}
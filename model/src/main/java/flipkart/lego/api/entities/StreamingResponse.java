@@ -0,0 +1,54 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.api.entities;
+
+import flipkart.lego.api.exceptions.InternalErrorException;
+
+/**
+ * A {@link Response} that is sent to the client in parts. The sections of a {@link StreamingBuildable}
+ * write their content as they are rendered and Lego flushes the response after every section, so the
+ * client receives the sections that are ready while the rest are still loading.
+ * <p/>
+ * If building the response fails once sections may have been sent, Lego stops rendering and aborts the
+ * response, nothing is written to or flushed from it afterwards.
+ */
+public interface StreamingResponse extends Response {
+
+    /**
+     * Appends content to the response, it's held until the response is flushed.
+     *
+     * @param content
+     * @throws InternalErrorException
+     */
+    public void write(Object content) throws InternalErrorException;
+
+    /**
+     * Sends the content written so far to the client.
+     *
+     * @throws InternalErrorException
+     */
+    public void flush() throws InternalErrorException;
+
+    /**
+     * Tells the response that building it has failed, so that the client can learn the content sent so far
+     * is incomplete, for instance by resetting the stream. The default does nothing.
+     *
+     * @param cause
+     */
+    default void abort(Throwable cause) {
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.api.entities;
+
+/**
+ * A {@link DataSource} with a timeout of its own. Lego gives up on the data source once the timeout has
+ * passed since it was dispatched, or at the timeout of the {@link Buildable} if that is sooner. A required
+ * data source that times out fails the request, an optional one is left out of the model.
+ */
+public interface TimeBoundDataSource<T extends DataType> extends DataSource<T> {
+
+    /**
+     * @return timeout in milliseconds
+     */
+    long getTimeout();
+}
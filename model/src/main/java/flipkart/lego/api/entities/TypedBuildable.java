@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.api.entities;
+
+import flipkart.lego.api.exceptions.InternalErrorException;
+import flipkart.lego.api.helpers.ModelLayout;
+import flipkart.lego.api.helpers.TypedModel;
+
+import java.util.Map;
+
+/**
+ * A {@link Buildable} that is built from a {@link TypedModel} rather than from a map. The data fetched by
+ * each data source is put in the slot of the {@link flipkart.lego.api.helpers.ModelKey} of the same name,
+ * and is read back through the key without hashing or casts. Lego only calls
+ * {@link #build(Request, Response, TypedModel)} on a typed buildable, a typed buildable doesn't need to implement
+ * the map based {@link #build(Request, Response, Map)}.
+ */
+public interface TypedBuildable extends Buildable {
+
+    /**
+     * Returns the layout of the model of this buildable. It should be created once and returned on every call.
+     *
+     * @return layout of the model
+     */
+    ModelLayout getModelLayout();
+
+    /**
+     * This method takes as input the typed data model and {@link Request} and sets the response
+     * object by building the appropriate response.
+     *
+     * @param request
+     * @param response
+     * @param model
+     * @throws InternalErrorException
+     */
+    void build(final Request request, Response response, final TypedModel model) throws InternalErrorException;
+
+    /**
+     * Builds the response from a map by laying it out in a {@link TypedModel}, for callers that build buildables
+     * from maps. Entries that have no key in the layout are left out.
+     *
+     * @param request
+     * @param response
+     * @param model
+     * @throws InternalErrorException
+     */
+    @Override
+    default void build(final Request request, Response response, final Map<String, Object> model) throws InternalErrorException {
+        TypedModel typedModel = new TypedModel(getModelLayout());
+        for (Map.Entry<String, Object> entry : model.entrySet()) {
+            typedModel.put(entry.getKey(), entry.getValue());
+        }
+        build(request, response, typedModel);
+    }
+}
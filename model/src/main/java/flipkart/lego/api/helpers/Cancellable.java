@@ -0,0 +1,30 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.api.helpers;
+
+/**
+ * Work in progress that can be aborted, for instance an I/O call of a
+ * {@link flipkart.lego.api.entities.ServiceClient}.
+ */
+public interface Cancellable {
+
+    /**
+     * Aborts the work, for instance by closing the connection or aborting the request it is using.
+     * It can be called from any thread and more than once.
+     */
+    void cancel();
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.api.helpers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link CancellationToken} is cancelled when Lego abandons a data source, for instance once it has
+ * timed out. Interrupting the data source thread alone does not abort I/O of clients that ignore interrupts,
+ * so data sources and service clients register the {@link Cancellable}s of their calls with the token
+ * to have them aborted.
+ */
+public final class CancellationToken {
+
+    private final List<Cancellable> cancellables = new ArrayList<>();
+    private boolean cancelled = false;
+
+    /**
+     * Registers work to be aborted when the token is cancelled. If the token has already been cancelled
+     * the work is aborted right away on the calling thread.
+     *
+     * @param cancellable
+     */
+    public void register(Cancellable cancellable) {
+        synchronized (this) {
+            if (!cancelled) {
+                cancellables.add(cancellable);
+                return;
+            }
+        }
+        cancellable.cancel();
+    }
+
+    /**
+     * Deregisters work that has completed and need not be aborted anymore.
+     *
+     * @param cancellable
+     */
+    public synchronized void deregister(Cancellable cancellable) {
+        cancellables.remove(cancellable);
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Cancels the token and aborts all registered work. Every registered cancellable is called even
+     * if some of them throw, the first exception thrown is rethrown afterwards.
+     */
+    public void cancel() {
+        List<Cancellable> registered;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            registered = new ArrayList<>(cancellables);
+            cancellables.clear();
+        }
+
+        RuntimeException failure = null;
+        for (Cancellable cancellable : registered) {
+            try {
+                cancellable.cancel();
+            } catch (RuntimeException exception) {
+                if (failure == null) {
+                    failure = exception;
+                } else {
+                    failure.addSuppressed(exception);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.api.helpers;
+
+/**
+ * The context in which Lego calls a {@link flipkart.lego.api.entities.ContextAwareDataSource}.
+ */
+public class DataSourceContext {
+
+    private final Deadline deadline;
+    private final CancellationToken cancellationToken;
+
+    public DataSourceContext(Deadline deadline, CancellationToken cancellationToken) {
+        this.deadline = deadline;
+        this.cancellationToken = cancellationToken;
+    }
+
+    /**
+     * Returns the deadline by which Lego needs the data. Data sources should bound the time they spend,
+     * for instance socket and request timeouts of a {@link flipkart.lego.api.entities.ServiceClient} call,
+     * by the time remaining before the deadline.
+     *
+     * @return deadline of the data source
+     */
+    public Deadline getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Returns the token that is cancelled when Lego abandons the data source. Calls that do not respond
+     * to thread interrupts should register with it so that their I/O is aborted.
+     *
+     * @return cancellation token of the data source
+     */
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+}
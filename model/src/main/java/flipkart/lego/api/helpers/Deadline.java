@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.api.helpers;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Deadline} is a point in time by which some work has to be done, for instance the time by
+ * which Lego needs the data of a {@link flipkart.lego.api.entities.DataSource}. It is based on
+ * {@link System#nanoTime()} and is immutable.
+ */
+public final class Deadline {
+
+    //durations are capped so that the deadline arithmetic can never overflow
+    private static final long MAXIMUM_DURATION = Long.MAX_VALUE >> 2;
+
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Creates a deadline that expires after the given duration from now.
+     *
+     * @param duration
+     * @param timeUnit
+     * @return deadline
+     */
+    public static Deadline after(long duration, TimeUnit timeUnit) {
+        long durationNanos = Math.min(Math.max(timeUnit.toNanos(duration), 0), MAXIMUM_DURATION);
+        return new Deadline(System.nanoTime() + durationNanos);
+    }
+
+    /**
+     * @param timeUnit
+     * @return time remaining before the deadline expires, 0 if it has expired
+     */
+    public long timeRemaining(TimeUnit timeUnit) {
+        long remainingNanos = deadlineNanos - System.nanoTime();
+        return remainingNanos > 0 ? timeUnit.convert(remainingNanos, TimeUnit.NANOSECONDS) : 0;
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * @param other
+     * @return whichever of this and the other deadline expires first
+     */
+    public Deadline earliest(Deadline other) {
+        return other.deadlineNanos - deadlineNanos < 0 ? other : this;
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline{remaining=" + timeRemaining(TimeUnit.MILLISECONDS) + "ms}";
+    }
+}
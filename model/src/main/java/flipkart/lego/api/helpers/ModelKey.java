@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.api.helpers;
+
+/**
+ * A typed handle to a value of a {@link TypedModel}, named like the data source that fetches the value.
+ * Keys are meant to be created once, as constants of a {@link flipkart.lego.api.entities.TypedBuildable},
+ * and resolved to their slot once, by the {@link ModelLayout} they are declared in.
+ *
+ * @param <T> type of the value
+ */
+public final class ModelKey<T> {
+
+    private final String name;
+    //the slot of the key in the last layout it was declared in, reads from that layout skip the lookup
+    private volatile Resolution resolution;
+
+    private ModelKey(String name) {
+        this.name = name;
+    }
+
+    public static <T> ModelKey<T> of(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("A model key needs a name");
+        }
+        return new ModelKey<>(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    int slotIn(ModelLayout modelLayout) {
+        Resolution current = resolution;
+        if (current != null && current.modelLayout == modelLayout) {
+            return current.slot;
+        }
+        return modelLayout.lookupSlot(this);
+    }
+
+    void resolve(ModelLayout modelLayout, int slot) {
+        resolution = new Resolution(modelLayout, slot);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static final class Resolution {
+        private final ModelLayout modelLayout;
+        private final int slot;
+
+        private Resolution(ModelLayout modelLayout, int slot) {
+            this.modelLayout = modelLayout;
+            this.slot = slot;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.api.helpers;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The immutable layout of the {@link TypedModel} of a {@link flipkart.lego.api.entities.TypedBuildable}.
+ * Every {@link ModelKey} is given a slot, its position in the layout, so that reading the model is an
+ * array access.
+ */
+public final class ModelLayout {
+
+    private final ModelKey<?>[] modelKeys;
+    private final Map<String, Integer> slotsByName = new HashMap<>();
+    private final Map<ModelKey<?>, Integer> slotsByKey = new IdentityHashMap<>();
+
+    private ModelLayout(ModelKey<?>[] modelKeys) {
+        this.modelKeys = modelKeys;
+        for (int slot = 0; slot < modelKeys.length; slot++) {
+            if (slotsByName.put(modelKeys[slot].getName(), slot) != null) {
+                throw new IllegalArgumentException("Model key declared twice: " + modelKeys[slot].getName());
+            }
+            slotsByKey.put(modelKeys[slot], slot);
+        }
+        for (int slot = 0; slot < modelKeys.length; slot++) {
+            modelKeys[slot].resolve(this, slot);
+        }
+    }
+
+    /**
+     * @param modelKeys keys of the model, whose names are the names of the data sources of the buildable
+     * @return layout of the keys
+     */
+    public static ModelLayout of(ModelKey<?>... modelKeys) {
+        return new ModelLayout(modelKeys.clone());
+    }
+
+    public static ModelLayout of(List<ModelKey<?>> modelKeys) {
+        return new ModelLayout(modelKeys.toArray(new ModelKey<?>[modelKeys.size()]));
+    }
+
+    public int size() {
+        return modelKeys.length;
+    }
+
+    /**
+     * Returns the slot of the key named like a data source.
+     *
+     * @param name
+     * @return slot of the key, -1 if the layout has no key of that name
+     */
+    public int slotOf(String name) {
+        Integer slot = slotsByName.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    ModelKey<?> keyAt(int slot) {
+        return modelKeys[slot];
+    }
+
+    int lookupSlot(ModelKey<?> modelKey) {
+        Integer slot = slotsByKey.get(modelKey);
+        if (slot == null) {
+            throw new IllegalArgumentException("Model key not in layout: " + modelKey);
+        }
+        return slot;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(modelKeys);
+    }
+}
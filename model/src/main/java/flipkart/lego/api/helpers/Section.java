@@ -0,0 +1,54 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.api.helpers;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A section of a {@link flipkart.lego.api.entities.StreamingBuildable}, rendered as soon as the data
+ * sources it is built from are realized.
+ */
+public final class Section {
+
+    private final String name;
+    private final Set<String> dataSources;
+
+    /**
+     * @param name        name of the section
+     * @param dataSources names of the required and optional data sources the section is built from
+     */
+    public Section(String name, String... dataSources) {
+        this.name = name;
+        this.dataSources = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(dataSources)));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Set<String> getDataSources() {
+        return dataSources;
+    }
+
+    @Override
+    public String toString() {
+        return name + dataSources;
+    }
+}
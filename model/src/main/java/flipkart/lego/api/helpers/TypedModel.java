@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.api.helpers;
+
+import java.util.Arrays;
+
+/**
+ * The model of a {@link flipkart.lego.api.entities.TypedBuildable}. Values are held in an array laid out
+ * by a {@link ModelLayout} and read through typed {@link ModelKey}s, without hashing or casts.
+ */
+public final class TypedModel {
+
+    private static final Object ABSENT = new Object();
+
+    private final ModelLayout modelLayout;
+    private final Object[] values;
+
+    public TypedModel(ModelLayout modelLayout) {
+        this.modelLayout = modelLayout;
+        this.values = new Object[modelLayout.size()];
+        Arrays.fill(values, ABSENT);
+    }
+
+    public ModelLayout getModelLayout() {
+        return modelLayout;
+    }
+
+    /**
+     * @param modelKey
+     * @return value of the key, null if the model has none
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(ModelKey<T> modelKey) {
+        Object value = values[modelKey.slotIn(modelLayout)];
+        return value == ABSENT ? null : (T) value;
+    }
+
+    /**
+     * Tells whether the data source of the key was realized in time, optional data sources may not be.
+     *
+     * @param modelKey
+     * @return true if the model has a value for the key
+     */
+    public boolean contains(ModelKey<?> modelKey) {
+        return values[modelKey.slotIn(modelLayout)] != ABSENT;
+    }
+
+    public <T> void put(ModelKey<T> modelKey, T value) {
+        values[modelKey.slotIn(modelLayout)] = value;
+    }
+
+    /**
+     * Puts the value fetched by the data source of the given name.
+     *
+     * @param name
+     * @param value
+     * @return false if the layout has no key of that name
+     */
+    public boolean put(String name, Object value) {
+        int slot = modelLayout.slotOf(name);
+        if (slot < 0) {
+            return false;
+        }
+        values[slot] = value;
+        return true;
+    }
+
+    /**
+     * Puts a value into a slot resolved once with {@link ModelLayout#slotOf(String)}.
+     *
+     * @param slot
+     * @param value
+     */
+    public void put(int slot, Object value) {
+        values[slot] = value;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder model = new StringBuilder("{");
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != ABSENT) {
+                if (model.length() > 1) {
+                    model.append(", ");
+                }
+                model.append(modelLayout.keyAt(slot)).append('=').append(values[slot]);
+            }
+        }
+        return model.append('}').toString();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego.virtual;
+
+import flipkart.lego.api.entities.LegoSet;
+import flipkart.lego.concurrency.futures.TimedFutures;
+import flipkart.lego.engine.Lego;
+import flipkart.lego.engine.OptionalWaitPolicy;
+import flipkart.lego.engine.datasources.CoalescingInterceptor;
+import flipkart.lego.engine.datasources.DataSourceInterceptor;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Lego} that runs data sources, filters and {@link flipkart.lego.api.entities.Buildable#build} on virtual
+ * threads, one per task, so that blocking service clients need no thread pool tuning. Timeouts still fire on the
+ * shared timer and cancel work by interrupting its virtual thread and cancelling its
+ * {@link flipkart.lego.api.helpers.CancellationToken}, exactly as on platform threads.
+ * <p/>
+ * A {@link VirtualThreadLego} owns the executors it starts virtual threads from and shuts them down when it is
+ * closed, the Lego it holds must not be used after that.
+ * <p/>
+ * With no pool to bound them, the concurrency towards a backend is bounded with
+ * {@link flipkart.lego.engine.datasources.BulkheadInterceptor} or
+ * {@link flipkart.lego.engine.datasources.ConcurrencyLimitInterceptor} instead.
+ */
+public final class VirtualThreadLego implements AutoCloseable {
+
+    private final Lego lego;
+    private final ExecutorService dataSourceExecutorService;
+    private final ExecutorService filterExecutorService;
+
+    private VirtualThreadLego(LegoSet legoSet, List<DataSourceInterceptor> dataSourceInterceptors, OptionalWaitPolicy optionalWaitPolicy) {
+        this.dataSourceExecutorService = newExecutorService("lego-datasource");
+        this.filterExecutorService = newExecutorService("lego-filter");
+        this.lego = new Lego(legoSet, dataSourceExecutorService, filterExecutorService, TimedFutures.sharedScheduler(), dataSourceInterceptors, optionalWaitPolicy);
+    }
+
+    public static VirtualThreadLego create(LegoSet legoSet) {
+        return create(legoSet, Collections.<DataSourceInterceptor>singletonList(new CoalescingInterceptor()), OptionalWaitPolicy.fixed(1, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * @param legoSet
+     * @param dataSourceInterceptors interceptors every data source is dispatched through, in order
+     * @param optionalWaitPolicy     how long to wait for optional data sources once required data sources are realized
+     * @return lego running on virtual threads
+     */
+    public static VirtualThreadLego create(LegoSet legoSet, List<DataSourceInterceptor> dataSourceInterceptors, OptionalWaitPolicy optionalWaitPolicy) {
+        return new VirtualThreadLego(legoSet, dataSourceInterceptors, optionalWaitPolicy);
+    }
+
+    public Lego getLego() {
+        return lego;
+    }
+
+    /**
+     * Stops accepting requests. Virtual threads that are already running are left to finish, they aren't waited on.
+     */
+    @Override
+    public void close() {
+        dataSourceExecutorService.shutdown();
+        filterExecutorService.shutdown();
+    }
+
+    /**
+     * @param name prefix of the names of the virtual threads
+     * @return executor service that starts a virtual thread for every task
+     */
+    public static ExecutorService newExecutorService(String name) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2016 Flipkart Internet, pvt ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package flipkart.lego;
+
+import flipkart.lego.api.entities.*;
+import flipkart.lego.api.exceptions.InternalErrorException;
+import flipkart.lego.api.exceptions.LegoException;
+import flipkart.lego.virtual.VirtualThreadLego;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertTrue;
+
+public class VirtualThreadLegoTest {
+
+    class Page implements DataType {
+        final boolean virtual;
+
+        Page(boolean virtual) {
+            this.virtual = virtual;
+        }
+    }
+
+    class SimpleResponse implements Response {
+        private Object responseBody;
+
+        @Override
+        public void setResponse(Object responseBody) {
+            this.responseBody = responseBody;
+        }
+
+        @Override
+        public Object getResponse() {
+            return responseBody;
+        }
+    }
+
+    class SimpleRequest implements Request {
+        private final Map<String, Object> attributes = new HashMap<>();
+
+        @Override
+        public void setAttribute(String key, Object value) {
+            attributes.put(key, value);
+        }
+
+        @Override
+        public void setAttributes(Map<String, Object> attributes) {
+            this.attributes.putAll(attributes);
+        }
+
+        @Override
+        public <T> T getAttribute(String key) {
+            return (T) attributes.get(key);
+        }
+
+        @Override
+        public Map<String, Object> getAttributeMap() {
+            return attributes;
+        }
+
+        @Override
+        public boolean hasAttribute(String key) {
+            return attributes.containsKey(key);
+        }
+    }
+
+    class PageBuildable implements Buildable {
+        private final long timeout;
+        private final DataSource dataSource;
+
+        PageBuildable(long timeout, DataSource dataSource) {
+            this.timeout = timeout;
+            this.dataSource = dataSource;
+        }
+
+        @Override
+        public long getTimeout() throws LegoException {
+            return timeout;
+        }
+
+        @Override
+        public Map<String, DataSource> getRequiredDataSources(Request request) throws InternalErrorException {
+            Map<String, DataSource> dataSources = new HashMap<>();
+            dataSources.put("page", dataSource);
+            return dataSources;
+        }
+
+        @Override
+        public Map<String, DataSource> getOptionalDataSources(Request request) throws LegoException {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public void build(Request request, Response response, Map<String, Object> model) throws InternalErrorException {
+            response.setResponse(model.get("page"));
+        }
+
+        @Override
+        public LinkedHashSet<Filter> getFilters(Request request) throws InternalErrorException {
+            return new LinkedHashSet<>();
+        }
+    }
+
+    private VirtualThreadLego lego(final Buildable buildable) {
+        return VirtualThreadLego.create(new LegoSet() {
+            @Override
+            public Buildable getBuildable(Request request) {
+                return buildable;
+            }
+        });
+    }
+
+    @Test
+    public void testDataSourcesRunOnVirtualThreads() throws Exception {
+        DataSource<Page> dataSource = new DataSource<Page>() {
+            @Override
+            public Page call() throws Exception {
+                return new Page(Thread.currentThread().isVirtual());
+            }
+        };
+        Response response = new SimpleResponse();
+        try (VirtualThreadLego virtualThreadLego = lego(new PageBuildable(1000, dataSource))) {
+            virtualThreadLego.getLego().buildResponse(new SimpleRequest(), response);
+        }
+        assertTrue(((Page) response.getResponse()).virtual);
+    }
+
+    @Test
+    public void testTimedOutDataSourceIsInterrupted() throws Exception {
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        DataSource<Page> dataSource = new DataSource<Page>() {
+            @Override
+            public Page call() throws Exception {
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException exception) {
+                    interrupted.countDown();
+                    throw exception;
+                }
+                return new Page(true);
+            }
+        };
+        boolean internalErrorExceptionThrown = false;
+        try (VirtualThreadLego virtualThreadLego = lego(new PageBuildable(100, dataSource))) {
+            virtualThreadLego.getLego().buildResponse(new SimpleRequest(), new SimpleResponse());
+        } catch (InternalErrorException exception) {
+            internalErrorExceptionThrown = true;
+        }
+        assertTrue(internalErrorExceptionThrown);
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testClosedLegoRejectsRequests() throws Exception {
+        DataSource<Page> dataSource = new DataSource<Page>() {
+            @Override
+            public Page call() throws Exception {
+                return new Page(true);
+            }
+        };
+        VirtualThreadLego virtualThreadLego = lego(new PageBuildable(1000, dataSource));
+        virtualThreadLego.close();
+
+        boolean rejectedExecutionExceptionThrown = false;
+        try {
+            virtualThreadLego.getLego().buildResponse(new SimpleRequest(), new SimpleResponse());
+        } catch (RejectedExecutionException exception) {
+            rejectedExecutionExceptionThrown = true;
+        }
+        assertTrue(rejectedExecutionExceptionThrown);
+    }
+}